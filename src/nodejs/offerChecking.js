@@ -15,7 +15,7 @@ const config = {
 
 const client = new SteamUser();
 const community = new SteamCommunity();
-const io = ReadLine.createInterface(process.stdin, process.stdout, null);
+const io = ReadLine.createInterface({input: process.stdin});
 const manager = new TradeOfferManager({
   steam: client,
   community: community,
@@ -29,11 +29,27 @@ const logOnOptions = {
   rememberPassword: true
  };  
 
-const successMessage = 'success';
 const offerCheckTime = config.offerCheckTime;
+//Offers which were sent to Java and are awaiting a response, by ID.
+const awaitingResponse = new Map();
+//Offers which Java decided to accept or decline, which are carried out together after the next relog.
+let actions = [];
+let relogging = false;
 let offerQueue = [];
-let nextOffer = null;
-let nextOfferAction = null;
+
+//Messages are JSON objects, one per line. See OfferBridge.java for the protocol.
+function send(message){
+  process.stdout.write(JSON.stringify(message) + "\n");
+}
+
+function sendError(id, err){
+  send({type: 'error', id: id, message: err && err.stack ? err.stack : String(err)});
+}
+
+process.on('uncaughtException', (err) => {
+  sendError(null, err);
+  process.exit(1);
+});
 
 client.logOn(logOnOptions);
 
@@ -45,17 +61,15 @@ client.on('webSession', (sessionid, cookies) => {
 
 client.on('loggedOn', () => {
   client.setPersona(SteamUser.EPersonaState.Online); //Online
-  if(nextOffer !== null){
+  if(relogging){
     setTimeout(() => {
-      if(nextOfferAction === true){
-        acceptOffer(nextOffer);
-      } else {
-        declineOffer(nextOffer);
+      relogging = false;
+      let toCarryOut = actions;
+      actions = [];
+      for(let action of toCarryOut){
+        carryOut(action.offer, action.accept);
       }
-      nextOfferAction = null;
-      nextOffer = null;
     }, 2500)
-    
   }
   //client.gamesPlayed(440);
 });
@@ -64,47 +78,55 @@ manager.on('newOffer', (offer) =>{
   offerQueue.push(offer);
 });
 
+//Every offer received since the last check is sent at once, and Java may respond to them in any order.
 setInterval(function(){
-  if(offerQueue.length != 0 && nextOffer === null){
-    let offer = offerQueue[0];
-    offerQueue.shift();
-    evaluateOffer(offer);
+  while(offerQueue.length != 0){
+    evaluateOffer(offerQueue.shift());
   }
 }, offerCheckTime)
 
 function evaluateOffer(offer){
   offer.partner = offer.partner.getSteamID64();
-    io.question(JSON.stringify(offer) + "\n", function(response){
-      if(response == "ACCEPT"){
-        nextOffer = offer;
-        nextOfferAction = true;
-        client.relog();
-      } else if(response == "DECLINE"){
-        nextOffer = offer;
-        nextOfferAction = false;
-        client.relog();
-      } else if(response == "HOLD"){
-        console.log(successMessage);
-      }
-    });
+  awaitingResponse.set(offer.id, offer);
+  send({type: 'offer', id: offer.id, offer: offer});
 }
 
-function acceptOffer(offer) {
-  offer.accept((err) => {
-    if(err) {
-      console.log(err);
-    } else {
-      console.log(successMessage); 
+io.on('line', (line) => {
+  let message;
+  try{
+    message = JSON.parse(line);
+  } catch(err){
+    sendError(null, 'Could not parse message from Java: ' + line);
+    return;
+  }
+  let offer = awaitingResponse.get(message.id);
+  if(message.type !== 'response' || offer === undefined){
+    sendError(message.id === undefined ? null : message.id, 'Unexpected message from Java: ' + line);
+    return;
+  }
+  awaitingResponse.delete(message.id);
+  if(message.response == "ACCEPT" || message.response == "DECLINE"){
+    actions.push({offer: offer, accept: message.response == "ACCEPT"});
+    if(!relogging){
+      relogging = true;
+      client.relog();
     }
-  });
-}
+  } else if(message.response != "HOLD"){
+    sendError(message.id, 'Unknown response: ' + message.response);
+  }
+});
 
-function declineOffer(offer) {
-  offer.decline((err) => {
+function carryOut(offer, accept) {
+  let callback = (err) => {
     if(err) {
-      console.log(err);
+      sendError(offer.id, err);
     } else {
-      console.log(successMessage); 
+      send({type: 'ack', id: offer.id});
     }
-  });
+  };
+  if(accept){
+    offer.accept(callback);
+  } else {
+    offer.decline(callback);
+  }
 }
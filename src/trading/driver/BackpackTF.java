@@ -5,6 +5,8 @@ import trading.economy.*;
 import org.json.*;
 import java.io.*;
 import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 import javax.imageio.IIOException;
 
 import static trading.driver.FileUtils.*;
@@ -22,11 +24,32 @@ class BackpackTF implements LoggingBackpackTFConnection{
 	private final String apiKey;
 	private final String apiToken;
 	private final String fallbackPath;
-	private boolean used;
-	private IOException lastThrown;
+	private volatile boolean used;
+	private volatile IOException lastThrown;
 	private JSONObject pricesObject;
+	//The canonical copy of the prices, which incremental get prices API calls are merged into, and the time it was last fully refreshed, in milliseconds since the epoch.
+	private PriceIndex prices;
+	private long lastFullRefresh;
+	//The validators of the last full get prices API call. Incremental calls are for a different resource each time, so they are never conditional.
+	private final NetUtils.Validators pricesValidators = new NetUtils.Validators();
+	//Limits the rate of listing batches, which are otherwise all sent at once.
+	private final RateLimiter listingsLimiter = new RateLimiter(1, 4);
 
 	private static final int LISTINGS_LIMIT = 50;
+	//Incremental get prices API calls cannot report prices which were removed, so the prices are fully refreshed this often.
+	//Removed prices are rare, so this is much longer than the default periodic cycle of one day, which should otherwise use incremental calls.
+	private static final long FULL_REFRESH_INTERVAL = TimeUnit.DAYS.toMillis(7);
+	//Suffix of the file next to the fallback which holds the time of the last full refresh. The fallback itself is saved after every refresh, so its modification time cannot be used.
+	private static final String FULL_REFRESH_SUFFIX = ".refreshed";
+	private static final String PRICES_URL = "https://backpack.tf/api/IGetPrices/v4";
+	static final String LISTINGS_URL = "https://backpack.tf/api/classifieds/search/v1";
+	private static final String SEND_LISTINGS_URL = "https://backpack.tf/api/classifieds/list/v1";
+	private static final String REMOVE_LISTINGS_URL = "https://backpack.tf/api/classifieds/delete/v1";
+
+	static {
+		//The prices response is large, and Backpack.tf can take a while to start sending it.
+		NetUtils.setTimeout(PRICES_URL, 60000);
+	}
 
 	private BackpackTF(String apiKey, String apiToken, String fallback){
 		if(apiKey == null || apiToken == null){
@@ -37,6 +60,8 @@ class BackpackTF implements LoggingBackpackTFConnection{
 		this.fallbackPath = fallback;
 		this.used = false;
 		this.lastThrown = null;
+		//Listing batches slow down if Backpack.tf throttles them.
+		NetUtils.setThrottleListener(SEND_LISTINGS_URL, (int status, long wait) -> this.listingsLimiter.throttled(wait));
 	}
 
 	/**Returns a connection to backpack.tf, using the given API credentials.
@@ -100,6 +125,7 @@ class BackpackTF implements LoggingBackpackTFConnection{
 		this.used();
 		JSONArray toSend = listings.getListingRepresentation(ldf);
 		int numberOfRequests = (int)Math.ceil(((double)toSend.length())/LISTINGS_LIMIT);
+		List<CompletableFuture<JSONObject>> requests = new ArrayList<>();
 		for(int i = 0; i < numberOfRequests; i++){
 			JSONObject args = new JSONObject();
 			args.put("token", this.apiToken);
@@ -108,7 +134,67 @@ class BackpackTF implements LoggingBackpackTFConnection{
 				listingsToSend.put(toSend.getJSONObject(j));
 			}
 			args.put("listings", listingsToSend);
-			JSONObject response = NetUtils.request("https://backpack.tf/api/classifieds/list/v1", "POST", args);
+			//Batches are independent, so they are sent at once, as fast as the limiter allows.
+			requests.add(this.listingsLimiter.acquireAsync().thenCompose((Void v) -> NetUtils.requestAsync(SEND_LISTINGS_URL, "POST", args)));
+		}
+		join(requests);
+	}
+
+	/**Removes the given listings from backpack.tf.<br>
+	Only Hats with a known id can be removed, as backpack.tf identifies sell listings by the id of the listed item. Other listings are ignored.
+	@param listings The listings to remove.
+	@throws NullPointerException if listings is null.
+	@throws IOException if an IO error occurs or the request fails.
+	*/
+	public void removeListings(Collection<? extends Listing> listings) throws IOException {
+		try{
+			this.removeListingsInternal(listings);
+		} catch(IOException e){
+			this.lastThrown = e;
+			throw e;
+		}
+	}
+
+	private void removeListingsInternal(Collection<? extends Listing> listings) throws IOException {
+		JSONArray ids = new JSONArray();
+		for(Listing listing : listings){
+			if(listing instanceof Hat && ((Hat)listing).getID() != null){
+				ids.put("440_" + ((Hat)listing).getID());
+			}
+		}
+		if(ids.length() == 0){
+			return;
+		}
+		this.used();
+		List<CompletableFuture<JSONObject>> requests = new ArrayList<>();
+		for(int i = 0; i < ids.length(); i += LISTINGS_LIMIT){
+			JSONObject args = new JSONObject();
+			args.put("token", this.apiToken);
+			JSONArray idsToSend = new JSONArray();
+			for(int j = i; j < ids.length() && j < i + LISTINGS_LIMIT; j++){
+				idsToSend.put(ids.getString(j));
+			}
+			args.put("listing_ids", idsToSend);
+			requests.add(this.listingsLimiter.acquireAsync().thenCompose((Void v) -> NetUtils.requestAsync(REMOVE_LISTINGS_URL, "DELETE", args)));
+		}
+		join(requests);
+	}
+
+	//Waits for all of the given requests to complete, and throws the IOException that the first failed request failed with, if any.
+	private static void join(List<CompletableFuture<JSONObject>> requests) throws IOException {
+		try{
+			CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).join();
+		} catch(CompletionException e){
+			for(CompletableFuture<JSONObject> request : requests){
+				try{
+					request.join();
+				} catch(CompletionException failure){
+					if(failure.getCause() instanceof IOException){
+						throw (IOException)failure.getCause();
+					}
+					throw failure;
+				}
+			}
 		}
 	}
 
@@ -145,6 +231,25 @@ class BackpackTF implements LoggingBackpackTFConnection{
 
 	private JSONObject getListingsForItemInternal(Item i) throws IOException {
 		this.used();
+		JSONObject data = NetUtils.request(LISTINGS_URL, "GET", this.listingsArguments(i));
+		return data;
+	}
+
+	/**Searches the backpack.tf listings for the given item without blocking, and returns a CompletableFuture which completes with the result.<br>
+	If the search fails, the IOException it fails with is tracked as if it were thrown by getListingsForItem.
+	@param i The item to search for.
+	@throws NullPointerException if i is null.
+	@return a CompletableFuture which completes with the result of a backpack.tf classifieds search API call for the given item, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	public CompletableFuture<JSONObject> getListingsForItemAsync(Item i){
+		if(i == null){
+			throw new NullPointerException();
+		}
+		this.used();
+		return this.tracked(NetUtils.requestAsync(LISTINGS_URL, "GET", this.listingsArguments(i)));
+	}
+
+	private JSONObject listingsArguments(Item i){
 		JSONObject args = new JSONObject();
 		args.put("key", this.apiKey);
 		args.put("item", i.getName());
@@ -152,11 +257,11 @@ class BackpackTF implements LoggingBackpackTFConnection{
 			args.put("particle", i.getEffect().getIntValue());
 		}
 		args.put("quality", i.getQuality().getIntValue());
-		JSONObject data = NetUtils.request("https://backpack.tf/api/classifieds/search/v1", "GET", args);
-		return data;
+		return args;
 	}
 
-	/**Returns the result of a backpack.tf get prices API call, as detailed at https://backpack.tf/api/index.html#/webapi-economy/App\Controllers\API\WebAPI\IGetPrices::v4
+	/**Returns the result of a backpack.tf get prices API call, as detailed at https://backpack.tf/api/index.html#/webapi-economy/App\Controllers\API\WebAPI\IGetPrices::v4<br>
+	This method does not use the fallback file, which only stores the prices retained by a PriceIndex. Use getPriceIndex() instead.
 	@throws IOException if an IO error occurs or the request fails.
 	@return the result of a backpack.tf get prices API call
 	*/
@@ -173,24 +278,154 @@ class BackpackTF implements LoggingBackpackTFConnection{
 		this.used();
 		JSONObject args = new JSONObject();
 		args.put("key", this.apiKey);
-		JSONObject response;
+		return NetUtils.request(PRICES_URL, "GET", args);
+	}
+
+	/**Returns a CompletableFuture which completes with the result of a backpack.tf get prices API call, without blocking.<br>
+	As with getPricesObject(), the fallback file is not used. If the request fails, the IOException it fails with is tracked as if it were thrown by getPricesObject.
+	@return a CompletableFuture which completes with the result of a backpack.tf get prices API call, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	public CompletableFuture<JSONObject> getPricesObjectAsync(){
+		this.used();
+		JSONObject args = new JSONObject();
+		args.put("key", this.apiKey);
+		return this.tracked(NetUtils.requestAsync(PRICES_URL, "GET", args));
+	}
+
+	//Returns a CompletableFuture which completes as the given one does, after recording the IOException it fails with, if any, as the last thrown IOException.
+	private <T> CompletableFuture<T> tracked(CompletableFuture<T> future){
+		return future.whenComplete((T result, Throwable t) -> {
+			Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+			if(cause instanceof IOException){
+				this.lastThrown = (IOException)cause;
+			}
+		});
+	}
+
+	/**Returns an index of the prices in the result of a backpack.tf get prices API call.<br>
+	This BackpackTF keeps the last returned index as its canonical copy of the prices, initially opened from the snapshot in the fallback file if there is one.
+	Once it has a copy, it only requests the prices updated since the latest update in its copy, and merges them into it. 
+	Because an incremental request cannot report prices which were removed, the prices are requested in full once a week.
+	A full request carries the HTTP validators of the last full response, so nothing at all is sent if Backpack.tf honors them and nothing has changed.<br>
+	Whenever the copy changes, it is saved to the fallback file as a binary snapshot. If the request fails, the current copy is returned instead.
+	@throws IOException if an IO error occurs or the request fails, and there is no copy of the prices.
+	@return an index of the prices in the result of a backpack.tf get prices API call.
+	*/
+	public PriceIndex getPriceIndex() throws IOException {
 		try{
-			response = NetUtils.request("https://backpack.tf/api/IGetPrices/v4", "GET", args);
+			return this.getPriceIndexInternal();
 		} catch(IOException e){
-			if(this.fallbackPath != null){
+			this.lastThrown = e;
+			throw e;
+		}
+	}
+
+	private synchronized PriceIndex getPriceIndexInternal() throws IOException {
+		this.used();
+		if(this.prices == null && this.fallbackPath != null && Files.exists(Paths.get(this.fallbackPath))){
+			try{
+				this.prices = readFallback(Paths.get(this.fallbackPath));
+				this.lastFullRefresh = readLastFullRefresh(this.fallbackPath + FULL_REFRESH_SUFFIX);
+			} catch(IOException | JSONException e){
+				this.lastThrown = new IIOException("Failed to read fallback prices.", e);
+			}
+		}
+		PriceIndex answer;
+		long lastFullRefresh = this.lastFullRefresh;
+		try{
+			answer = this.prices == null || System.currentTimeMillis() - lastFullRefresh >= FULL_REFRESH_INTERVAL ? this.fullRefresh() : this.incrementalRefresh();
+		} catch(IOException e){
+			if(this.prices != null){
 				this.lastThrown = e;
-				return new JSONObject(readFile(this.fallbackPath));
+				return this.prices;
 			} else {
 				throw e;
 			}
 		}
-		if(this.fallbackPath != null){
+		boolean saved = true;
+		if(answer != this.prices && this.fallbackPath != null){
 			try{
-				write(response.toString(), this.fallbackPath);
+				writeFallback(answer, this.fallbackPath);
 			} catch(IOException e){
 				this.lastThrown = new IIOException("Failed to save fallback prices.", e);
+				saved = false;
+			}
+		}
+		//The time of a full refresh is only saved with the prices it refreshed, so that an older fallback is never taken to be fully refreshed.
+		if(saved && this.lastFullRefresh != lastFullRefresh && this.fallbackPath != null){
+			try{
+				write(Long.toString(this.lastFullRefresh), this.fallbackPath + FULL_REFRESH_SUFFIX);
+			} catch(IOException e){
+				this.lastThrown = new IIOException("Failed to save the time of the last full price refresh.", e);
+			}
+		}
+		this.prices = answer;
+		return answer;
+	}
+
+	//Requests every price. If they have not changed since the last full request, the current copy, including the updates merged into it since, is still complete.
+	private PriceIndex fullRefresh() throws IOException {
+		JSONObject args = new JSONObject();
+		args.put("key", this.apiKey);
+		if(this.prices == null){
+			this.pricesValidators.clear();
+		}
+		PriceIndex answer = NetUtils.requestIfModified(PRICES_URL, args, this.pricesValidators, PriceIndex::fromBackpackTFRepresentation);
+		this.lastFullRefresh = System.currentTimeMillis();
+		return answer == null ? this.prices : answer;
+	}
+
+	//Requests the prices updated since the latest update in the current copy, and merges them into it. 
+	//The second before the latest update is included, so that prices updated in the same second as the latest update, but after it was fetched, are not missed.
+	private PriceIndex incrementalRefresh() throws IOException {
+		JSONObject args = new JSONObject();
+		args.put("key", this.apiKey);
+		args.put("since", Math.max(this.prices.getLatestUpdate() - 1, 0));
+		PriceIndex updates;
+		try{
+			updates = NetUtils.request(PRICES_URL, "GET", args, PriceIndex::fromBackpackTFRepresentation);
+		} catch(JSONException e){
+			//A response with no updated prices may not be shaped like a full one.
+			return this.fullRefresh();
+		}
+		return this.prices.merge(updates);
+	}
+
+	//Writes a snapshot of the given index to a temporary file, which then replaces the fallback, so that a failed write never leaves a partial fallback. 
+	//The fallback is read with readSnapshot rather than mapped, as a mapped file cannot be replaced on some platforms.
+	private static void writeFallback(PriceIndex prices, String fallbackPath) throws IOException {
+		ensurePathExists(fallbackPath);
+		Path temp = Paths.get(fallbackPath + ".tmp");
+		try{
+			prices.writeSnapshot(temp);
+			Files.move(temp, Paths.get(fallbackPath), StandardCopyOption.REPLACE_EXISTING);
+		} catch(IOException e){
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	//Returns the time of the last full refresh saved in the given file, or 0 if there is none, so that the prices are then fully refreshed.
+	private static long readLastFullRefresh(String path){
+		try{
+			return Long.parseLong(readFile(path).trim());
+		} catch(IOException | NumberFormatException e){
+			return 0;
+		}
+	}
+
+	//Reads the snapshot in the given fallback file. Fallbacks saved by older versions hold the prices object itself, and are streamed instead.
+	private static PriceIndex readFallback(Path fallback) throws IOException {
+		if(PriceIndex.isSnapshot(fallback)){
+			return PriceIndex.readSnapshot(fallback);
+		}
+		try(Reader input = Files.newBufferedReader(fallback)){
+			return PriceIndex.fromBackpackTFRepresentation(input);
+		} catch(JSONException e){
+			if(e.getCause() instanceof IOException){
+				throw (IOException)e.getCause();
 			}
+			throw e;
 		}
-		return response;
 	}
-}
\ No newline at end of file
+}
@@ -9,6 +9,9 @@ import java.time.*;
 import java.net.*;
 import java.util.*;
 import java.util.regex.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 import java.text.*;
 import java.net.*;
 import java.lang.reflect.*;
@@ -17,6 +20,7 @@ import java.util.stream.*;
 import trading.net.*;
 import trading.economy.*;
 import javax.imageio.IIOException;
+import com.sun.net.httpserver.*;
 
 import static trading.driver.FileUtils.*;
 
@@ -35,6 +39,8 @@ public class Main{
 	private static final String OFFER_CHECK_ARGUMENT_2 = "nodejs/offerChecking.js";
 	private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd hh;mm;ss aa");
 	private static final int HEARTBEAT_SLEEP = 300000; // 5 minutes
+	private static final int CHECKPOINT_INTERVAL = 20; // Listings recalculated between checkpoint saves
+	private static final long INVENTORY_SYNC_DELAY = 60000; // 1 minute, for traded items to appear in the inventory
 
 	private static final JSONObject botInfo;
 	private static final JSONObject botSettings;
@@ -46,10 +52,13 @@ public class Main{
 	private static final String heldSavePath;
 	private static final String logFile;
 	private static final String fallbackPath;
+	private static final String checkpointPath;
+	private static final String metricsPath;
 	private static final String configPath = resolveConfigPath();
 
 	private static final LoggingBackpackTFConnection backpackTF;
-	private static final SteamConnection steam;
+	private static final CachingBackpackTFConnection listingsConnection;
+	private static final CachingSteamConnection steam;
 
 	private static final String botID;
 	private static final String username;
@@ -65,14 +74,42 @@ public class Main{
 
 	private static final long periodicSleep;
 	private static final long priceUpdateSleep;
+	private static final int priceUpdateThreads;
+	private static final RateLimiter backpackTFLimiter;
+	private static final long listingsCacheTTL;
+	private static final int listingsCacheSize;
+	private static final long inventoryCacheTTL;
+	private static final int priceSliceSize;
+	private static final long priceSliceSleep;
+	private static final int offerThreads;
+	private static final ExecutorService offerEvaluators;
+	//Runs short background tasks, such as resolving the IDs of traded hats.
+	private static final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+		Thread answer = new Thread(r, "Background tasks");
+		answer.setDaemon(true);
+		return answer;
+	});
+	//Whether an inventory sync is scheduled and has not yet started.
+	private static final AtomicBoolean inventorySyncPending = new AtomicBoolean(false);
+	//Commits offers one at a time, in the order they were received.
+	private static final ExecutorService offerCommitter = Executors.newSingleThreadExecutor((Runnable r) -> {
+		Thread answer = new Thread(r, "Offer committer");
+		answer.setDaemon(true);
+		return answer;
+	});
+	private static final int metricsPort;
 
 	private static TradingBot elonMusk;
+	private static final RecalculationCheckpoint checkpoint;
 
 	private static Thread inputThread;
 	private static Thread botThread;
 	private static Thread offerThread;
 	private static Thread heartbeatThread;
+	private static Thread schedulerThread;
 
+	//Held for the whole of a price recalculation, so that only one runs at a time. Full and dirty recalculations share the checkpoint and the success and failure counts, and a recalculation which started earlier would commit prices over those of one which started later.
+	private static final ReentrantLock recalculation = new ReentrantLock();
 	private static int successes = 0;
 	private static int failures = 0;
 	private static boolean recalculateOnStartup = false;
@@ -98,12 +135,22 @@ public class Main{
 		logFile = botSettings.getString("logFile");
 		periodicSleep = botSettings.getInt("periodicSleep");
 		priceUpdateSleep = botSettings.getInt("priceUpdateSleep");
+		priceUpdateThreads = botSettings.optInt("priceUpdateThreads", 4);
+		listingsCacheTTL = botSettings.optLong("listingsCacheTTL", 300000);
+		listingsCacheSize = botSettings.optInt("listingsCacheSize", 10000);
+		inventoryCacheTTL = botSettings.optLong("inventoryCacheTTL", 30000);
+		priceSliceSize = botSettings.optInt("priceSliceSize", 0);
+		priceSliceSleep = botSettings.optLong("priceSliceSleep", 60000);
+		offerThreads = botSettings.optInt("offerThreads", Runtime.getRuntime().availableProcessors());
 		defaultRatio = botSettings.getDouble("defaultRatio");
 		boolean constructWithHats = botSettings.getBoolean("constructWithHats");
 		boolean autoKeyScrap = botSettings.get("keyScrapRatio").equals("auto");
 		boolean disconnectBPTF = botSettings.getBoolean("dontSendListings");
 		offerCheckSleep = botSettings.getInt("offerCheckSleep");
 		fallbackPath = botSettings.get("fallback") == JSONObject.NULL ? null : botSettings.getString("fallback");
+		checkpointPath = botSettings.optString("checkpointPath", "../records/recalculationCheckpoint.json");
+		metricsPath = botSettings.optString("metricsPath", "../records/metrics.json");
+		metricsPort = botSettings.optInt("metricsPort", 0);
 		if(forgiveness < 0 || forgiveness > 1){
 			throw new IllegalArgumentException("Expected forgiveness value between 0 and 1, got " + forgiveness);
 		}
@@ -116,9 +163,42 @@ public class Main{
 		if(priceUpdateSleep < 0){
 			throw new IllegalArgumentException("Expected non-negative priceUpdateSleep value, got " + priceUpdateSleep);
 		}
+		if(priceUpdateThreads <= 0){
+			throw new IllegalArgumentException("Expected positive priceUpdateThreads value, got " + priceUpdateThreads);
+		}
+		if(listingsCacheTTL < 0){
+			throw new IllegalArgumentException("Expected non-negative listingsCacheTTL value, got " + listingsCacheTTL);
+		}
+		if(listingsCacheSize <= 0){
+			throw new IllegalArgumentException("Expected positive listingsCacheSize value, got " + listingsCacheSize);
+		}
+		if(inventoryCacheTTL < 0){
+			throw new IllegalArgumentException("Expected non-negative inventoryCacheTTL value, got " + inventoryCacheTTL);
+		}
+		if(priceSliceSize < 0){
+			throw new IllegalArgumentException("Expected non-negative priceSliceSize value, got " + priceSliceSize);
+		}
+		if(priceSliceSleep < 0){
+			throw new IllegalArgumentException("Expected non-negative priceSliceSleep value, got " + priceSliceSleep);
+		}
+		//One Backpack.tf API call every priceUpdateSleep milliseconds on average, with no bursts.
+		backpackTFLimiter = new RateLimiter(1000.0 / Math.max(priceUpdateSleep, 1), 1);
+		//If Backpack.tf throttles searches anyway, the limiter slows down until they stop being throttled.
+		NetUtils.setThrottleListener(BackpackTF.LISTINGS_URL, (int status, long wait) -> backpackTFLimiter.throttled(wait));
 		if(offerCheckSleep < 0){
 			throw new IllegalArgumentException("Expected non-negative offerCheckSleep value, got " + offerCheckSleep);
 		}
+		if(offerThreads <= 0){
+			throw new IllegalArgumentException("Expected positive offerThreads value, got " + offerThreads);
+		}
+		offerEvaluators = Executors.newFixedThreadPool(offerThreads, (Runnable r) -> {
+			Thread answer = new Thread(r, "Offer evaluator");
+			answer.setDaemon(true);
+			return answer;
+		});
+		if(metricsPort < 0 || metricsPort > 65535){
+			throw new IllegalArgumentException("Expected metricsPort value between 0 and 65535, got " + metricsPort);
+		}
 
 		botID = botInfo.getString("botID");
 		String apiKey = botInfo.getString("APIKey");
@@ -129,7 +209,10 @@ public class Main{
 		identitySecret = botInfo.getString("identitySecret");
 
 		backpackTF = disconnectBPTF ? NoListingsBackpackTF.open(apiKey, apiToken, fallbackPath) : BackpackTF.open(apiKey, apiToken, fallbackPath);
-		steam = Steam.open();
+		//Price functions search Backpack.tf through a cache, so only searches which miss the cache wait for the rate limiter.
+		listingsConnection = new CachingBackpackTFConnection(new RateLimitedBackpackTFConnection(backpackTF, backpackTFLimiter), listingsCacheTTL, listingsCacheSize);
+		//Every reader of the bot's inventory shares one request while it is fresh.
+		steam = new CachingSteamConnection(Steam.open(), inventoryCacheTTL);
 
 		AcceptabilityFunction acceptabilityFunction = getCustomFunction(AcceptabilityFunction.class, functions.getJSONObject("acceptabilityFunction"));
 		BuyListingPriceFunction buyListingPriceFunction = getCustomFunction(BuyListingPriceFunction.class, functions.getJSONObject("buyListingPriceFunction"));
@@ -158,6 +241,11 @@ public class Main{
 		} catch(IOException e){
 			throw new UncheckedIOException(e);
 		}
+		checkpoint = loadCheckpoint();
+		if(checkpoint.size() > 0){
+			System.out.println("Resuming an interrupted price recalculation, in which " + checkpoint.size() + " prices were already calculated.");
+			recalculateOnStartup = true;
+		}
 		checkForUpdatePricesError();
 		System.out.println(autoKeyScrap ? "Calculated key-to-scrap ratio to be " + elonMusk.getKeyScrapRatio() : "Using custom key-to-scrap ratio of " + botSettings.getInt("keyScrapRatio"));
 		System.out.println("Bot is selling " + elonMusk.getHats().size() + " items and buying " + elonMusk.getBuyListings().size() + " items.");
@@ -170,25 +258,17 @@ public class Main{
 		exit();
 	};
 
-	private static final Consumer<BackpackTFConnection> callback = (BackpackTFConnection conn) -> {
-		LoggingBackpackTFConnection connection = (LoggingBackpackTFConnection)conn;
-		IOException ioe = connection.lastThrownIOException();
+	private static final BiConsumer<Listing, IOException> callback = (Listing listing, IOException ioe) -> {
 		if(ioe != null){
 			log(ioe);
-			connection.resetIOException();
 			System.out.print("'");
 			failures++;
 		} else {
 			System.out.print(".");
 			successes++;
 		}
-		if(connection.hasBeenUsed()){
-			connection.resetUsed();
-			try{
-				Thread.sleep(priceUpdateSleep);
-			} catch(InterruptedException e){
-				throw new RuntimeException("Look sleep was interrupted.", e);
-			}
+		if((successes + failures) % CHECKPOINT_INTERVAL == 0){
+			saveCheckpoint();
 		}
 	};
 
@@ -201,6 +281,8 @@ public class Main{
 				exit();
 			} else if(input.equals("sendlistings")){
 				sendListings();
+			} else if(input.equals("sendalllistings")){
+				sendListings(true);
 			} else if(input.equals("save")){
 				save();
 			} else if(input.equals("getid")){
@@ -244,7 +326,7 @@ public class Main{
 				save();
 			} else if(input.equals("recalculateprices")){
 				new Thread(() -> {
-					recalculate();
+					recalculate(true);
 					save();
 					sendListings();
 				}).start();
@@ -338,6 +420,19 @@ public class Main{
 						System.out.println(bl.getEffect().getName() + " " + bl.getName() + ": Price not set yet");
 					}
 				}
+			} else if(input.equals("metrics")) {
+				SortedMap<String, EndpointMetrics> metrics = NetUtils.getMetrics();
+				if(metrics.isEmpty()){
+					System.out.println("No requests have been made yet.");
+				}
+				for(Map.Entry<String, EndpointMetrics> entry : metrics.entrySet()){
+					System.out.println(entry.getKey() + ": " + entry.getValue());
+				}
+			} else if(input.equals("savemetrics")) {
+				saveMetrics();
+			} else if(input.equals("resetmetrics")) {
+				NetUtils.resetMetrics();
+				System.out.println("Reset request metrics.");
 			} else if(input.equals("botinfo")) {
 				System.out.println(botInfo.toString());
 			} else if(input.equals("botsettings")) {
@@ -354,7 +449,7 @@ public class Main{
 	private static final Runnable periodic = () -> {
 		while(true){
 			if(recalculateOnStartup){
-				recalculate();
+				recalculate(false);
 				recalculateOnStartup = false;
 			}
 			checkHatIDs();
@@ -367,11 +462,24 @@ public class Main{
 			System.out.println("Periodic function has started.");
 			updatePrices();
 			save();
-			recalculate();
+			saveMetrics();
+			//The scheduler chooses listings by how long ago they were recalculated, not by whether their inputs changed, so dirty listings are recalculated here even while it runs.
+			recalculate(false);
 			save();
 		}
 	};
 
+	private static final Runnable scheduler = () -> {
+		while(true){
+			try{
+				Thread.sleep(priceSliceSleep);
+			} catch(InterruptedException e){
+				throw new RuntimeException("Price recalculation scheduler sleep was interrupted.", e);
+			}
+			recalculateSlice();
+		}
+	};
+
 	private static final Runnable nativeOfferChecking = () -> {
 		Process offerManagement;
 		try{
@@ -383,70 +491,48 @@ public class Main{
 			offerManagement.destroy();
 			System.out.println("Offer checking thread exited safely.");
 		}));
-		Scanner input = new Scanner(offerManagement.getInputStream());
+		OfferBridge bridge = new OfferBridge(offerManagement.getInputStream(), offerManagement.getOutputStream());
 		Scanner errInput = new Scanner(offerManagement.getErrorStream());
-		PrintStream output = new PrintStream(offerManagement.getOutputStream(), true);
-		String next;
-		while(input.hasNextLine()){
-			next = input.nextLine();
-			//System.out.println(offer);
-			JSONObject parsedOffer;
-			try {
-				parsedOffer = new JSONObject(next);
-			} catch(JSONException e){
-				String message = next;
-				while(input.hasNextLine()){
-					message += "\n" + input.nextLine();
-				}
-				//System.err.println("Native offer checking encountered an error:\n" + message);
-				throw new RuntimeException("Native offer checking encountered an error:\n" + message);
-			}
-			System.out.println("\nWe received an offer.");
-			TradeOffer offer = elonMusk.evaluateTrade(parsedOffer, forgiveness, canHold, ownerIDs);
-			System.out.println("Our value: " + offer.getOurValue() + ", Their value: " + offer.getTheirValue());
-			TradeOfferResponse response = offer.getResponse();
-			String passive = "";
-			String savePath = "";
-			switch(response){
-				case ACCEPT -> {
-					passive = "Accepted";
-					savePath = acceptedSavePath;
+		//Offers which were accepted or declined, and which Node.js has not yet acknowledged carrying out.
+		Map<String, String> unacknowledged = new ConcurrentHashMap<>();
+		//Offers are evaluated in parallel, but each is only committed once every offer received before it has been committed.
+		CompletableFuture<Void> committed = CompletableFuture.completedFuture(null);
+		OfferBridge.Message message;
+		while((message = readMessage(bridge)) != null){
+			switch(message.getType()){
+				case OFFER -> {
+					System.out.println("\nWe received an offer.");
+					String id = message.getID();
+					JSONObject parsedOffer = message.getOffer();
+					CompletableFuture<TradeOffer> evaluated = CompletableFuture.supplyAsync(() -> elonMusk.evaluateTrade(parsedOffer, forgiveness, canHold, ownerIDs), offerEvaluators);
+					committed = CompletableFuture.allOf(committed, evaluated).handleAsync((Void v, Throwable t) -> {
+						try{
+							commitOffer(bridge, id, evaluated, unacknowledged);
+						} catch(RuntimeException e){
+							log(e);
+							System.out.println("Failed to respond to offer " + id + ". See " + logFile + " for more details.");
+						}
+						return null;
+					}, offerCommitter);
 				}
-				case DECLINE -> {
-					passive = "Declined";
-					savePath = declinedSavePath;
+				case ACK -> {
+					String passive = unacknowledged.remove(message.getID());
+					if(passive != null){
+						System.out.println("Offer " + message.getID() + " was " + passive.toLowerCase() + ".");
+					}
 				}
-				case HOLD -> {
-					passive = "Held";
-					savePath = heldSavePath;
+				case ERROR -> {
+					if(message.getID() != null){
+						unacknowledged.remove(message.getID());
+						System.out.println("There was an error responding to offer " + message.getID() + ", it may or may not have been responded to. See " + logFile + " for more details.");
+						log(LocalDateTime.now().toString() + ": Offer " + message.getID() + ": " + message.getText());
+					} else {
+						System.out.println("Native offer checking encountered an error. See " + logFile + " for more details.");
+						log(LocalDateTime.now().toString() + ": " + message.getText());
+					}
 				}
+				case LOG -> log(LocalDateTime.now().toString() + ": " + message.getText());
 			}
-			output.println(response);
-			String result = input.nextLine();
-			//String result = "success";
-			if(result.equals("success")){
-				System.out.println("The offer was " + passive.toLowerCase() + ".");
-			} else {
-				System.out.println("There was an error, the offer may or may not have been responded to.");
-				System.err.println(result);
-			}
-			elonMusk.updateItemsAfterOffer(offer, defaultRatio);
-			String data = offer.getData();
-			Date time = new Date();
-			try{
-				write(data.toString(), savePath + File.separator + passive + " " + DATE_FORMAT.format(time) + ".txt");
-			} catch(IOException e){
-				System.out.println("The offer could not be documented.");
-				e.printStackTrace();
-			}
-			new Thread(() -> {
-				try{
-					Thread.sleep(60000);
-				} catch(InterruptedException e){
-					throw new RuntimeException("Sleep before checking item IDs was interrupted.");
-				}
-				checkHatIDs();
-			}).start();
 		}
 		if(errInput.hasNextLine()){
 			throw new IllegalStateException("Native offer checking encountered an error:\n" + errInput.useDelimiter("\\Z").next());
@@ -454,6 +540,74 @@ public class Main{
 		throw new IllegalStateException("Native offer checking stopped unexpectedly.");
 	};
 
+	private static OfferBridge.Message readMessage(OfferBridge bridge){
+		try{
+			return bridge.read();
+		} catch(IOException e){
+			throw new UncheckedIOException("Failed to read from native offer checking.", e);
+		}
+	}
+
+	//Commits the given evaluated offer, records it, responds to it, and returns how it was responded to, in the passive voice.
+	//The offer is re-evaluated if an offer committed since it was evaluated changed the bot's listings.
+	//Accepted and declined offers are added to unacknowledged before responding, so that Node.js cannot acknowledge them first.
+	private static String commitOffer(OfferBridge bridge, String id, CompletableFuture<TradeOffer> evaluated, Map<String, String> unacknowledged){
+		TradeOffer offer;
+		try{
+			offer = evaluated.join();
+		} catch(CompletionException e){
+			//A malformed offer is held for manual review rather than ending offer checking.
+			log(e.getCause());
+			System.out.println("Offer " + id + " could not be read, and was held. See " + logFile + " for more details.");
+			bridge.respond(id, TradeOfferResponse.HOLD);
+			return "Held";
+		}
+		TradeOffer committed = elonMusk.commitTrade(offer, defaultRatio);
+		if(committed.getResponse() != offer.getResponse()){
+			System.out.println("Offer " + id + " was re-evaluated, as the bot's listings changed while it was being evaluated.");
+		}
+		offer = committed;
+		System.out.println("Our value: " + offer.getOurValue() + ", Their value: " + offer.getTheirValue());
+		TradeOfferResponse response = offer.getResponse();
+		String passive = "";
+		String savePath = "";
+		switch(response){
+			case ACCEPT -> {
+				passive = "Accepted";
+				savePath = acceptedSavePath;
+			}
+			case DECLINE -> {
+				passive = "Declined";
+				savePath = declinedSavePath;
+			}
+			case HOLD -> {
+				passive = "Held";
+				savePath = heldSavePath;
+			}
+		}
+		if(response != TradeOfferResponse.HOLD){
+			unacknowledged.put(id, passive);
+		}
+		//The bot's items were updated before responding, so that later offers are committed against them even while this one is still being carried out.
+		bridge.respond(id, response);
+		if(response == TradeOfferResponse.HOLD){
+			System.out.println("The offer was held.");
+		}
+		Date time = new Date();
+		try{
+			write(offer.getData(), savePath + File.separator + passive + " " + DATE_FORMAT.format(time) + " " + id + ".txt");
+		} catch(IOException e){
+			System.out.println("The offer could not be documented.");
+			e.printStackTrace();
+		}
+		if(response == TradeOfferResponse.ACCEPT){
+			//The trade changes the inventory, so a cached copy is out of date.
+			steam.clear();
+			scheduleInventorySync();
+		}
+		return passive;
+	}
+
 	private static final Runnable heart = () -> {
 		while(true){
 			heartbeat();
@@ -465,15 +619,75 @@ public class Main{
 		}
 	};
 
-	private static void recalculate(){
+	//Recalculates the prices of the listings which most need it, and sends any which changed. Failures are only logged, so that the console is not flooded.
+	//The slice is skipped while another recalculation is in progress, since that longer pass would otherwise commit prices from its starting state over the slice's newer ones.
+	private static void recalculateSlice(){
+		if(!recalculation.tryLock()){
+			return;
+		}
+		try{
+			elonMusk.recalculateStalestPrices(listingsConnection, priceSliceSize, priceUpdateThreads, (Listing listing, IOException ioe) -> {
+				if(ioe != null){
+					log(ioe);
+				}
+			});
+		} finally {
+			recalculation.unlock();
+		}
+		try{
+			elonMusk.sendListings(backpackTF);
+		} catch(IOException e){
+			log(e);
+		}
+	}
+
+	//Recalculates the prices of all listings, or only of those whose price inputs changed, once any recalculation already in progress has finished.
+	private static void recalculate(boolean all){
+		if(!recalculation.tryLock()){
+			System.out.println("Waiting for the price recalculation in progress to finish.");
+			recalculation.lock();
+		}
+		try{
+			recalculateLocked(all);
+		} finally {
+			recalculation.unlock();
+		}
+	}
+
+	private static void recalculateLocked(boolean all){
 		successes = 0;
 		failures = 0;
-		System.out.println("Recalculating prices for " + elonMusk.getHats().size() + " sell listings and " + elonMusk.getBuyListings().size() + " buy listings.");
+		if(all){
+			System.out.println("Recalculating prices for " + elonMusk.getHats().size() + " sell listings and " + elonMusk.getBuyListings().size() + " buy listings.");
+		} else {
+			System.out.println("Recalculating prices for listings whose inputs changed.");
+		}
 		System.out.println("(. indicates success, ' indicates failure for an individual listing)");
 		backpackTF.resetIOException();
 		backpackTF.resetUsed();
-		elonMusk.recalculatePrices(backpackTF, callback);
+		long hits = listingsConnection.getHits();
+		long misses = listingsConnection.getMisses();
+		int resumed = checkpoint.size();
+		if(all){
+			elonMusk.recalculatePrices(listingsConnection, priceUpdateThreads, callback, checkpoint);
+		} else {
+			int recalculated = elonMusk.recalculateDirtyPrices(listingsConnection, priceUpdateThreads, callback, checkpoint);
+			System.out.print("\n" + (elonMusk.getListings().size() - recalculated) + " listings were unchanged and skipped.");
+		}
+		if(resumed > 0){
+			System.out.print("\nPrices calculated before the recalculation was interrupted were reused.");
+		}
+		//Unless it was interrupted, the recalculation has been committed, so it will not need to be resumed.
+		if(!Thread.currentThread().isInterrupted()){
+			checkpoint.clear();
+			try{
+				Files.deleteIfExists(Paths.get(checkpointPath));
+			} catch(IOException e){
+				log(e);
+			}
+		}
 		System.out.println("\nFinished recalculating prices. " + successes + " successes and " + failures + " failures.");
+		System.out.println((listingsConnection.getHits() - hits) + " Backpack.tf searches were cached and " + (listingsConnection.getMisses() - misses) + " were not.");
 		if(failures > 0){
 			System.out.println("Check " + logFile + " for details on failures.");
 		}
@@ -548,6 +762,61 @@ public class Main{
 		}
 	}
 
+	private static void saveMetrics(){
+		try{
+			write(NetUtils.getMetricsSummary().toString(), metricsPath);
+			System.out.println("Saved request metrics to " + metricsPath);
+		} catch(IOException e){
+			log(e);
+			System.out.println("Failed to save request metrics. See " + logFile + " for more details.");
+		}
+	}
+
+	//Serves the request metrics summary as JSON at /metrics on the loopback interface only, so that it is not exposed to the network.
+	private static void startMetricsServer(){
+		HttpServer server;
+		try{
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), metricsPort), 0);
+		} catch(IOException e){
+			log(e);
+			System.out.println("Failed to start the metrics server on port " + metricsPort + ". See " + logFile + " for more details.");
+			return;
+		}
+		server.createContext("/metrics", (HttpExchange exchange) -> {
+			byte[] body = NetUtils.getMetricsSummary().toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream output = exchange.getResponseBody()){
+				output.write(body);
+			}
+		});
+		server.start();
+		System.out.println("Serving request metrics at http://localhost:" + metricsPort + "/metrics");
+	}
+
+	//Saves the checkpoint to a temporary file which then replaces the old one, so that a crash while saving does not lose the old checkpoint.
+	private static void saveCheckpoint(){
+		Path temp = Paths.get(checkpointPath + ".tmp");
+		try{
+			write(checkpoint.getJSONRepresentation().toString(), temp.toString());
+			Files.move(temp, Paths.get(checkpointPath), StandardCopyOption.REPLACE_EXISTING);
+		} catch(IOException e){
+			log(e);
+		}
+	}
+
+	private static RecalculationCheckpoint loadCheckpoint(){
+		try{
+			return RecalculationCheckpoint.fromJSONRepresentation(new JSONObject(readFile(checkpointPath)));
+		} catch(NoSuchFileException e){
+			return new RecalculationCheckpoint();
+		} catch(IOException | JSONException e){
+			log(e);
+			System.out.println("Failed to read price recalculation checkpoint. See " + logFile + " for more details.");
+			return new RecalculationCheckpoint();
+		}
+	}
+
 	private static String resolveConfigPath(){
 		List<String> pathsToInspect = List.of(".", "..", "./src", "../src", "../config", "./config");
 		for(String s : pathsToInspect){
@@ -565,8 +834,16 @@ public class Main{
 	}
 
 	private static void sendListings(){
+		sendListings(false);
+	}
+
+	private static void sendListings(boolean all){
 		try{
-			elonMusk.sendListings(backpackTF);
+			if(all){
+				elonMusk.sendAllListings(backpackTF);
+			} else {
+				elonMusk.sendListings(backpackTF);
+			}
 			System.out.println(backpackTF instanceof BackpackTF ? "Sent listings to Backpack.tf." : "Bot is in no-send mode; listings were not sent to Backpack.tf.");
 		} catch(IOException e){
 			log(e);
@@ -583,6 +860,30 @@ public class Main{
 		}
 	}
 
+	//Schedules the IDs of hats without one to be resolved after INVENTORY_SYNC_DELAY. 
+	//Calls made before a scheduled sync starts are coalesced into it, so a burst of trades causes a single inventory request.
+	private static void scheduleInventorySync(){
+		if(inventorySyncPending.compareAndSet(false, true)){
+			background.schedule(() -> {
+				//Cleared before requesting the inventory, so that trades made during the request schedule another sync.
+				inventorySyncPending.set(false);
+				resolveMissingHatIDs();
+			}, INVENTORY_SYNC_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static void resolveMissingHatIDs(){
+		try{
+			int missing = elonMusk.resolveMissingHatIDs(steam);
+			if(missing > 0){
+				System.out.println(missing + " hats are not yet in the inventory, and will be given IDs by the next periodic function.");
+			}
+		} catch(IOException | RuntimeException e){
+			log(e);
+			System.out.println("Failed to resolve hat IDs. See " + logFile + " for more details.");
+		}
+	}
+
 	private static void checkHatIDs(){
 		try{
 			elonMusk.checkHatIDs(steam);
@@ -664,6 +965,9 @@ public class Main{
 
 	private static void exit(){
 		save();
+		if(checkpoint.size() > 0){
+			saveCheckpoint();
+		}
 		System.exit(0);
 	}
 
@@ -677,10 +981,20 @@ public class Main{
 		offerThread.setUncaughtExceptionHandler(handler);
 		heartbeatThread = new Thread(heart, "Heartbeat thread");
 		heartbeatThread.setUncaughtExceptionHandler(handler);
+		if(priceSliceSize > 0){
+			schedulerThread = new Thread(scheduler, "Price recalculation scheduler");
+			schedulerThread.setUncaughtExceptionHandler(handler);
+		}
 		inputThread.start();
 		offerThread.start();
 		botThread.start();
 		heartbeatThread.start();
+		if(schedulerThread != null){
+			schedulerThread.start();
+		}
+		if(metricsPort != 0){
+			startMetricsServer();
+		}
 	}
 
 	private static void checkNodeJS(){
@@ -4,6 +4,8 @@ import trading.net.*;
 import trading.economy.*;
 import org.json.*;
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 //TODO:
 
@@ -58,6 +60,10 @@ class NoListingsBackpackTF implements LoggingBackpackTFConnection{
 	*/
 	public void sendListings(ListingCollection<? extends Listing> listings, ListingDescriptionFunction ldf){}
 
+	/**Does nothing.
+	*/
+	public void removeListings(Collection<? extends Listing> listings){}
+
 	/**Sends a heartbeat API call to Backpack.tf.
 	@throws IOException if an IO error occurs.
 	*/
@@ -76,6 +82,15 @@ class NoListingsBackpackTF implements LoggingBackpackTFConnection{
 		return this.connection.getListingsForItem(i);
 	}
 
+	/**Searches the backpack.tf listings for the given item without blocking, and returns a CompletableFuture which completes with the result.
+	@param i The item to search for.
+	@throws NullPointerException if i is null.
+	@return a CompletableFuture which completes with the result of a backpack.tf classifieds search API call for the given item, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	public CompletableFuture<JSONObject> getListingsForItemAsync(Item i){
+		return this.connection.getListingsForItemAsync(i);
+	}
+
 	/**Returns the result of a backpack.tf get prices API call, as detailed at https://backpack.tf/api/index.html#/webapi-economy/App\Controllers\API\WebAPI\IGetPrices::v4
 	@throws IOException if an IO error occurs or the request fails.
 	@return the result of a backpack.tf get prices API call
@@ -83,4 +98,19 @@ class NoListingsBackpackTF implements LoggingBackpackTFConnection{
 	public JSONObject getPricesObject() throws IOException {
 		return this.connection.getPricesObject();
 	}
+
+	/**Returns a CompletableFuture which completes with the result of a backpack.tf get prices API call, without blocking.
+	@return a CompletableFuture which completes with the result of a backpack.tf get prices API call, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	public CompletableFuture<JSONObject> getPricesObjectAsync(){
+		return this.connection.getPricesObjectAsync();
+	}
+
+	/**Returns an index of the prices in the result of a backpack.tf get prices API call, reading from the fallback file if the request fails.
+	@throws IOException if an IO error occurs or the request fails.
+	@return an index of the prices in the result of a backpack.tf get prices API call.
+	*/
+	public PriceIndex getPriceIndex() throws IOException {
+		return this.connection.getPriceIndex();
+	}
 }
\ No newline at end of file
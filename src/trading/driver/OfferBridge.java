@@ -0,0 +1,144 @@
+package trading.driver;
+
+import trading.economy.*;
+import org.json.*;
+import java.io.*;
+import java.nio.charset.*;
+
+//TODO:
+
+/**Class implementing the Java side of the message protocol spoken with the Node.js offer checking component.<br>
+Each message is a JSON object on its own line, with a "type" and the "id" of the offer it concerns:
+<ul>
+	<li>{"type": "offer", "id": ID, "offer": OFFER} is sent by Node.js for each offer received, as soon as it is received.</li>
+	<li>{"type": "response", "id": ID, "response": "ACCEPT", "DECLINE" or "HOLD"} is sent by Java once it has evaluated an offer.</li>
+	<li>{"type": "ack", "id": ID} is sent by Node.js once it has carried out a response.</li>
+	<li>{"type": "error", "id": ID or null, "message": MESSAGE} is sent by Node.js if it failed to carry out a response, or, with a null id, if it encountered any other error.
+	If the error is fatal, Node.js exits after sending it.</li>
+</ul>
+Any number of offers can be awaiting a response or an acknowledgement at once, and responses and acknowledgements can be sent in any order.<br>
+Lines which are not messages, such as output from Node.js libraries, are read as LOG messages.<br>
+Reading is not thread-safe, but responses can be sent from any thread.
+*/
+
+class OfferBridge{
+	private final BufferedReader input;
+	private final PrintStream output;
+
+	/**Constructs an OfferBridge which reads messages from the given InputStream and writes messages to the given OutputStream.
+	@param input the stream to read messages from, usually the output of the Node.js process.
+	@param output the stream to write messages to, usually the input of the Node.js process.
+	@throws NullPointerException if any parameter is null.
+	*/
+	OfferBridge(InputStream input, OutputStream output){
+		if(input == null || output == null){
+			throw new NullPointerException();
+		}
+		this.input = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		this.output = new PrintStream(output, true, StandardCharsets.UTF_8);
+	}
+
+	/**Blocks until the next message arrives, and returns it.
+	@throws IOException if an IO error occurs.
+	@return the next message, or null if the stream has ended.
+	*/
+	Message read() throws IOException {
+		String line = this.input.readLine();
+		if(line == null){
+			return null;
+		}
+		return Message.parse(line);
+	}
+
+	/**Sends the given response to the offer with the given ID.
+	@param id the ID of the offer.
+	@param response the response to the offer.
+	@throws NullPointerException if any parameter is null.
+	*/
+	void respond(String id, TradeOfferResponse response){
+		if(id == null || response == null){
+			throw new NullPointerException();
+		}
+		JSONObject message = new JSONObject();
+		message.put("type", "response");
+		message.put("id", id);
+		message.put("response", response.toString());
+		//PrintStream is synchronized, so responses sent from different threads are never interleaved.
+		this.output.println(message.toString());
+	}
+
+	/**Enum of the types of message read from Node.js.
+	*/
+	enum Type{
+		OFFER, ACK, ERROR, LOG;
+	}
+
+	/**Class representing a message read from Node.js.
+	*/
+	static final class Message{
+		private final Type type;
+		private final String id;
+		private final JSONObject offer;
+		private final String text;
+
+		private Message(Type type, String id, JSONObject offer, String text){
+			this.type = type;
+			this.id = id;
+			this.offer = offer;
+			this.text = text;
+		}
+
+		/**Parses and returns the message on the given line. Lines which are not JSON objects with a known type are returned as LOG messages containing the line.
+		@param line the line.
+		@throws NullPointerException if line is null.
+		@throws JSONException if line is a message with a known type which is missing a field.
+		@return the parsed message.
+		*/
+		static Message parse(String line){
+			JSONObject message;
+			try{
+				message = new JSONObject(line);
+			} catch(JSONException e){
+				return new Message(Type.LOG, null, null, line);
+			}
+			switch(message.optString("type")){
+				case "offer":
+					return new Message(Type.OFFER, message.getString("id"), message.getJSONObject("offer"), null);
+				case "ack":
+					return new Message(Type.ACK, message.getString("id"), null, null);
+				case "error":
+					return new Message(Type.ERROR, message.isNull("id") ? null : message.getString("id"), null, message.optString("message", "Unknown error"));
+				default:
+					return new Message(Type.LOG, null, null, line);
+			}
+		}
+
+		/**Returns the type of this message.
+		@return the type of this message.
+		*/
+		Type getType(){
+			return this.type;
+		}
+
+		/**Returns the ID of the offer this message concerns, or null if it does not concern an offer.
+		@return the ID of the offer this message concerns.
+		*/
+		String getID(){
+			return this.id;
+		}
+
+		/**Returns the offer carried by an OFFER message, or null for other messages.
+		@return the offer carried by this message.
+		*/
+		JSONObject getOffer(){
+			return this.offer;
+		}
+
+		/**Returns the error message of an ERROR message, or the line read for a LOG message, or null for other messages.
+		@return the text of this message.
+		*/
+		String getText(){
+			return this.text;
+		}
+	}
+}
@@ -2,30 +2,126 @@ package trading.driver;
 
 import trading.net.*;
 import java.io.*;
+import java.util.concurrent.*;
 import org.json.*;
 
 //TODO:
 
-/**An implementation of the SteamConnection interface.
+/**An implementation of the SteamConnection interface.<br>
+Steam returns large inventories in pages. Every page is requested, one after another, and the pages' items and descriptions are merged into a single result,
+so the result has the same form as the result for an inventory which fits in one page.
 */
 
 public class Steam implements SteamConnection{
-	private Steam(){}
+	private static final String STEAM_URL = "https://steamcommunity.com";
+
+	private final String baseURL;
+
+	private Steam(String baseURL){
+		this.baseURL = baseURL;
+	}
 
 	/**Returns an instance of Steam.
 	@return an instance of Steam.
 	*/
 	static Steam open(){
-		return new Steam();
+		return new Steam(STEAM_URL);
+	}
+
+	//Returns an instance of Steam which requests inventories from the given server instead of Steam, for testing.
+	static Steam open(String baseURL){
+		if(baseURL == null){
+			throw new NullPointerException();
+		}
+		return new Steam(baseURL);
 	}
 
-	/**Returns the result of a Steam user inventory API call for the given ID.
+	/**Returns the result of a Steam user inventory API call for the given ID, with every page of the inventory merged.
 	@param steamID the ID to lookup.
 	@throws NullPointerException if steamID is null.
-	@throws IOException if an IO error occurs.
+	@throws IOException if an IO error occurs, or if Steam's pages do not advance.
 	@return the result of a Steam user inventory API call for the given ID.
 	*/
 	public JSONObject getInventoryForUser(String steamID) throws IOException {
-		return NetUtils.request("https://steamcommunity.com/profiles/" + steamID + "/inventory/json/440/2", "GET", new JSONObject());
+		if(steamID == null){
+			throw new NullPointerException();
+		}
+		String url = this.inventoryURL(steamID);
+		JSONObject inventory = NetUtils.request(url, "GET", new JSONObject());
+		for(int start = nextStart(inventory, 0); start > 0; start = nextStart(inventory, start)){
+			addPage(inventory, NetUtils.request(url, "GET", new JSONObject().put("start", start)));
+		}
+		return inventory;
+	}
+
+	/**Returns a CompletableFuture which completes with the result of a Steam user inventory API call for the given ID, with every page of the inventory merged, without blocking.
+	@param steamID the ID to lookup.
+	@throws NullPointerException if steamID is null.
+	@return a CompletableFuture which completes with the result of a Steam user inventory API call for the given ID, or completes exceptionally with an IOException if an IO error occurs or if Steam's pages do not advance.
+	*/
+	public CompletableFuture<JSONObject> getInventoryForUserAsync(String steamID){
+		if(steamID == null){
+			throw new NullPointerException();
+		}
+		String url = this.inventoryURL(steamID);
+		return NetUtils.requestAsync(url, "GET", new JSONObject()).thenCompose((JSONObject inventory) -> remainingPagesAsync(url, inventory, 0));
+	}
+
+	private String inventoryURL(String steamID){
+		return this.baseURL + "/profiles/" + steamID + "/inventory/json/440/2";
+	}
+
+	//Requests the pages after the one starting at previous, one at a time, and merges them into inventory.
+	private static CompletableFuture<JSONObject> remainingPagesAsync(String url, JSONObject inventory, int previous){
+		int start;
+		try{
+			start = nextStart(inventory, previous);
+		} catch(IOException e){
+			return CompletableFuture.failedFuture(e);
+		}
+		if(start <= 0){
+			return CompletableFuture.completedFuture(inventory);
+		}
+		return NetUtils.requestAsync(url, "GET", new JSONObject().put("start", start)).thenCompose((JSONObject page) -> {
+			addPage(inventory, page);
+			return remainingPagesAsync(url, inventory, start);
+		});
+	}
+
+	//Returns the position of the page after the one starting at previous, or 0 if there are no more pages.
+	//Steam reports this as "more" and "more_start". A page which does not start after the previous one would be requested forever, so it is an error.
+	private static int nextStart(JSONObject inventory, int previous) throws IOException {
+		if(!inventory.optBoolean("more")){
+			return 0;
+		}
+		int start = inventory.optInt("more_start", 0);
+		if(start <= previous){
+			throw new IOException("Steam inventory page after " + previous + " did not advance: " + inventory.opt("more_start"));
+		}
+		return start;
+	}
+
+	//Merges the items and descriptions of page into inventory, and replaces inventory's paging information with page's.
+	private static void addPage(JSONObject inventory, JSONObject page){
+		putAll(inventory, page, "rgInventory");
+		putAll(inventory, page, "rgDescriptions");
+		inventory.put("more", page.optBoolean("more"));
+		inventory.put("more_start", page.opt("more_start") == null ? false : page.get("more_start"));
+	}
+
+	//Steam sends an empty array instead of an empty object for a page without items.
+	private static void putAll(JSONObject inventory, JSONObject page, String key){
+		JSONObject from = page.optJSONObject(key);
+		if(from == null){
+			return;
+		}
+		JSONObject to = inventory.optJSONObject(key);
+		if(to == null){
+			inventory.put(key, from);
+			return;
+		}
+		for(String s : from.keySet()){
+			to.put(s, from.get(s));
+		}
 	}
 }
\ No newline at end of file
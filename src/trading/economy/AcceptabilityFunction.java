@@ -26,6 +26,17 @@ public interface AcceptabilityFunction{
 	*/
 	boolean determineAcceptability(JSONObject pricesObject, String name, Effect effect, int keyScrapRatio);
 
+	/**Returns the number of seconds after a price's last update within which this function may accept it, if it checks how recently prices were updated.<br>
+	A TradingBot only re-evaluates prices which changed, so this is how it knows which unchanged prices to re-evaluate as time passes: 
+	those whose last update has fallen out of this window since they were last evaluated. Prices are otherwise only all re-evaluated when the key-to-scrap ratio changes.<br>
+	The default implementation returns 0, meaning that this function's answer does not depend on the current time. 
+	Implementing classes whose answer does depend on the current time in some other way should return the shortest interval after which it can change.
+	@return the number of seconds after a price's last update within which this function may accept it, or 0 if its answer does not depend on the current time.
+	*/
+	default long getLastUpdateWindow(){
+		return 0;
+	}
+
 	/**Returns a trivial AcceptabilityFunction which accepts all hats, with one exception: 
 	those that are priced in a non-keys-or-metal currency such as buds or USD.
 	@return the described AcceptabilityFunction.
@@ -49,12 +60,12 @@ public interface AcceptabilityFunction{
 		if(Double.isNaN(minKeys) || Double.isNaN(maxKeys) || Double.isNaN(maxRange)){
 			throw new IllegalArgumentException("A value was NaN.");
 		}
-		return (JSONObject pricesObject, String name, Effect effect, int keyScrapRatio) -> {
+		return withLastUpdateWindow(lastUpdate, (JSONObject pricesObject, String name, Effect effect, int keyScrapRatio) -> {
 			if(!PriceRange.acceptableCurrency(pricesObject)) {
 				return false;
 			}
 			return checkDataOnHat(pricesObject, minKeys, maxKeys, maxRange, lastUpdate, keyScrapRatio);
-		};
+		});
 	}
 
 	/**Returns an AcceptabilityFunction which determines acceptability based on the hat itself and the hat's effect.<br>
@@ -88,11 +99,26 @@ public interface AcceptabilityFunction{
 		if(Double.isNaN(minKeys) || Double.isNaN(maxKeys) || Double.isNaN(maxRange)){
 			throw new IllegalArgumentException("A value was NaN.");
 		}
-		return (JSONObject pricesObject, String name, Effect effect, int keyScrapRatio) -> {
+		return withLastUpdateWindow(lastUpdate, (JSONObject pricesObject, String name, Effect effect, int keyScrapRatio) -> {
 			if(!PriceRange.acceptableCurrency(pricesObject)) {
 				return false;
 			}
 			return checkDataOnHat(pricesObject, minKeys, maxKeys, maxRange, lastUpdate, keyScrapRatio) && checkTypeOfHat(name, effect, nameMode, names, effectMode, effects);
+		});
+	}
+
+	//Returns an AcceptabilityFunction which behaves like the given one, and reports the lastUpdate restriction of checkData as its window.
+	private static AcceptabilityFunction withLastUpdateWindow(long lastUpdate, AcceptabilityFunction function){
+		return new AcceptabilityFunction(){
+			@Override
+			public boolean determineAcceptability(JSONObject pricesObject, String name, Effect effect, int keyScrapRatio){
+				return function.determineAcceptability(pricesObject, name, effect, keyScrapRatio);
+			}
+
+			@Override
+			public long getLastUpdateWindow(){
+				return Math.max(lastUpdate, 0);
+			}
 		};
 	}
 	
@@ -0,0 +1,67 @@
+package trading.economy;
+
+import org.json.*;
+
+//The currency items, which are valued at a fixed number of scrap rather than by listings.
+//Trade offer items are recognized as currencies by their defindex, or by their name if they have none, without constructing an Item.
+enum Currency{
+	KEY("Mann Co. Supply Crate Key", 5021, 0), REFINED("Refined Metal", 5002, 9), RECLAIMED("Reclaimed Metal", 5001, 3), SCRAP("Scrap Metal", 5000, 1);
+
+	private static final Currency[] VALUES = values();
+
+	private final Item item;
+	private final int defindex;
+	private final int scrapValue;
+
+	//A scrapValue of 0 means that the currency is worth one key.
+	private Currency(String name, int defindex, int scrapValue){
+		this.item = new Item(name, Quality.UNIQUE);
+		this.defindex = defindex;
+		this.scrapValue = scrapValue;
+	}
+
+	/**Returns the Item representing this currency.
+	@return the Item representing this currency.
+	*/
+	Item getItem(){
+		return this.item;
+	}
+
+	/**Returns the value of this currency in scrap.
+	@param keyScrapRatio the key-to-scrap ratio to use.
+	@return the value of this currency in scrap.
+	*/
+	int getScrapValue(int keyScrapRatio){
+		return this.scrapValue == 0 ? keyScrapRatio : this.scrapValue;
+	}
+
+	/**Returns the currency which the given item from a Steam trade offer is, or null if it is not a currency.<br>
+	The item is recognized by the def_index of its app_data if it has one, and otherwise by its market_name. Only Unique items are currencies.
+	@param item an item JSONObject from a Steam trade offer API call.
+	@throws NullPointerException if item is null.
+	@throws JSONException if item has no app_data or quality, or has no def_index and no market_name.
+	@return the currency which the given item is, or null if it is not a currency.
+	*/
+	static Currency forOfferItem(JSONObject item){
+		JSONObject appData = item.getJSONObject("app_data");
+		if(appData.getInt("quality") != Quality.UNIQUE.getIntValue()){
+			return null;
+		}
+		if(appData.has("def_index")){
+			int defindex = appData.getInt("def_index");
+			for(Currency c : VALUES){
+				if(c.defindex == defindex){
+					return c;
+				}
+			}
+			return null;
+		}
+		String name = item.getString("market_name");
+		for(Currency c : VALUES){
+			if(c.item.getName().equalsIgnoreCase(name)){
+				return c;
+			}
+		}
+		return null;
+	}
+}
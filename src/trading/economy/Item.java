@@ -10,6 +10,7 @@ public class Item{
 	private final String name;
 	private final Quality quality;
 	private final Effect priceIndex;
+	private final int hash;
 
 	/**Constructs an Item from the given values, with no effect.
 	@param fullName The item's name, with or without the quality prefix.
@@ -35,6 +36,7 @@ public class Item{
 		this.quality = quality;
 		this.priceIndex = quality == Quality.UNUSUAL ? effect : null;
 		this.name = this.quality.removePrefix(fullName);
+		this.hash = this.name.toLowerCase().hashCode() + (this.priceIndex == null ? 0 : this.priceIndex.hashCode()) + this.quality.hashCode();
 	}
 
 	/**Returns the name of the item, without the quality or "The" before it.
@@ -63,7 +65,7 @@ public class Item{
 	*/
 	@Override
 	public final int hashCode(){
-		return this.getName().toLowerCase().hashCode() + (this.getEffect() == null ? 0 : this.getEffect().hashCode()) + this.getQuality().hashCode();
+		return this.hash;
 	}
 
 	/**Returns a boolean indicating whether the given Object is equal to this Item.<br>
@@ -4,21 +4,21 @@ import org.json.*;
 
 //TODO: Change unit tests to match BPTF discrepancy
 
-/**Functional interface representing a method for providing a key-to-scrap ratio given a Backpack.tf prices object.<br>
-The ratio can be based on the prices object or calculated in a different way.
+/**Functional interface representing a method for providing a key-to-scrap ratio given an index of Backpack.tf community prices.<br>
+The ratio can be based on the price index or calculated in a different way.
 */
 
 @FunctionalInterface
 public interface KeyScrapRatioFunction {
-	/**Provides a key-to-scrap ratio given a Backpack.tf prices object.
-	@param pricesObject a Backpack.tf prices object
-	@throws NullPointerException if pricesObject is null.
-	@throws JSONException if pricesObject is malformed.
+	/**Provides a key-to-scrap ratio given an index of Backpack.tf community prices.
+	@param prices the Backpack.tf community prices.
+	@throws NullPointerException if prices is null.
+	@throws JSONException if prices does not contain a usable price for keys.
 	@return a key-to-scrap ratio.
 	*/
-	int calculateRatio(JSONObject pricesObject);
+	int calculateRatio(PriceIndex prices);
 
-	/**Returns a KeyScrapRatioFunction which always returns the given custom ratio, ignoring the prices object.
+	/**Returns a KeyScrapRatioFunction which always returns the given custom ratio, ignoring the price index.
 	@param ratio the key-to-scrap ratio to return in the function.
 	@throws IllegalArgumentException if ratio is non-positive.
 	@return the described KeyScrapRatioFunction.
@@ -27,7 +27,7 @@ public interface KeyScrapRatioFunction {
 		if(ratio <= 0){
 			throw new IllegalArgumentException("Key-scrap ratio was non-positive.");
 		}
-		return (JSONObject pricesObject) -> {
+		return (PriceIndex prices) -> {
 			return ratio;
 		};
 	}
@@ -36,12 +36,15 @@ public interface KeyScrapRatioFunction {
 	@return the described KeyScrapRatioFunction.
 	*/
 	public static KeyScrapRatioFunction backpackTFRatio(){
-		return (JSONObject pricesObject) -> {
-			JSONObject prices = pricesObject.getJSONObject("response").getJSONObject("items").getJSONObject("Mann Co. Supply Crate Key").getJSONObject("prices").getJSONObject("6").getJSONObject("Tradable").getJSONArray("Craftable").getJSONObject(0);
-			int low = (int)Math.round((prices.getDouble("value") * 9));
-			int high = prices.has("value_high") ? (int)Math.round((prices.getDouble("value_high") * 9)) : low;
-			if(!prices.getString("currency").equals("metal")){
-				throw new JSONException("Price of keys in non-metal currency: " + prices.getString("currency")); //Hell might freeze over before this happens.
+		return (PriceIndex prices) -> {
+			int slot = prices.find(PriceIndex.KEY_NAME, Quality.UNIQUE, 0);
+			if(slot == -1){
+				throw new JSONException("No price found for " + PriceIndex.KEY_NAME);
+			}
+			int low = (int)Math.round((prices.getValue(slot) * 9));
+			int high = prices.hasValueHigh(slot) ? (int)Math.round((prices.getValueHigh(slot) * 9)) : low;
+			if(!prices.getCurrency(slot).equals("metal")){
+				throw new JSONException("Price of keys in non-metal currency: " + prices.getCurrency(slot)); //Hell might freeze over before this happens.
 			}
 			return (low + high)/2;
 		};
@@ -50,7 +50,8 @@ public interface ListingCollection<E extends Listing> extends Collection<E>{
 		return answer;
 	}
 
-	/**Returns a Listing in this Collection which represents the same item as the given Item, or null if no such Listing exists.
+	/**Returns a Listing in this Collection which represents the same item as the given Item, or null if no such Listing exists.<br>
+	The default implementation searches the collection linearly. ListingHashSet and the collections returned by TradingBot override it with a constant-time lookup.
 	@param item The item to search for.
 	@return a Listing in this Collection which represents the same item as the given Item.
 	*/
@@ -58,7 +59,6 @@ public interface ListingCollection<E extends Listing> extends Collection<E>{
 		if(item == null){
 			return null;
 		}
-		//O(n) ugly
 		for(E t : this){
 			if(item.equals(t)){
 				return t;
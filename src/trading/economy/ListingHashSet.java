@@ -6,14 +6,18 @@ import org.json.*;
 
 //TODO:
 
-/**Sublass of HashSet which implements the ListingCollection interface.
+/**Hash-based Set which implements the ListingCollection interface.<br>
+Listings are stored in a HashMap keyed by the item they represent, so that get, contains, add and remove all run in constant time. 
+As with a HashSet, at most one Listing is kept for each item, and adding a Listing for an item which is already present has no effect.
 */
 
-public class ListingHashSet<E extends Listing> extends HashSet<E> implements ListingCollection<E>{
+public class ListingHashSet<E extends Listing> extends AbstractSet<E> implements ListingCollection<E>{
+	private final HashMap<Item, E> listings;
+
 	/**Constructs a ListingHashSet with no members.
 	*/
 	public ListingHashSet(){
-		super();
+		this.listings = new HashMap<>();
 	}
 
 	/**Constructs a ListingHashSet with members from the given collection.
@@ -21,7 +25,72 @@ public class ListingHashSet<E extends Listing> extends HashSet<E> implements Lis
 	@throws NullPointerException if coll is null.
 	*/
 	public ListingHashSet(Collection<? extends E> coll){
-		super(coll);
+		this.listings = new HashMap<>(Math.max((int)(coll.size() / .75f) + 1, 16));
+		this.addAll(coll);
+	}
+
+	/**Returns the Listing in this ListingHashSet which represents the same item as the given Item, or null if no such Listing exists.<br>
+	This method runs in constant time.
+	@param item The item to search for.
+	@return the Listing in this ListingHashSet which represents the same item as the given Item.
+	*/
+	@Override
+	public E get(Item item){
+		return item == null ? null : this.listings.get(item);
+	}
+
+	/**Adds the given Listing to this ListingHashSet if no Listing for the same item is present.
+	@param listing the Listing to add.
+	@throws NullPointerException if listing is null.
+	@return true if this ListingHashSet did not already contain a Listing for the same item.
+	*/
+	@Override
+	public boolean add(E listing){
+		if(listing == null){
+			throw new NullPointerException();
+		}
+		return this.listings.putIfAbsent(listing, listing) == null;
+	}
+
+	/**Returns whether this ListingHashSet contains a Listing for the same item as the given Object.
+	@param o the Object to search for.
+	@return whether this ListingHashSet contains a Listing for the same item as the given Object.
+	*/
+	@Override
+	public boolean contains(Object o){
+		return this.listings.containsKey(o);
+	}
+
+	/**Removes the Listing for the same item as the given Object, if present.
+	@param o the Object to remove.
+	@return true if a Listing was removed.
+	*/
+	@Override
+	public boolean remove(Object o){
+		return this.listings.remove(o) != null;
+	}
+
+	/**Removes all Listings from this ListingHashSet.
+	*/
+	@Override
+	public void clear(){
+		this.listings.clear();
+	}
+
+	/**Returns the number of Listings in this ListingHashSet.
+	@return the number of Listings in this ListingHashSet.
+	*/
+	@Override
+	public int size(){
+		return this.listings.size();
+	}
+
+	/**Returns an iterator over the Listings in this ListingHashSet. The iterator supports removal.
+	@return an iterator over the Listings in this ListingHashSet.
+	*/
+	@Override
+	public Iterator<E> iterator(){
+		return this.listings.values().iterator();
 	}
 
 	/**Returns a ListingHashSet of Hat constructed from the given JSONArray of Hat JSON representations.
@@ -2,8 +2,13 @@ package trading.economy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 class ListingList<E extends Listing> extends ArrayList<E> implements ListingCollection<E> {
+	//Index from item to the first Listing for it, rebuilt whenever the list has been modified since it was built.
+	private HashMap<Item, E> index;
+	private int indexModCount;
+
 	public ListingList(){
 		super();
 	}
@@ -11,4 +16,26 @@ class ListingList<E extends Listing> extends ArrayList<E> implements ListingColl
 	public ListingList(Collection<? extends E> coll){
 		super(coll);
 	}
+
+	@Override
+	public E set(int i, E element){
+		this.index = null;
+		return super.set(i, element);
+	}
+
+	@Override
+	public E get(Item item){
+		if(item == null){
+			return null;
+		}
+		if(this.index == null || this.indexModCount != this.modCount){
+			HashMap<Item, E> newIndex = new HashMap<>();
+			for(E listing : this){
+				newIndex.putIfAbsent(listing, listing);
+			}
+			this.index = newIndex;
+			this.indexModCount = this.modCount;
+		}
+		return this.index.get(item);
+	}
 }
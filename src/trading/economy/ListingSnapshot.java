@@ -0,0 +1,292 @@
+package trading.economy;
+
+import java.util.*;
+
+//TODO:
+
+/**Immutable, persistent Set of Listings which implements the ListingCollection interface.<br>
+A ListingSnapshot can not be modified. Instead, the with and without methods return a new ListingSnapshot which shares all of its structure with this one,
+except for the path to the changed Listing. This makes it inexpensive to keep many versions of a collection, and safe to share a ListingSnapshot between threads without copying it.<br>
+Listings are stored in a hash trie keyed by the item they represent, so get, contains, with and without run in effectively constant time.
+At most one Listing is kept for each item.<br>
+The Listings in a ListingSnapshot are shared with every other version of it, so they should not be modified. To change a Listing, copy it, modify the copy, and use with.
+*/
+
+public class ListingSnapshot<E extends Listing> extends AbstractSet<E> implements ListingCollection<E>{
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	//Number of levels needed to consume a 32-bit hash, after which items with equal hashes are stored in a single node.
+	private static final int MAX_DEPTH = (Integer.SIZE + BITS - 1) / BITS + 1;
+	private static final Node EMPTY_NODE = new Node(0, new Object[0]);
+	private static final ListingSnapshot<?> EMPTY = new ListingSnapshot<>(EMPTY_NODE, 0);
+
+	private final Node root;
+	private final int size;
+
+	private ListingSnapshot(Node root, int size){
+		this.root = root;
+		this.size = size;
+	}
+
+	/**Returns an empty ListingSnapshot.
+	@return an empty ListingSnapshot.
+	*/
+	@SuppressWarnings("unchecked")
+	public static <E extends Listing> ListingSnapshot<E> empty(){
+		return (ListingSnapshot<E>)EMPTY;
+	}
+
+	/**Returns a ListingSnapshot containing the Listings in the given collection. If the collection contains more than one Listing for an item, the first is used.<br>
+	The Listings themselves are not copied.
+	@param coll the collection to use.
+	@throws NullPointerException if coll is null or contains null.
+	@return a ListingSnapshot containing the Listings in the given collection.
+	*/
+	public static <E extends Listing> ListingSnapshot<E> of(Collection<? extends E> coll){
+		if(coll instanceof ListingSnapshot){
+			@SuppressWarnings("unchecked")
+			ListingSnapshot<E> answer = (ListingSnapshot<E>)coll;
+			return answer;
+		}
+		ListingSnapshot<E> answer = empty();
+		for(E listing : coll){
+			if(!answer.contains(listing)){
+				answer = answer.with(listing);
+			}
+		}
+		return answer;
+	}
+
+	/**Returns a ListingSnapshot containing the Listings in this ListingSnapshot, with the given Listing replacing the Listing for the same item, if there is one.
+	@param listing the Listing to add.
+	@throws NullPointerException if listing is null.
+	@return a ListingSnapshot containing the given Listing.
+	*/
+	public ListingSnapshot<E> with(E listing){
+		int newSize = this.contains(listing) ? this.size : this.size + 1;
+		return new ListingSnapshot<>(put(this.root, listing, listing.hashCode(), 0), newSize);
+	}
+
+	/**Returns a ListingSnapshot containing the Listings in this ListingSnapshot, except the Listing for the given item.
+	If there is no such Listing, this ListingSnapshot is returned.
+	@param item the item whose Listing should be removed.
+	@return a ListingSnapshot without a Listing for the given item.
+	*/
+	public ListingSnapshot<E> without(Item item){
+		if(!this.contains(item)){
+			return this;
+		}
+		return new ListingSnapshot<>(remove(this.root, item, item.hashCode(), 0), this.size - 1);
+	}
+
+	/**Returns the Listing in this ListingSnapshot which represents the same item as the given Item, or null if no such Listing exists.
+	@param item The item to search for.
+	@return the Listing in this ListingSnapshot which represents the same item as the given Item.
+	*/
+	@Override
+	@SuppressWarnings("unchecked")
+	public E get(Item item){
+		if(item == null){
+			return null;
+		}
+		return (E)find(this.root, item, item.hashCode());
+	}
+
+	/**Returns whether this ListingSnapshot contains a Listing for the same item as the given Object.
+	@param o the Object to search for.
+	@return whether this ListingSnapshot contains a Listing for the same item as the given Object.
+	*/
+	@Override
+	public boolean contains(Object o){
+		return o instanceof Item && this.get((Item)o) != null;
+	}
+
+	/**Returns the number of Listings in this ListingSnapshot.
+	@return the number of Listings in this ListingSnapshot.
+	*/
+	@Override
+	public int size(){
+		return this.size;
+	}
+
+	/**Returns an iterator over the Listings in this ListingSnapshot. The iterator does not support removal.
+	@return an iterator over the Listings in this ListingSnapshot.
+	*/
+	@Override
+	public Iterator<E> iterator(){
+		return new SnapshotIterator<>(this.root);
+	}
+
+	/**Returns a deep copy of this ListingSnapshot as a ListingHashSet, which can be modified.
+	@return the copied collection.
+	*/
+	@Override
+	public ListingHashSet<E> copy(){
+		return ListingCollection.super.copy();
+	}
+
+	/**Returns a String representation of this ListingSnapshot.
+	@return a String representation of this ListingSnapshot.
+	*/
+	@Override
+	public String toString(){
+		return this.getJSONRepresentation().toString();
+	}
+
+	//Node of the hash trie. Below MAX_DEPTH, bitmap records which of the 32 children are present, and entries holds them in order,
+	//each either a Listing or a Node. At MAX_DEPTH, bitmap is unused and entries holds Listings whose items have equal hashes.
+	private static final class Node{
+		private final int bitmap;
+		private final Object[] entries;
+
+		private Node(int bitmap, Object[] entries){
+			this.bitmap = bitmap;
+			this.entries = entries;
+		}
+	}
+
+	private static Listing find(Node node, Item item, int hash){
+		for(int shift = 0; ; shift += BITS){
+			if(shift >= Integer.SIZE){
+				for(Object entry : node.entries){
+					if(item.equals(entry)){
+						return (Listing)entry;
+					}
+				}
+				return null;
+			}
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if((node.bitmap & bit) == 0){
+				return null;
+			}
+			Object entry = node.entries[Integer.bitCount(node.bitmap & (bit - 1))];
+			if(!(entry instanceof Node)){
+				return item.equals(entry) ? (Listing)entry : null;
+			}
+			node = (Node)entry;
+		}
+	}
+
+	//Returns a copy of node with the given Listing added, replacing any Listing for the same item.
+	private static Node put(Node node, Listing listing, int hash, int shift){
+		if(shift >= Integer.SIZE){
+			for(int i = 0; i < node.entries.length; i++){
+				if(listing.equals(node.entries[i])){
+					return new Node(0, replaced(node.entries, i, listing));
+				}
+			}
+			return new Node(0, inserted(node.entries, node.entries.length, listing));
+		}
+		int bit = 1 << ((hash >>> shift) & MASK);
+		int index = Integer.bitCount(node.bitmap & (bit - 1));
+		if((node.bitmap & bit) == 0){
+			return new Node(node.bitmap | bit, inserted(node.entries, index, listing));
+		}
+		Object entry = node.entries[index];
+		Object replacement;
+		if(entry instanceof Node){
+			replacement = put((Node)entry, listing, hash, shift + BITS);
+		} else if(listing.equals(entry)){
+			replacement = listing;
+		} else {
+			Listing existing = (Listing)entry;
+			replacement = put(put(EMPTY_NODE, existing, existing.hashCode(), shift + BITS), listing, hash, shift + BITS);
+		}
+		return new Node(node.bitmap, replaced(node.entries, index, replacement));
+	}
+
+	//Returns a copy of node without the Listing for the given item, which must be present.
+	private static Node remove(Node node, Item item, int hash, int shift){
+		if(shift >= Integer.SIZE){
+			for(int i = 0; i < node.entries.length; i++){
+				if(item.equals(node.entries[i])){
+					return new Node(0, removed(node.entries, i));
+				}
+			}
+			return node;
+		}
+		int bit = 1 << ((hash >>> shift) & MASK);
+		int index = Integer.bitCount(node.bitmap & (bit - 1));
+		Object entry = node.entries[index];
+		if(!(entry instanceof Node)){
+			return new Node(node.bitmap & ~bit, removed(node.entries, index));
+		}
+		Node child = remove((Node)entry, item, hash, shift + BITS);
+		if(child.entries.length == 1 && !(child.entries[0] instanceof Node)){
+			//Listings do not need to be stored deeper than the first level at which they are alone.
+			return new Node(node.bitmap, replaced(node.entries, index, child.entries[0]));
+		}
+		return new Node(node.bitmap, replaced(node.entries, index, child));
+	}
+
+	private static Object[] inserted(Object[] entries, int index, Object entry){
+		Object[] answer = new Object[entries.length + 1];
+		System.arraycopy(entries, 0, answer, 0, index);
+		answer[index] = entry;
+		System.arraycopy(entries, index, answer, index + 1, entries.length - index);
+		return answer;
+	}
+
+	private static Object[] replaced(Object[] entries, int index, Object entry){
+		Object[] answer = entries.clone();
+		answer[index] = entry;
+		return answer;
+	}
+
+	private static Object[] removed(Object[] entries, int index){
+		Object[] answer = new Object[entries.length - 1];
+		System.arraycopy(entries, 0, answer, 0, index);
+		System.arraycopy(entries, index + 1, answer, index, entries.length - index - 1);
+		return answer;
+	}
+
+	//Depth-first iterator over the Listings in a hash trie.
+	private static final class SnapshotIterator<E> implements Iterator<E>{
+		private final Node[] nodes = new Node[MAX_DEPTH + 1];
+		private final int[] positions = new int[MAX_DEPTH + 1];
+		private int depth;
+		private Object next;
+
+		private SnapshotIterator(Node root){
+			this.nodes[0] = root;
+			this.depth = 0;
+			this.advance();
+		}
+
+		@Override
+		public boolean hasNext(){
+			return this.next != null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next(){
+			if(this.next == null){
+				throw new NoSuchElementException();
+			}
+			E answer = (E)this.next;
+			this.advance();
+			return answer;
+		}
+
+		private void advance(){
+			while(this.depth >= 0){
+				Node node = this.nodes[this.depth];
+				if(this.positions[this.depth] == node.entries.length){
+					this.depth--;
+					continue;
+				}
+				Object entry = node.entries[this.positions[this.depth]++];
+				if(entry instanceof Node){
+					this.depth++;
+					this.nodes[this.depth] = (Node)entry;
+					this.positions[this.depth] = 0;
+				} else {
+					this.next = entry;
+					return;
+				}
+			}
+			this.next = null;
+		}
+	}
+}
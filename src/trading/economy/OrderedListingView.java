@@ -0,0 +1,40 @@
+package trading.economy;
+
+import java.util.*;
+
+//Unmodifiable ListingCollection which iterates over the Listings of one or more ListingCollections in a given order, and looks up Listings in those collections.
+class OrderedListingView<E extends Listing> extends AbstractCollection<E> implements ListingCollection<E> {
+	private final List<ListingCollection<? extends E>> sources;
+	private final List<E> ordered;
+
+	public OrderedListingView(Comparator<? super E> order, List<ListingCollection<? extends E>> sources){
+		this.sources = List.copyOf(sources);
+		ArrayList<E> ordered = new ArrayList<>();
+		for(ListingCollection<? extends E> source : this.sources){
+			ordered.addAll(source);
+		}
+		ordered.sort(order);
+		this.ordered = Collections.unmodifiableList(ordered);
+	}
+
+	@Override
+	public E get(Item item){
+		for(ListingCollection<? extends E> source : this.sources){
+			E answer = source.get(item);
+			if(answer != null){
+				return answer;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Iterator<E> iterator(){
+		return this.ordered.iterator();
+	}
+
+	@Override
+	public int size(){
+		return this.ordered.size();
+	}
+}
@@ -0,0 +1,780 @@
+package trading.economy;
+
+import org.json.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.zip.*;
+
+//TODO:
+
+/**Compact, immutable index of Backpack.tf community prices, built from a Backpack.tf prices object.<br>
+Each price is keyed by item name, quality, and price index (for unusuals, the effect's int value; otherwise 0), and is stored as a fixed-width record of
+currency, value, high value, and last update time. Records are addressed by slot, an int between 0 and size() - 1.<br>
+Only the entries used by the bot are retained: tradable, craftable prices of Unusual items, and the price of keys.<br>
+Instances can be obtained from the fromBackpackTFRepresentation methods or from a PriceIndex.Builder. 
+The Reader variant of fromBackpackTFRepresentation streams the prices object, so the full response never needs to be held in memory.<br>
+A PriceIndex can be saved as a binary snapshot with writeSnapshot. A snapshot has the same layout as the index in memory, 
+so openSnapshot maps it into memory and queries it in place rather than parsing it.
+*/
+
+public class PriceIndex{
+	/**Name of the item whose price determines the key-to-scrap ratio.
+	*/
+	public static final String KEY_NAME = "Mann Co. Supply Crate Key";
+
+	//Snapshot layout: header, string table (names then currencies, each an int length followed by UTF-8 bytes), records, lookup table.
+	//The header holds the magic number, version, record count, name count, currency count, string table length, lookup table capacity, 
+	//and a CRC32 checksum of everything after the header.
+	private static final int SNAPSHOT_MAGIC = 0x54463250;
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int HEADER_SIZE = 36;
+
+	//Record layout: name ID, quality, currency ID, 2 bytes of padding, price index, value, high value, last update.
+	private static final int RECORD_SIZE = 36;
+	private static final int NAME_OFFSET = 0;
+	private static final int QUALITY_OFFSET = 4;
+	private static final int CURRENCY_OFFSET = 5;
+	private static final int PRICE_INDEX_OFFSET = 8;
+	private static final int VALUE_OFFSET = 12;
+	private static final int VALUE_HIGH_OFFSET = 20;
+	private static final int LAST_UPDATE_OFFSET = 28;
+
+	private final String[] names;
+	private final String[] currencies;
+	private final Map<String, Integer> nameIDs;
+	private final ByteBuffer records;
+	private final ByteBuffer table;
+	private final int size;
+	private final int tableMask;
+
+	//records holds size() records, and table is an open-addressed table of slots (-1 for empty) whose capacity is a power of two.
+	private PriceIndex(String[] names, String[] currencies, ByteBuffer records, ByteBuffer table){
+		this.names = names;
+		this.currencies = currencies;
+		this.nameIDs = new HashMap<>();
+		for(int i = 0; i < names.length; i++){
+			this.nameIDs.put(names[i], i);
+		}
+		this.records = records;
+		this.table = table;
+		this.size = records.capacity() / RECORD_SIZE;
+		this.tableMask = table.capacity() / Integer.BYTES - 1;
+	}
+
+	/**Returns the number of prices in this PriceIndex.
+	@return the number of prices in this PriceIndex.
+	*/
+	public int size(){
+		return this.size;
+	}
+
+	/**Returns the slot of the price for the given item, or -1 if this PriceIndex has no price for it.
+	@param name the item's name.
+	@param quality the item's quality.
+	@param priceIndex the item's price index. For unusuals, this is the effect's int value, otherwise 0.
+	@throws NullPointerException if name or quality is null.
+	@return the slot of the price for the given item, or -1 if there is none.
+	*/
+	public int find(String name, Quality quality, int priceIndex){
+		if(quality == null){
+			throw new NullPointerException();
+		}
+		Integer nameID = this.nameIDs.get(name);
+		if(nameID == null){
+			return -1;
+		}
+		return this.table.getInt(this.probe(nameID, quality.getIntValue(), priceIndex) * Integer.BYTES);
+	}
+
+	/**Returns the slot of the price for the given Item, or -1 if this PriceIndex has no price for it.
+	@param item the item to look up.
+	@throws NullPointerException if item is null.
+	@return the slot of the price for the given Item, or -1 if there is none.
+	*/
+	public int find(Item item){
+		return this.find(item.getName(), item.getQuality(), item.getEffect() == null ? 0 : item.getEffect().getIntValue());
+	}
+
+	/**Returns the name of the item priced in the given slot.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return the name of the item priced in the given slot.
+	*/
+	public String getName(int slot){
+		return this.names[this.records.getInt(slot * RECORD_SIZE + NAME_OFFSET)];
+	}
+
+	/**Returns the quality of the item priced in the given slot.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return the quality of the item priced in the given slot.
+	*/
+	public Quality getQuality(int slot){
+		return Quality.forInt(this.records.get(slot * RECORD_SIZE + QUALITY_OFFSET));
+	}
+
+	/**Returns the price index of the item priced in the given slot. For unusuals, this is the effect's int value, otherwise 0.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return the price index of the item priced in the given slot.
+	*/
+	public int getPriceIndex(int slot){
+		return this.records.getInt(slot * RECORD_SIZE + PRICE_INDEX_OFFSET);
+	}
+
+	/**Returns the currency of the price in the given slot, for example "keys" or "metal".
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return the currency of the price in the given slot.
+	*/
+	public String getCurrency(int slot){
+		return this.currencies[this.records.get(slot * RECORD_SIZE + CURRENCY_OFFSET)];
+	}
+
+	/**Returns the value of the price in the given slot, in its currency.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return the value of the price in the given slot.
+	*/
+	public double getValue(int slot){
+		return this.records.getDouble(slot * RECORD_SIZE + VALUE_OFFSET);
+	}
+
+	/**Returns whether the price in the given slot has a high value.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return whether the price in the given slot has a high value.
+	*/
+	public boolean hasValueHigh(int slot){
+		return !Double.isNaN(this.records.getDouble(slot * RECORD_SIZE + VALUE_HIGH_OFFSET));
+	}
+
+	/**Returns the high value of the price in the given slot, or its value if it has no high value.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return the high value of the price in the given slot.
+	*/
+	public double getValueHigh(int slot){
+		return this.hasValueHigh(slot) ? this.records.getDouble(slot * RECORD_SIZE + VALUE_HIGH_OFFSET) : this.getValue(slot);
+	}
+
+	/**Returns the time the price in the given slot was last updated, in seconds since the epoch.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return the time the price in the given slot was last updated.
+	*/
+	public long getLastUpdate(int slot){
+		return this.records.getLong(slot * RECORD_SIZE + LAST_UPDATE_OFFSET);
+	}
+
+	/**Determines whether the price in the given slot differs from the price of the same item in the given PriceIndex.<br>
+	The prices differ if the given PriceIndex has no price for the item, or if their currencies, values, high values or last update times differ.
+	@param slot the slot.
+	@param previous the PriceIndex to compare to.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@throws NullPointerException if previous is null.
+	@return whether the price in the given slot differs from the price of the same item in previous.
+	*/
+	public boolean changedFrom(int slot, PriceIndex previous){
+		int previousSlot = previous.find(this.getName(slot), this.getQuality(slot), this.getPriceIndex(slot));
+		if(previousSlot == -1){
+			return true;
+		}
+		int record = slot * RECORD_SIZE;
+		int previousRecord = previousSlot * RECORD_SIZE;
+		return this.records.getLong(record + LAST_UPDATE_OFFSET) != previous.records.getLong(previousRecord + LAST_UPDATE_OFFSET) 
+		|| this.records.getLong(record + VALUE_OFFSET) != previous.records.getLong(previousRecord + VALUE_OFFSET) 
+		|| this.records.getLong(record + VALUE_HIGH_OFFSET) != previous.records.getLong(previousRecord + VALUE_HIGH_OFFSET) 
+		|| !this.getCurrency(slot).equals(previous.getCurrency(previousSlot));
+	}
+
+	/**Returns the latest last update time of any price in this PriceIndex, in seconds since the epoch, or 0 if this PriceIndex is empty.
+	@return the latest last update time of any price in this PriceIndex.
+	*/
+	public long getLatestUpdate(){
+		long answer = 0;
+		for(int i = 0; i < this.size; i++){
+			answer = Math.max(answer, this.getLastUpdate(i));
+		}
+		return answer;
+	}
+
+	/**Returns a PriceIndex containing every price in this PriceIndex, with the prices in updates added to it. 
+	Where both contain a price for the same item, the price in updates is used.<br>
+	This is used to apply the result of an incremental Backpack.tf get prices API call, which only contains the prices updated since a given time, to a complete PriceIndex.
+	If no price in updates differs from the price of the same item in this PriceIndex (see changedFrom), this PriceIndex itself is returned.
+	@param updates the prices to add.
+	@throws NullPointerException if updates is null.
+	@return a PriceIndex containing the prices in this PriceIndex and updates.
+	*/
+	public PriceIndex merge(PriceIndex updates){
+		boolean changed = false;
+		for(int i = 0; i < updates.size && !changed; i++){
+			changed = updates.changedFrom(i, this);
+		}
+		if(!changed){
+			return this;
+		}
+		Builder answer = new Builder();
+		for(PriceIndex index : new PriceIndex[]{this, updates}){
+			for(int i = 0; i < index.size; i++){
+				answer.add(index.getName(i), index.getQuality(i), index.getPriceIndex(i), index.getCurrency(i), index.getValue(i), 
+					index.hasValueHigh(i) ? index.getValueHigh(i) : Double.NaN, index.getLastUpdate(i));
+			}
+		}
+		return answer.build();
+	}
+
+	/**Determines whether the price in the given slot is in one of the two acceptable currencies: keys and metal.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return whether the price in the given slot is in keys or metal.
+	*/
+	public boolean acceptableCurrency(int slot){
+		String currency = this.getCurrency(slot);
+		return currency.equals("keys") || currency.equals("metal");
+	}
+
+	/**Constructs and returns a PriceRange from the price in the given slot.<br>
+	This is equivalent to calling PriceRange.fromBackpackTFRepresentation on the price's Backpack.tf representation.
+	@param slot the slot.
+	@param keyScrapRatio the key-to-scrap ratio to use for this calculation.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@throws IllegalArgumentException if the price's currency is neither keys nor metal, or if keyScrapRatio is non-positive.
+	@return the constructed PriceRange.
+	*/
+	public PriceRange getCommunityPrice(int slot, int keyScrapRatio){
+		int low = (int)this.getValue(slot);
+		int high = (int)this.getValueHigh(slot);
+		String currency = this.getCurrency(slot);
+		if(currency.equals("keys")){
+			return new PriceRange(new Price(low, 0), new Price(high, 0), keyScrapRatio);
+		} else if(currency.equals("metal")){
+			return new PriceRange(new Price(0, low), new Price(0, high), keyScrapRatio);
+		} else {
+			throw new IllegalArgumentException("Unsupported currency: " + currency);
+		}
+	}
+
+	/**Returns the Backpack.tf representation of the price in the given slot (see https://backpack.tf/api/index.html, v4PricesEntry).<br>
+	The returned JSONObject contains the currency, value, value_high (if present) and last_update keys.
+	@param slot the slot.
+	@throws IndexOutOfBoundsException if slot is out of range.
+	@return the Backpack.tf representation of the price in the given slot.
+	*/
+	public JSONObject getBackpackTFRepresentation(int slot){
+		JSONObject answer = new JSONObject();
+		answer.put("currency", this.getCurrency(slot));
+		answer.put("value", this.getValue(slot));
+		if(this.hasValueHigh(slot)){
+			answer.put("value_high", this.getValueHigh(slot));
+		}
+		answer.put("last_update", this.getLastUpdate(slot));
+		return answer;
+	}
+
+	/**Constructs and returns a PriceIndex from the given Backpack.tf prices object,
+	the result of a Backpack.tf get prices API call (see https://backpack.tf/api/index.html#/webapi-economy/App\Controllers\API\WebAPI\IGetPrices::v4).<br>
+	The given JSONObject is not retained, and can be discarded once this method returns.
+	@param pricesObject the Backpack.tf prices object.
+	@throws NullPointerException if pricesObject is null.
+	@throws JSONException if pricesObject is malformed.
+	@return the constructed PriceIndex.
+	*/
+	public static PriceIndex fromBackpackTFRepresentation(JSONObject pricesObject){
+		Builder answer = new Builder();
+		JSONObject items = pricesObject.getJSONObject("response").getJSONObject("items");
+		String[] itemNames = JSONObject.getNames(items);
+		if(itemNames == null){
+			return answer.build();
+		}
+		for(String name : itemNames){
+			JSONObject prices = items.getJSONObject(name).optJSONObject("prices");
+			if(prices == null){
+				continue;
+			}
+			if(name.equals(KEY_NAME) && prices.has("6")){
+				JSONObject keyPrice = prices.getJSONObject("6").getJSONObject("Tradable").getJSONArray("Craftable").getJSONObject(0);
+				answer.add(name, Quality.UNIQUE, 0, keyPrice);
+			}
+			if(!prices.has("5")){
+				continue;
+			}
+			JSONObject tradable = prices.getJSONObject("5").optJSONObject("Tradable");
+			JSONObject unusualPrices = tradable == null ? null : tradable.optJSONObject("Craftable");
+			if(unusualPrices == null){
+				continue;
+			}
+			for(String effect : JSONObject.getNames(unusualPrices)){
+				int priceIndex;
+				try{
+					priceIndex = Integer.parseInt(effect);
+				} catch(NumberFormatException e){
+					continue;
+				}
+				answer.add(name, Quality.UNUSUAL, priceIndex, unusualPrices.getJSONObject(effect));
+			}
+		}
+		return answer.build();
+	}
+
+	/**Constructs and returns a PriceIndex by streaming a Backpack.tf prices object from the given Reader.<br>
+	The prices object is read incrementally, and only the retained price entries are ever materialized. 
+	The resulting PriceIndex is the same as the one returned by the JSONObject variant of this method for the same prices object.
+	@param input the Reader to read the Backpack.tf prices object from. The Reader is not closed by this method.
+	@throws NullPointerException if input is null.
+	@throws JSONException if the prices object is malformed, or if reading from input fails. In the latter case, the JSONException's cause will be the IOException.
+	@return the constructed PriceIndex.
+	*/
+	public static PriceIndex fromBackpackTFRepresentation(Reader input){
+		JSONTokener tokener = new JSONTokener(input);
+		Builder answer = new Builder();
+		boolean[] foundItems = new boolean[]{false};
+		readObject(tokener, (String responseKey) -> {
+			if(!responseKey.equals("response")){
+				skipValue(tokener);
+				return;
+			}
+			readObject(tokener, (String itemsKey) -> {
+				if(!itemsKey.equals("items")){
+					skipValue(tokener);
+					return;
+				}
+				foundItems[0] = true;
+				readObject(tokener, (String name) -> readItem(tokener, name, answer));
+			});
+		});
+		if(!foundItems[0]){
+			throw new JSONException("JSONObject[\"items\"] not found.");
+		}
+		return answer.build();
+	}
+
+	/**Writes this PriceIndex to the given file as a binary snapshot, which can be opened with openSnapshot. If the file exists, it is overwritten.<br>
+	The snapshot consists of a versioned header containing a checksum, a table of the item names and currencies, 
+	the fixed-width price records, and the lookup table used by find.
+	@param path the file to write the snapshot to.
+	@throws NullPointerException if path is null.
+	@throws IOException if an IO error occurs.
+	*/
+	public void writeSnapshot(Path path) throws IOException {
+		ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+		DataOutputStream strings = new DataOutputStream(stringBytes);
+		for(String name : this.names){
+			writeString(strings, name);
+		}
+		for(String currency : this.currencies){
+			writeString(strings, currency);
+		}
+		ByteBuffer stringTable = ByteBuffer.wrap(stringBytes.toByteArray());
+		ByteBuffer records = this.records.duplicate().clear();
+		ByteBuffer table = this.table.duplicate().clear();
+		CRC32 checksum = new CRC32();
+		checksum.update(stringTable.duplicate());
+		checksum.update(records.duplicate());
+		checksum.update(table.duplicate());
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(this.size).putInt(this.names.length).putInt(this.currencies.length);
+		header.putInt(stringTable.capacity()).putInt(table.capacity() / Integer.BYTES).putLong(checksum.getValue());
+		header.flip();
+		ByteBuffer[] snapshot = new ByteBuffer[]{header, stringTable, records, table};
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+			while(table.hasRemaining()){
+				channel.write(snapshot);
+			}
+		}
+	}
+
+	/**Opens the binary snapshot in the given file, which was written by writeSnapshot.<br>
+	The file is mapped into memory and the returned PriceIndex queries it in place, so only the item names and currencies are read when it is opened. 
+	The file must not be modified while the returned PriceIndex is in use. A mapping is only released once the PriceIndex is garbage collected, 
+	and on some platforms, such as Windows, a mapped file cannot be replaced either, so use readSnapshot for a file which will be replaced.
+	@param path the file containing the snapshot.
+	@throws NullPointerException if path is null.
+	@throws IOException if an IO error occurs, or if the file is not a snapshot, is of an unsupported version, or is corrupted.
+	@return a PriceIndex backed by the given snapshot.
+	*/
+	public static PriceIndex openSnapshot(Path path) throws IOException {
+		ByteBuffer snapshot;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+			if(channel.size() > Integer.MAX_VALUE){
+				throw new IOException("Price snapshot is too large: " + path);
+			}
+			snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		return fromSnapshot(snapshot, path);
+	}
+
+	/**Reads the binary snapshot in the given file, which was written by writeSnapshot, into memory.<br>
+	Unlike openSnapshot, the whole file is read, and the file is closed and not mapped once this method returns, so it can be replaced or deleted while the returned PriceIndex is in use.
+	@param path the file containing the snapshot.
+	@throws NullPointerException if path is null.
+	@throws IOException if an IO error occurs, or if the file is not a snapshot, is of an unsupported version, or is corrupted.
+	@return a PriceIndex read from the given snapshot.
+	*/
+	public static PriceIndex readSnapshot(Path path) throws IOException {
+		return fromSnapshot(ByteBuffer.wrap(Files.readAllBytes(path)), path);
+	}
+
+	//Validates the given snapshot, read from the given path, and returns a PriceIndex backed by it.
+	private static PriceIndex fromSnapshot(ByteBuffer snapshot, Path path) throws IOException {
+		if(snapshot.capacity() < HEADER_SIZE || snapshot.getInt(0) != SNAPSHOT_MAGIC){
+			throw new IOException("Not a price snapshot: " + path);
+		}
+		if(snapshot.getInt(4) != SNAPSHOT_VERSION){
+			throw new IOException("Unsupported price snapshot version " + snapshot.getInt(4) + ": " + path);
+		}
+		int size = snapshot.getInt(8);
+		int nameCount = snapshot.getInt(12);
+		int currencyCount = snapshot.getInt(16);
+		int stringTableLength = snapshot.getInt(20);
+		int tableCapacity = snapshot.getInt(24);
+		if(size < 0 || nameCount < 0 || currencyCount < 0 || stringTableLength < 0 || tableCapacity <= size || Integer.bitCount(tableCapacity) != 1 
+		|| (long)HEADER_SIZE + stringTableLength + (long)size * RECORD_SIZE + (long)tableCapacity * Integer.BYTES != snapshot.capacity()){
+			throw new IOException("Corrupted price snapshot: " + path);
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(snapshot.duplicate().position(HEADER_SIZE));
+		if(checksum.getValue() != snapshot.getLong(28)){
+			throw new IOException("Price snapshot checksum mismatch: " + path);
+		}
+		ByteBuffer stringTable = snapshot.slice(HEADER_SIZE, stringTableLength);
+		String[] names = new String[nameCount];
+		String[] currencies = new String[currencyCount];
+		try{
+			for(int i = 0; i < nameCount; i++){
+				names[i] = readString(stringTable);
+			}
+			for(int i = 0; i < currencyCount; i++){
+				currencies[i] = readString(stringTable);
+			}
+		} catch(BufferUnderflowException | NegativeArraySizeException e){
+			throw new IOException("Corrupted price snapshot: " + path, e);
+		}
+		ByteBuffer records = snapshot.slice(HEADER_SIZE + stringTableLength, size * RECORD_SIZE);
+		ByteBuffer table = snapshot.slice(HEADER_SIZE + stringTableLength + size * RECORD_SIZE, tableCapacity * Integer.BYTES);
+		PriceIndex answer = new PriceIndex(names, currencies, records, table);
+		if(answer.nameIDs.size() != nameCount || !answer.validRecords()){
+			throw new IOException("Corrupted price snapshot: " + path);
+		}
+		return answer;
+	}
+
+	/**Determines whether the given file begins like a snapshot written by writeSnapshot. This does not check whether the snapshot is valid.
+	@param path the file to check.
+	@throws NullPointerException if path is null.
+	@throws IOException if an IO error occurs.
+	@return whether the given file begins like a snapshot.
+	*/
+	public static boolean isSnapshot(Path path) throws IOException {
+		try(DataInputStream input = new DataInputStream(Files.newInputStream(path))){
+			return input.readInt() == SNAPSHOT_MAGIC;
+		} catch(EOFException e){
+			return false;
+		}
+	}
+
+	/**Returns a String representation of this PriceIndex.
+	@return a String representation of this PriceIndex.
+	*/
+	@Override
+	public String toString(){
+		return "trading.economy.PriceIndex: " + this.size() + " prices";
+	}
+
+	//Checks that every record refers to an existing name, currency and quality, and that every lookup table entry refers to a record.
+	private boolean validRecords(){
+		for(int i = 0; i < this.size; i++){
+			int record = i * RECORD_SIZE;
+			int nameID = this.records.getInt(record + NAME_OFFSET);
+			int currencyID = this.records.get(record + CURRENCY_OFFSET);
+			if(nameID < 0 || nameID >= this.names.length || currencyID < 0 || currencyID >= this.currencies.length){
+				return false;
+			}
+			try{
+				Quality.forInt(this.records.get(record + QUALITY_OFFSET));
+			} catch(NoSuchElementException e){
+				return false;
+			}
+		}
+		int filled = 0;
+		for(int i = 0; i <= this.tableMask; i++){
+			int slot = this.table.getInt(i * Integer.BYTES);
+			if(slot < -1 || slot >= this.size){
+				return false;
+			} else if(slot != -1){
+				filled++;
+			}
+		}
+		return filled == this.size;
+	}
+
+	private static void writeString(DataOutputStream output, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	//Reads a string from the current position of the buffer, advancing it.
+	private static String readString(ByteBuffer buffer){
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	//Reads an item's entry in the prices object, adding any retained prices to the given Builder.
+	private static void readItem(JSONTokener tokener, String name, Builder answer){
+		readObject(tokener, (String itemKey) -> {
+			if(!itemKey.equals("prices")){
+				skipValue(tokener);
+				return;
+			}
+			readObject(tokener, (String quality) -> {
+				if(quality.equals("5")){
+					readCraftable(tokener, (Object craftable) -> {
+						if(!(craftable instanceof JSONObject)){
+							return;
+						}
+						JSONObject unusualPrices = (JSONObject)craftable;
+						for(String effect : unusualPrices.keySet()){
+							try{
+								answer.add(name, Quality.UNUSUAL, Integer.parseInt(effect), unusualPrices.getJSONObject(effect));
+							} catch(NumberFormatException e){}
+						}
+					});
+				} else if(quality.equals("6") && name.equals(KEY_NAME)){
+					readCraftable(tokener, (Object craftable) -> {
+						if(!(craftable instanceof JSONArray)){
+							throw new JSONException("Key prices were not a JSONArray.");
+						}
+						answer.add(name, Quality.UNIQUE, 0, ((JSONArray)craftable).getJSONObject(0));
+					});
+				} else {
+					skipValue(tokener);
+				}
+			});
+		});
+	}
+
+	//Reads a quality's entry in an item's prices, passing the Tradable Craftable value, if any, to the given consumer.
+	private static void readCraftable(JSONTokener tokener, Consumer<Object> craftableConsumer){
+		readObject(tokener, (String tradable) -> {
+			if(!tradable.equals("Tradable")){
+				skipValue(tokener);
+				return;
+			}
+			readObject(tokener, (String craftable) -> {
+				if(!craftable.equals("Craftable")){
+					skipValue(tokener);
+					return;
+				}
+				craftableConsumer.accept(tokener.nextValue());
+			});
+		});
+	}
+
+	private static interface KeyReader{
+		void read(String key);
+	}
+
+	//Reads a JSON object from the tokener, calling keyReader on each key. keyReader must consume the key's value.
+	private static void readObject(JSONTokener tokener, KeyReader keyReader){
+		if(tokener.nextClean() != '{'){
+			throw tokener.syntaxError("A JSONObject text must begin with '{'");
+		}
+		if(tokener.nextClean() == '}'){
+			return;
+		}
+		tokener.back();
+		while(true){
+			char c = tokener.nextClean();
+			if(c != '"' && c != '\''){
+				throw tokener.syntaxError("Expected a quoted key");
+			}
+			String key = tokener.nextString(c);
+			if(tokener.nextClean() != ':'){
+				throw tokener.syntaxError("Expected a ':' after a key");
+			}
+			keyReader.read(key);
+			c = tokener.nextClean();
+			if(c == '}'){
+				return;
+			} else if(c != ','){
+				throw tokener.syntaxError("Expected a ',' or '}'");
+			}
+		}
+	}
+
+	//Consumes the next JSON value from the tokener without constructing it, unless it is a primitive.
+	private static void skipValue(JSONTokener tokener){
+		char c = tokener.nextClean();
+		if(c == '"' || c == '\''){
+			tokener.nextString(c);
+			return;
+		}
+		if(c != '{' && c != '['){
+			tokener.back();
+			tokener.nextValue();
+			return;
+		}
+		int depth = 1;
+		while(depth > 0){
+			c = tokener.next();
+			if(c == 0){
+				throw tokener.syntaxError("Unterminated JSON value");
+			} else if(c == '"' || c == '\''){
+				tokener.nextString(c);
+			} else if(c == '{' || c == '['){
+				depth++;
+			} else if(c == '}' || c == ']'){
+				depth--;
+			}
+		}
+	}
+
+	//Returns the table position holding the slot of the given item, or the empty position where it would be inserted.
+	private int probe(int nameID, int quality, int priceIndex){
+		int position = Long.hashCode(key(nameID, quality, priceIndex) * 0x9E3779B97F4A7C15L) & this.tableMask;
+		while(true){
+			int slot = this.table.getInt(position * Integer.BYTES);
+			if(slot == -1){
+				return position;
+			}
+			int record = slot * RECORD_SIZE;
+			if(this.records.getInt(record + NAME_OFFSET) == nameID && this.records.get(record + QUALITY_OFFSET) == (byte)quality && this.records.getInt(record + PRICE_INDEX_OFFSET) == priceIndex){
+				return position;
+			}
+			position = (position + 1) & this.tableMask;
+		}
+	}
+
+	private static long key(int nameID, int quality, int priceIndex){
+		return ((long)nameID << 32) | ((long)(quality & 0xFF) << 24) | (priceIndex & 0xFFFFFFL);
+	}
+
+	/**Class used to construct a PriceIndex one price at a time. If the same item is added more than once, the last price added is used.
+	*/
+	public static class Builder{
+		private final List<String> names = new ArrayList<>();
+		private final List<String> currencies = new ArrayList<>();
+		private final Map<String, Integer> nameIDs = new HashMap<>();
+		private final Map<String, Integer> currencyIDs = new HashMap<>();
+		private final Map<Long, Integer> slots = new HashMap<>();
+		private int[] nameOf = new int[16];
+		private byte[] qualityOf = new byte[16];
+		private int[] priceIndexOf = new int[16];
+		private byte[] currencyOf = new byte[16];
+		private double[] value = new double[16];
+		private double[] valueHigh = new double[16];
+		private long[] lastUpdate = new long[16];
+		private int size = 0;
+
+		/**Constructs an empty Builder.
+		*/
+		public Builder(){}
+
+		/**Adds the given price to this Builder.
+		@param name the item's name.
+		@param quality the item's quality.
+		@param priceIndex the item's price index. For unusuals, this is the effect's int value, otherwise 0.
+		@param currency the price's currency, for example "keys" or "metal".
+		@param value the price's value.
+		@param valueHigh the price's high value, or NaN if it has none.
+		@param lastUpdate the time the price was last updated, in seconds since the epoch.
+		@throws NullPointerException if name, quality or currency is null.
+		@return this Builder.
+		*/
+		public Builder add(String name, Quality quality, int priceIndex, String currency, double value, double valueHigh, long lastUpdate){
+			if(name == null || quality == null || currency == null){
+				throw new NullPointerException();
+			}
+			Integer nameID = this.nameIDs.get(name);
+			if(nameID == null){
+				nameID = this.names.size();
+				this.names.add(name);
+				this.nameIDs.put(name, nameID);
+			}
+			Integer currencyID = this.currencyIDs.get(currency);
+			if(currencyID == null){
+				currencyID = this.currencies.size();
+				this.currencies.add(currency);
+				this.currencyIDs.put(currency, currencyID);
+			}
+			Integer slot = this.slots.get(key(nameID, quality.getIntValue(), priceIndex));
+			if(slot == null){
+				slot = this.size++;
+				this.ensureCapacity(this.size);
+				this.slots.put(key(nameID, quality.getIntValue(), priceIndex), slot);
+			}
+			this.nameOf[slot] = nameID;
+			this.qualityOf[slot] = (byte)quality.getIntValue();
+			this.priceIndexOf[slot] = priceIndex;
+			this.currencyOf[slot] = (byte)(int)currencyID;
+			this.value[slot] = value;
+			this.valueHigh[slot] = valueHigh;
+			this.lastUpdate[slot] = lastUpdate;
+			return this;
+		}
+
+		/**Adds the price described by the given Backpack.tf price entry (see https://backpack.tf/api/index.html, v4PricesEntry) to this Builder.
+		@param name the item's name.
+		@param quality the item's quality.
+		@param priceIndex the item's price index. For unusuals, this is the effect's int value, otherwise 0.
+		@param entry the Backpack.tf price entry.
+		@throws NullPointerException if any parameter is null.
+		@throws JSONException if entry is malformed.
+		@return this Builder.
+		*/
+		public Builder add(String name, Quality quality, int priceIndex, JSONObject entry){
+			double valueHigh = entry.has("value_high") ? entry.getDouble("value_high") : Double.NaN;
+			long lastUpdate = entry.has("last_update") ? entry.getLong("last_update") : 0;
+			return this.add(name, quality, priceIndex, entry.getString("currency"), entry.getDouble("value"), valueHigh, lastUpdate);
+		}
+
+		/**Constructs and returns a PriceIndex containing every price added to this Builder.
+		@return the constructed PriceIndex.
+		*/
+		public PriceIndex build(){
+			ByteBuffer records = ByteBuffer.allocate(this.size * RECORD_SIZE);
+			for(int i = 0; i < this.size; i++){
+				int record = i * RECORD_SIZE;
+				records.putInt(record + NAME_OFFSET, this.nameOf[i]);
+				records.put(record + QUALITY_OFFSET, this.qualityOf[i]);
+				records.put(record + CURRENCY_OFFSET, this.currencyOf[i]);
+				records.putInt(record + PRICE_INDEX_OFFSET, this.priceIndexOf[i]);
+				records.putDouble(record + VALUE_OFFSET, this.value[i]);
+				records.putDouble(record + VALUE_HIGH_OFFSET, this.valueHigh[i]);
+				records.putLong(record + LAST_UPDATE_OFFSET, this.lastUpdate[i]);
+			}
+			int capacity = Integer.highestOneBit(Math.max(this.size, 1) * 2) * 2;
+			ByteBuffer table = ByteBuffer.allocate(capacity * Integer.BYTES);
+			for(int i = 0; i < capacity; i++){
+				table.putInt(i * Integer.BYTES, -1);
+			}
+			PriceIndex answer = new PriceIndex(this.names.toArray(new String[0]), this.currencies.toArray(new String[0]), records, table);
+			for(int i = 0; i < this.size; i++){
+				table.putInt(answer.probe(this.nameOf[i], this.qualityOf[i], this.priceIndexOf[i]) * Integer.BYTES, i);
+			}
+			return answer;
+		}
+
+		private void ensureCapacity(int capacity){
+			if(capacity <= this.value.length){
+				return;
+			}
+			int newLength = this.value.length * 2;
+			this.nameOf = Arrays.copyOf(this.nameOf, newLength);
+			this.qualityOf = Arrays.copyOf(this.qualityOf, newLength);
+			this.priceIndexOf = Arrays.copyOf(this.priceIndexOf, newLength);
+			this.currencyOf = Arrays.copyOf(this.currencyOf, newLength);
+			this.value = Arrays.copyOf(this.value, newLength);
+			this.valueHigh = Arrays.copyOf(this.valueHigh, newLength);
+			this.lastUpdate = Arrays.copyOf(this.lastUpdate, newLength);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package trading.economy;
+
+import java.time.*;
+import java.util.*;
+
+//Remembers a fingerprint of the inputs each listing's price was last calculated from: its community price, the key-to-scrap ratio,
+//for Hats, their purchase price and purchase date, and the day, as price functions may depend on a hat's age or on Backpack.tf listings, which are not tracked.
+//A listing is dirty if its inputs no longer match its fingerprint, if it has none, or if it was marked dirty by an event such as a trade.
+final class PriceInputs{
+	private final Map<Item, Fingerprint> fingerprints;
+
+	PriceInputs(){
+		this.fingerprints = new HashMap<>();
+	}
+
+	/**Returns those of the given listings whose prices were calculated from different inputs, or were never calculated.
+	@param listings the listings to check.
+	@param keyScrapRatio the current key-to-scrap ratio.
+	@param day the current day.
+	@throws NullPointerException if listings or day is null.
+	@return the dirty listings, in the order of listings.
+	*/
+	synchronized <T extends Listing> List<T> dirty(Collection<T> listings, int keyScrapRatio, LocalDate day){
+		List<T> answer = new ArrayList<>();
+		for(T listing : listings){
+			if(!new Fingerprint(listing, keyScrapRatio, day).equals(this.fingerprints.get(listing))){
+				answer.add(listing);
+			}
+		}
+		return answer;
+	}
+
+	/**Records that the given listing's price was calculated from the given inputs, making it clean until they change.
+	@param listing the listing, as it was when its price was calculated.
+	@param keyScrapRatio the key-to-scrap ratio its price was calculated with.
+	@param day the day its price was calculated on.
+	@throws NullPointerException if listing or day is null.
+	*/
+	synchronized void calculated(Listing listing, int keyScrapRatio, LocalDate day){
+		this.fingerprints.put(new Item(listing.getName(), listing.getQuality(), listing.getEffect()), new Fingerprint(listing, keyScrapRatio, day));
+	}
+
+	/**Marks the listing for the given item dirty, so that its price is recalculated even if its inputs are unchanged.
+	@param item the item.
+	@throws NullPointerException if item is null.
+	*/
+	synchronized void markDirty(Item item){
+		this.fingerprints.remove(item);
+	}
+
+	/**Forgets every listing which is not in the given collection.
+	@param listings the listings to remember.
+	@throws NullPointerException if listings is null.
+	*/
+	synchronized void retainAll(Collection<? extends Listing> listings){
+		Set<Item> keep = new HashSet<>();
+		for(Listing listing : listings){
+			keep.add(new Item(listing.getName(), listing.getQuality(), listing.getEffect()));
+		}
+		this.fingerprints.keySet().retainAll(keep);
+	}
+
+	private static final class Fingerprint{
+		private final PriceRange communityPrice;
+		private final int keyScrapRatio;
+		private final LocalDate day;
+		private final Price purchasePrice;
+		private final LocalDate dateBought;
+
+		private Fingerprint(Listing listing, int keyScrapRatio, LocalDate day){
+			if(day == null){
+				throw new NullPointerException();
+			}
+			this.communityPrice = listing.getCommunityPrice();
+			this.keyScrapRatio = keyScrapRatio;
+			this.day = day;
+			this.purchasePrice = listing instanceof Hat ? ((Hat)listing).getPurchasePrice() : null;
+			this.dateBought = listing instanceof Hat ? ((Hat)listing).getDateBought() : null;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof Fingerprint)){
+				return false;
+			}
+			Fingerprint f = (Fingerprint)o;
+			return this.communityPrice.equals(f.communityPrice) && this.keyScrapRatio == f.keyScrapRatio && this.day.equals(f.day)
+				&& Objects.equals(this.purchasePrice, f.purchasePrice) && Objects.equals(this.dateBought, f.dateBought);
+		}
+
+		@Override
+		public int hashCode(){
+			return Objects.hash(this.communityPrice, this.keyScrapRatio, this.day, this.purchasePrice, this.dateBought);
+		}
+	}
+}
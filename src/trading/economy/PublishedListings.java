@@ -0,0 +1,129 @@
+package trading.economy;
+
+import java.util.*;
+
+//Remembers what was last sent to Backpack.tf for each listing (its price, a hash of its description, and its intent),
+//so that a sync only needs to send the listings which were created or changed since, and remove the ones which are no longer visible.
+//Listings are keyed by their item and intent, as a Hat and a BuyListing for the same item are different Backpack.tf listings.
+//Backpack.tf identifies a listing to remove by the id of the listed item, so only Hats with an id can be removed.
+//Other listings which are no longer visible stay remembered as published, as they are still on Backpack.tf.
+final class PublishedListings{
+	private final Map<Pair<Item, Integer>, Published> published;
+
+	PublishedListings(){
+		this.published = new HashMap<>();
+	}
+
+	/**Compares the given listings to the ones which were last published, and returns the differences.<br>
+	Nothing is remembered until the returned Changes are passed to commit.
+	@param listings the listings which should be published, in the order they should be sent.
+	@param ldf the ListingDescriptionFunction used to generate descriptions. null indicates no descriptions.
+	@param all whether every visible listing should be treated as changed.
+	@throws NullPointerException if listings is null.
+	@return the differences between the given listings and the ones which were last published.
+	*/
+	synchronized Changes changes(ListingCollection<? extends Listing> listings, ListingDescriptionFunction ldf, boolean all){
+		ListingList<Listing> changed = new ListingList<>();
+		Map<Pair<Item, Integer>, Published> visible = new HashMap<>();
+		for(Listing listing : listings){
+			Published current;
+			try{
+				current = new Published(listing, ldf);
+			} catch(NonVisibleListingException e){
+				continue;
+			}
+			Pair<Item, Integer> key = key(listing);
+			visible.put(key, current);
+			if(all || !current.equals(this.published.get(key))){
+				changed.add(listing);
+			}
+		}
+		List<Listing> removed = new ArrayList<>();
+		Map<Pair<Item, Integer>, Published> remembered = new HashMap<>(visible);
+		for(Map.Entry<Pair<Item, Integer>, Published> entry : this.published.entrySet()){
+			Published current = visible.get(entry.getKey());
+			//A Hat whose id changed is a different Backpack.tf listing, so the old one is removed as well.
+			if(current == null || (entry.getValue().id != null && !entry.getValue().id.equals(current.id))){
+				if(entry.getValue().id != null){
+					removed.add(entry.getValue().listing);
+				} else if(current == null){
+					remembered.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		return new Changes(changed, removed, remembered);
+	}
+
+	/**Remembers the listings in the given Changes as published.
+	@param changes the Changes which were published.
+	@throws NullPointerException if changes is null.
+	*/
+	synchronized void commit(Changes changes){
+		this.published.clear();
+		this.published.putAll(changes.remembered);
+	}
+
+	//Listings which were created or changed, and listings which can and should be removed, since the last publish, along with what will be published once they are.
+	static final class Changes{
+		private final ListingList<Listing> changed;
+		private final List<Listing> removed;
+		private final Map<Pair<Item, Integer>, Published> remembered;
+
+		private Changes(ListingList<Listing> changed, List<Listing> removed, Map<Pair<Item, Integer>, Published> remembered){
+			this.changed = changed;
+			this.removed = Collections.unmodifiableList(removed);
+			this.remembered = remembered;
+		}
+
+		ListingCollection<Listing> changed(){
+			return this.changed;
+		}
+
+		List<Listing> removed(){
+			return this.removed;
+		}
+	}
+
+	private static Pair<Item, Integer> key(Listing listing){
+		return Pair.of(new Item(listing.getName(), listing.getQuality(), listing.getEffect()), intent(listing));
+	}
+
+	//The Backpack.tf intent of the given listing: 1 to sell, 0 to buy.
+	private static int intent(Listing listing){
+		return listing instanceof Hat ? 1 : 0;
+	}
+
+	//What was sent to Backpack.tf for a single listing.
+	private static final class Published{
+		private final Listing listing;
+		private final Price price;
+		private final int descriptionHash;
+		private final int intent;
+		private final String id;
+
+		private Published(Listing listing, ListingDescriptionFunction ldf) throws NonVisibleListingException {
+			if(!listing.isVisible()){
+				throw new NonVisibleListingException();
+			}
+			this.listing = listing;
+			this.price = listing.getPrice();
+			this.descriptionHash = ldf == null ? 0 : ldf.generateDescription(listing).hashCode();
+			this.intent = intent(listing);
+			this.id = listing instanceof Hat ? ((Hat)listing).getID() : null;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof Published)){
+				return false;
+			}
+			Published p = (Published)o;
+			return this.price.equals(p.price) && this.descriptionHash == p.descriptionHash && this.intent == p.intent && Objects.equals(this.id, p.id);
+		}
+
+		@Override
+		public int hashCode(){
+			return Objects.hash(this.price, this.descriptionHash, this.intent, this.id);
+		}
+	}
+}
@@ -41,7 +41,7 @@ public enum Quality{
 	@return the described String.
 	*/
 	public String removePrefix(String fullName){
-		if(fullName.length() > this.prefix.length() && fullName.toLowerCase().substring(0, this.prefix.length()).equals(this.prefix.toLowerCase())){
+		if(fullName.length() > this.prefix.length() && fullName.regionMatches(true, 0, this.prefix, 0, this.prefix.length())){
 			return fullName.substring(this.prefix.length() + 1);
 		} else {
 			return fullName;
@@ -0,0 +1,122 @@
+package trading.economy;
+
+import org.json.*;
+import java.time.*;
+import java.util.*;
+
+//TODO:
+
+/**Class recording the progress of a price recalculation: which Listings' prices have been calculated, and their tentative prices and priorities.<br>
+A TradingBot records each price it calculates in the RecalculationCheckpoint it is given, and skips Listings whose prices are already recorded,
+so a recalculation which is interrupted, for example by a restart, can be resumed from a saved checkpoint instead of starting over.
+Tentative prices are only committed to the bot along with the rest of the recalculation, so prices are still committed all at once.<br>
+Tentative prices are only valid for the key-to-scrap ratio and the day they were calculated with.
+A TradingBot discards the prices in a checkpoint which was recorded with a different key-to-scrap ratio or on a different day.<br>
+This class is thread-safe.
+*/
+
+public class RecalculationCheckpoint{
+	private final Map<Item, Pair<Price, Integer>> hats;
+	private final Map<Item, Pair<Price, Integer>> buyListings;
+	private int keyScrapRatio;
+	private LocalDate day;
+
+	/**Constructs an empty RecalculationCheckpoint.
+	*/
+	public RecalculationCheckpoint(){
+		this.hats = new HashMap<>();
+		this.buyListings = new HashMap<>();
+		this.keyScrapRatio = 0;
+		this.day = null;
+	}
+
+	/**Returns the number of tentative prices in this RecalculationCheckpoint.
+	@return the number of tentative prices in this RecalculationCheckpoint.
+	*/
+	public synchronized int size(){
+		return this.hats.size() + this.buyListings.size();
+	}
+
+	/**Discards every tentative price in this RecalculationCheckpoint.
+	*/
+	public synchronized void clear(){
+		this.hats.clear();
+		this.buyListings.clear();
+	}
+
+	//Discards the tentative prices unless they were calculated with the given key-to-scrap ratio on the given day, then remembers the ratio and day.
+	synchronized void start(int keyScrapRatio, LocalDate day){
+		if(this.keyScrapRatio != keyScrapRatio || !day.equals(this.day)){
+			this.clear();
+		}
+		this.keyScrapRatio = keyScrapRatio;
+		this.day = day;
+	}
+
+	//Records the tentative price and priority of the given listing.
+	synchronized void record(Listing listing, Pair<Price, Integer> price){
+		this.map(listing).put(new Item(listing.getName(), listing.getQuality(), listing.getEffect()), price);
+	}
+
+	//Returns the tentative price and priority of the given listing, or null if there is none.
+	synchronized Pair<Price, Integer> get(Listing listing){
+		return this.map(listing).get(listing);
+	}
+
+	private Map<Item, Pair<Price, Integer>> map(Listing listing){
+		return listing instanceof Hat ? this.hats : this.buyListings;
+	}
+
+	/**Returns a JSON representation of this RecalculationCheckpoint which is compatible with the fromJSONRepresentation method.
+	@return a JSON representation of this RecalculationCheckpoint.
+	*/
+	public synchronized JSONObject getJSONRepresentation(){
+		JSONObject answer = new JSONObject();
+		answer.put("keyScrapRatio", this.keyScrapRatio);
+		answer.put("day", this.day == null ? JSONObject.NULL : this.day.toString());
+		answer.put("hats", toJSON(this.hats));
+		answer.put("buyListings", toJSON(this.buyListings));
+		return answer;
+	}
+
+	/**Constructs and returns a RecalculationCheckpoint from the given JSON input.
+	@param input The JSON input to construct from, a JSONObject returned from the getJSONRepresentation() method.
+	@throws NullPointerException if input is null.
+	@throws JSONException if input is malformed.
+	@return a RecalculationCheckpoint constructed from the given JSON input.
+	*/
+	public static RecalculationCheckpoint fromJSONRepresentation(JSONObject input){
+		RecalculationCheckpoint answer = new RecalculationCheckpoint();
+		answer.keyScrapRatio = input.getInt("keyScrapRatio");
+		try{
+			answer.day = input.isNull("day") ? null : LocalDate.parse(input.getString("day"));
+		} catch(DateTimeException e){
+			throw new JSONException(e);
+		}
+		fromJSON(input.getJSONArray("hats"), answer.hats);
+		fromJSON(input.getJSONArray("buyListings"), answer.buyListings);
+		return answer;
+	}
+
+	private static JSONArray toJSON(Map<Item, Pair<Price, Integer>> prices){
+		JSONArray answer = new JSONArray();
+		for(Map.Entry<Item, Pair<Price, Integer>> entry : prices.entrySet()){
+			JSONObject price = new JSONObject();
+			price.put("name", entry.getKey().getName());
+			price.put("effect", entry.getKey().getEffect().getIntValue());
+			price.put("price", entry.getValue().first().getJSONRepresentation());
+			price.put("priority", entry.getValue().second() == null ? JSONObject.NULL : entry.getValue().second());
+			answer.put(price);
+		}
+		return answer;
+	}
+
+	private static void fromJSON(JSONArray input, Map<Item, Pair<Price, Integer>> prices){
+		for(int i = 0; i < input.length(); i++){
+			JSONObject price = input.getJSONObject(i);
+			Item item = new Item(price.getString("name"), Quality.UNUSUAL, Effect.forInt(price.getInt("effect")));
+			Integer priority = price.isNull("priority") ? null : price.getInt("priority");
+			prices.put(item, new Pair<>(Price.fromJSONRepresentation(price.getJSONObject("price")), priority));
+		}
+	}
+}
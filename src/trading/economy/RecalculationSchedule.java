@@ -0,0 +1,128 @@
+package trading.economy;
+
+import java.util.*;
+
+//Decides which listings' prices most need recalculating. Each listing's urgency is the time since its price was last recalculated,
+//weighted by its priority, its community price, and how much its price has changed when it was recalculated before.
+//Listings which have not been recalculated since this schedule was created are treated as if they were recalculated when it was created.
+final class RecalculationSchedule{
+	//How much a volatility of 1 (a price which changes by its whole value each time it is recalculated) multiplies a listing's urgency by, minus one.
+	private static final double VOLATILITY_WEIGHT = 10;
+	//How much the latest observed change contributes to a listing's volatility.
+	private static final double VOLATILITY_SMOOTHING = 0.3;
+
+	private final Map<Item, Entry> entries;
+	private final long created;
+
+	RecalculationSchedule(long created){
+		this.entries = new HashMap<>();
+		this.created = created;
+	}
+
+	/**Returns up to count of the given listings, in order of how urgently their prices should be recalculated.
+	@param inOrder the listings to choose from, in order of priority.
+	@param order the ordering of inOrder, used to find listings with equal priority.
+	@param keyScrapRatio the key-to-scrap ratio used to weigh the listings' community prices.
+	@param count the maximum number of listings to return.
+	@param now the current time, in milliseconds since the epoch.
+	@throws NullPointerException if inOrder or order is null.
+	@return the listings whose prices should be recalculated next.
+	*/
+	synchronized List<Listing> next(Collection<? extends Listing> inOrder, Comparator<? super Listing> order, int keyScrapRatio, int count, long now){
+		if(count <= 0){
+			return new ArrayList<>();
+		}
+		//A min-heap of the most urgent listings seen so far, so that choosing count of n listings takes O(n log count) time.
+		PriorityQueue<Candidate> chosen = new PriorityQueue<>();
+		int size = inOrder.size();
+		int index = 0;
+		int rank = 0;
+		Listing previous = null;
+		for(Listing listing : inOrder){
+			if(previous != null && order.compare(previous, listing) != 0){
+				rank = index;
+			}
+			previous = listing;
+			index++;
+			//Priority weights range from 2 for the highest priority listings to just above 1 for the lowest.
+			double priorityWeight = 2 - (double)rank / size;
+			double score = (now - this.lastRecalculated(listing)) * priorityWeight * valueWeight(listing, keyScrapRatio) * (1 + VOLATILITY_WEIGHT * this.volatility(listing));
+			if(chosen.size() < count){
+				chosen.add(new Candidate(listing, score));
+			} else if(chosen.peek().score < score){
+				chosen.poll();
+				chosen.add(new Candidate(listing, score));
+			}
+		}
+		List<Listing> answer = new ArrayList<>(chosen.size());
+		while(!chosen.isEmpty()){
+			answer.add(chosen.poll().listing);
+		}
+		Collections.reverse(answer);
+		return answer;
+	}
+
+	/**Records that the given listing's price was recalculated.
+	@param listing the listing, with its price before it was recalculated.
+	@param newPrice the recalculated price.
+	@param keyScrapRatio the key-to-scrap ratio used to compare the prices.
+	@param now the current time, in milliseconds since the epoch.
+	@throws NullPointerException if listing or newPrice is null.
+	*/
+	synchronized void recalculated(Listing listing, Price newPrice, int keyScrapRatio, long now){
+		Entry entry = this.entries.computeIfAbsent(new Item(listing.getName(), listing.getQuality(), listing.getEffect()), (Item i) -> new Entry());
+		entry.lastRecalculated = now;
+		try{
+			double oldValue = listing.getPrice().getScrapValue(keyScrapRatio);
+			double change = Math.abs(newPrice.getScrapValue(keyScrapRatio) - oldValue) / Math.max(oldValue, 1);
+			entry.volatility = (1 - VOLATILITY_SMOOTHING) * entry.volatility + VOLATILITY_SMOOTHING * Math.min(change, 1);
+		} catch(NonVisibleListingException e){} //A listing without a previous price says nothing about volatility.
+	}
+
+	/**Forgets every listing which is not in the given collection.
+	@param listings the listings to remember.
+	@throws NullPointerException if listings is null.
+	*/
+	synchronized void retainAll(Collection<? extends Listing> listings){
+		Set<Item> keep = new HashSet<>();
+		for(Listing listing : listings){
+			keep.add(new Item(listing.getName(), listing.getQuality(), listing.getEffect()));
+		}
+		this.entries.keySet().retainAll(keep);
+	}
+
+	private long lastRecalculated(Listing listing){
+		Entry entry = this.entries.get(listing);
+		return entry == null ? this.created : entry.lastRecalculated;
+	}
+
+	private double volatility(Listing listing){
+		Entry entry = this.entries.get(listing);
+		return entry == null ? 0 : entry.volatility;
+	}
+
+	//Weights listings by the logarithm of their community price in keys, so that expensive listings are recalculated more often without starving cheap ones.
+	private static double valueWeight(Listing listing, int keyScrapRatio){
+		return 1 + Math.log1p((double)listing.getCommunityPrice().middle().getScrapValue(keyScrapRatio) / keyScrapRatio);
+	}
+
+	private static final class Entry{
+		private long lastRecalculated;
+		private double volatility;
+	}
+
+	private static final class Candidate implements Comparable<Candidate>{
+		private final Listing listing;
+		private final double score;
+
+		private Candidate(Listing listing, double score){
+			this.listing = listing;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Candidate c){
+			return Double.compare(this.score, c.score);
+		}
+	}
+}
@@ -12,21 +12,21 @@ An instance of this class can be obtained by using the fromJSON method.
 
 public class TradeOffer{
 	private final TradeOfferResponse response;
-	private final Map<InventoryItem, Integer> itemsToGive;
-	private final Map<InventoryItem, Integer> itemsToReceive;
-	private final int ourValue;
-	private final int theirValue;
+	private final Side ours;
+	private final Side theirs;
 	private final String partnerID;
-	private final String data;
+	private final Reason reason;
+	private final Evaluation evaluation;
+	private String data;
 
-	private TradeOffer(TradeOfferResponse tor, Map<InventoryItem, Integer> itemsToGive, Map<InventoryItem, Integer> itemsToReceive, int ourValue, int theirValue, String partner, String data){
+	private TradeOffer(TradeOfferResponse tor, Side ours, Side theirs, String partner, Reason reason, Evaluation evaluation){
 		this.response = tor;
-		this.itemsToGive = itemsToGive;
-		this.itemsToReceive = itemsToReceive;
-		this.ourValue = ourValue;
-		this.theirValue = theirValue;
+		this.ours = ours;
+		this.theirs = theirs;
 		this.partnerID = partner;
-		this.data = data;
+		this.reason = reason;
+		this.evaluation = evaluation;
+		this.data = null;
 	}
 
 	/**Returns the calculated trade offer response.
@@ -40,28 +40,28 @@ public class TradeOffer{
 	@return the items to give in the trade.
 	*/
 	public Map<InventoryItem, Integer> itemsToGive(){
-		return Map.copyOf(this.itemsToGive);
+		return Map.copyOf(this.ours.items);
 	}
 
 	/**Returns a map from the items to receive in this trade to their evaluations, in scrap.
 	@return the items to receive in the trade.
 	*/
 	public Map<InventoryItem, Integer> itemsToReceive(){
-		return Map.copyOf(this.itemsToReceive);
+		return Map.copyOf(this.theirs.items);
 	}
 
 	/**Returns our value in the trade.
 	@return our value in the trade.
 	*/
 	public int getOurValue(){
-		return this.ourValue;
+		return this.ours.value;
 	}
 
 	/**Returns their value in the trade.
 	@return their value in the trade.
 	*/
 	public int getTheirValue(){
-		return this.theirValue;
+		return this.theirs.value;
 	}
 
 	/**Returns the ID of the partner in this trade.
@@ -78,9 +78,26 @@ public class TradeOffer{
 		<li>The total evaluations of both sides of the trade.</li>
 		<li>The recommended response to the trade, and why this recommendation was made.</li>
 	</ul>
+	The detailed representation is only built the first time this method is called.
 	@return the detailed representation.
 	*/
-	public String getData(){
+	public synchronized String getData(){
+		if(this.data == null){
+			StringBuilder data = new StringBuilder();
+			data.append("Our items include:");
+			this.ours.describe(data);
+			data.append("\n\nTheir items include:");
+			this.theirs.describe(data);
+			data.append("\n\nOur value: ").append(this.ours.value).append(" Their value: ").append(this.theirs.value);
+			switch(this.reason){
+				case OWNER -> data.append("\n\nThe offer was accepted because ").append(this.partnerID).append(" is an owner");
+				case NOT_MORE -> data.append("\n\nThe offer with ").append(this.partnerID).append(" was accepted because our value was less than or equal to their value.");
+				case FORGIVEN -> data.append("\n\nThe offer with ").append(this.partnerID).append(" was accepted because our value was within forgiveness margin ").append(this.evaluation.forgiveness).append(" of their value.");
+				case ITEM_OFFER -> data.append("\n\nThe offer with ").append(this.partnerID).append(" was held because it was an item offer.");
+				case MORE -> data.append("\n\nThe offer with ").append(this.partnerID).append(" was declined because our value was greater than their value.");
+			}
+			this.data = data.toString();
+		}
 		return this.data;
 	}
 
@@ -130,10 +147,6 @@ public class TradeOffer{
 	@return the constructed and evaluated TradeOffer.
 	*/
 	static TradeOffer fromJSON(JSONObject offer, ListingCollection<Hat> hatPrices, ListingCollection<BuyListing> buyListingPrices, int keyScrapRatio, double forgiveness, boolean canHold, List<String> ownerIDs){
-		return evaluate(offer, hatPrices, buyListingPrices, keyScrapRatio, forgiveness, canHold, ownerIDs);
-	}
-
-	private static TradeOffer evaluate(JSONObject offer, ListingCollection<Hat> hatPrices, ListingCollection<BuyListing> buyListingPrices, int keyScrapRatio, double forgiveness, boolean canHold, List<String> ownerIDs){
 		if(hatPrices == null || buyListingPrices == null){
 			throw new NullPointerException();
 		}
@@ -143,87 +156,65 @@ public class TradeOffer{
 		if(keyScrapRatio <= 0){
 			throw new IllegalArgumentException("keyScrapRatio was non-positive");
 		}
+		return evaluate(offer, ValuationTable.fromListings(hatPrices, keyScrapRatio), ValuationTable.fromListings(buyListingPrices, keyScrapRatio), forgiveness, canHold, ownerIDs);
+	}
 
-		JSONArray ourItems = offer.getJSONArray("itemsToGive");
-		JSONArray theirItems = offer.getJSONArray("itemsToReceive");
-		int ourValue = 0;
-		int theirValue = 0;
-		boolean isItem = false;
-		boolean ourItemUnpriced = false;
-		StringBuffer data = new StringBuffer();
-		Map<InventoryItem, Integer> ourInventoryItems = new HashMap<>();
-		Map<InventoryItem, Integer> theirInventoryItems = new HashMap<>();
-
-		data.append("Our items include:");
-		for(Object o : ourItems){
-			data.append("\n");
-			JSONObject j = (JSONObject)o;
-			InventoryItem item = fromTradeOfferItem(j);
-			int value = evaluateItem(item, hatPrices, keyScrapRatio);
-			ourInventoryItems.put(item, value);
-			
-			if(value != 0){
-				data.append(formatItemString(item) + ", valued at " + value);
-				ourValue += value;
-			} else {
-				data.append(formatItemString(item) + ", not in our pricelist");
-				ourItemUnpriced = true;
-				isItem = true;
-			}
+	/**Constructs, evaluates, and returns a TradeOffer from the given data, using prebuilt ValuationTables instead of ListingCollections.<br>
+	The offer is evaluated exactly as in the other fromJSON functions, but each item only costs a single table lookup. 
+	This is intended for callers which evaluate many offers against the same prices, and rebuild their tables only when those prices change.
+	@param offer the JSONObject represenation of the offer.
+	@param ourValues values for the Bot's items.
+	@param theirValues values for the items that the Bot wants to buy.
+	@param forgiveness a value to scale down the other person's price by. Must be between 0 and 1.
+	@param canHold whether the TradeOffer can be evaluated as TradeOfferResponse.HOLD.
+	@param ownerIDs a list of Steam IDs to always accept offers from. null indicates no IDs to automatically accept.
+	@throws NullPointerException if any parameter other than ownerIDs is null.
+	@throws IllegalArgumentException if preconditions on forgiveness are violated.
+	@throws JSONException if offer is malformed.
+	@return the constructed and evaluated TradeOffer.
+	*/
+	static TradeOffer fromJSON(JSONObject offer, ValuationTable ourValues, ValuationTable theirValues, double forgiveness, boolean canHold, List<String> ownerIDs){
+		if(ourValues == null || theirValues == null){
+			throw new NullPointerException();
 		}
-
-		data.append("\n\nTheir items include:");
-		for(Object o : theirItems){
-			data.append("\n");
-			JSONObject j = (JSONObject)o;
-			InventoryItem item = fromTradeOfferItem(j);
-			int value = evaluateItem(item, buyListingPrices, keyScrapRatio);
-			theirInventoryItems.put(item, value);
-			
-			if(value != 0){
-				data.append(formatItemString(item) + ", valued at " + value);
-				theirValue += value;
-			} else {
-				data.append(formatItemString(item) + ", not in our pricelist");
-				isItem = true;
-			}
+		if(Double.isNaN(forgiveness) || forgiveness < 0 || forgiveness > 1){
+			throw new IllegalArgumentException("Invalid forgiveness value: " + forgiveness);
 		}
+		return evaluate(offer, ourValues, theirValues, forgiveness, canHold, ownerIDs);
+	}
+
+	//Returns whether this offer was evaluated with the given tables.
+	boolean evaluatedWith(ValuationTable ourValues, ValuationTable theirValues){
+		return this.evaluation.ourValues == ourValues && this.evaluation.theirValues == theirValues;
+	}
 
-		String totals = "Our value: " + ourValue + " Their value: " + theirValue;
-		data.append("\n\n" + totals);
+	//Evaluates the offer this TradeOffer was constructed from again, with the same parameters but the given tables.
+	TradeOffer reevaluate(ValuationTable ourValues, ValuationTable theirValues){
+		return evaluate(this.evaluation.offer, ourValues, theirValues, this.evaluation.forgiveness, this.evaluation.canHold, this.evaluation.ownerIDs);
+	}
+
+	private static TradeOffer evaluate(JSONObject offer, ValuationTable ourValues, ValuationTable theirValues, double forgiveness, boolean canHold, List<String> ownerIDs){
+		Side ours = new Side(offer.getJSONArray("itemsToGive"), ourValues);
+		Side theirs = new Side(offer.getJSONArray("itemsToReceive"), theirValues);
+		Evaluation evaluation = new Evaluation(offer, ourValues, theirValues, forgiveness, canHold, ownerIDs);
 		String partner = offer.getString("partner");
+		int ourValue = ours.value;
+		int theirValue = theirs.value;
+		//Unpriced items to give make the offer an item offer, and are valued effectively infinitely.
+		boolean ourItemUnpriced = ours.unpriced;
+		boolean isItem = ours.unpriced || theirs.unpriced;
 
 		if(ownerIDs != null && ownerIDs.contains(partner)){
-			data.append("\n\nThe offer was accepted because " + partner + " is an owner");
-			return new TradeOffer(TradeOfferResponse.ACCEPT, ourInventoryItems, theirInventoryItems, ourValue, theirValue, partner, data.toString());
+			return new TradeOffer(TradeOfferResponse.ACCEPT, ours, theirs, partner, Reason.OWNER, evaluation);
 		} else if(ourValue <= theirValue && !ourItemUnpriced){
-			data.append("\n\nThe offer with " + partner + " was accepted because our value was less than or equal to their value.");
-			return new TradeOffer(TradeOfferResponse.ACCEPT, ourInventoryItems, theirInventoryItems, ourValue, theirValue, partner, data.toString());
+			return new TradeOffer(TradeOfferResponse.ACCEPT, ours, theirs, partner, Reason.NOT_MORE, evaluation);
 		} else if(ourValue * (1 - forgiveness) <= theirValue && !ourItemUnpriced){
-			data.append("\n\nThe offer with " + partner + " was accepted because our value was within forgiveness margin " + forgiveness + " of their value.");
-			return new TradeOffer(TradeOfferResponse.ACCEPT, ourInventoryItems, theirInventoryItems, ourValue, theirValue, partner, data.toString());
+			return new TradeOffer(TradeOfferResponse.ACCEPT, ours, theirs, partner, Reason.FORGIVEN, evaluation);
 		} else if(isItem && canHold){
-			data.append("\n\nThe offer with " + partner + " was held because it was an item offer.");
-			return new TradeOffer(TradeOfferResponse.HOLD, ourInventoryItems, theirInventoryItems, ourValue, theirValue, partner, data.toString());
+			return new TradeOffer(TradeOfferResponse.HOLD, ours, theirs, partner, Reason.ITEM_OFFER, evaluation);
 		} else {
-			data.append("\n\nThe offer with " + partner + " was declined because our value was greater than their value.");
-			return new TradeOffer(TradeOfferResponse.DECLINE, ourInventoryItems, theirInventoryItems, ourValue, theirValue, partner, data.toString());
-		}
-	}
-
-	private static int evaluateItem(InventoryItem item, ListingCollection<? extends Listing> set, int keyScrapRatio){
-		try{
-			return set.get(item).getPrice().getScrapValue(keyScrapRatio);
-		} catch(NullPointerException e){
-			String n = item.getName();
-			if(n.equals("Mann Co. Supply Crate Key")){return keyScrapRatio;}
-			else if(n.equals("Refined Metal")){return 9;}
-			else if(n.equals("Reclaimed Metal")){return 3;}
-			else if(n.equals("Scrap Metal")){return 1;}
-		} catch(NonVisibleListingException e){
-			return 0;
+			return new TradeOffer(TradeOfferResponse.DECLINE, ours, theirs, partner, Reason.MORE, evaluation);
 		}
-		return 0;
 	}
 
 	private static String formatItemString(InventoryItem item){
@@ -248,12 +239,112 @@ public class TradeOffer{
 		return new InventoryItem(name, quality, effect, id);
 	}
 
+	//What an offer was evaluated from and with, so that it can be evaluated again if the tables it was evaluated with are out of date when it is committed.
+	private static final class Evaluation{
+		private final JSONObject offer;
+		private final ValuationTable ourValues;
+		private final ValuationTable theirValues;
+		private final double forgiveness;
+		private final boolean canHold;
+		private final List<String> ownerIDs;
+
+		private Evaluation(JSONObject offer, ValuationTable ourValues, ValuationTable theirValues, double forgiveness, boolean canHold, List<String> ownerIDs){
+			this.offer = offer;
+			this.ourValues = ourValues;
+			this.theirValues = theirValues;
+			this.forgiveness = forgiveness;
+			this.canHold = canHold;
+			this.ownerIDs = ownerIDs;
+		}
+	}
+
+	//Why an offer received its response.
+	private static enum Reason{
+		OWNER, NOT_MORE, FORGIVEN, ITEM_OFFER, MORE
+	}
+
+	//One side of an offer: its items and their values, and what is needed to describe them later.
+	//Currency items are recognized without constructing an InventoryItem, and only the first of each currency is kept in items, 
+	//so offers containing hundreds of keys and metal only construct an InventoryItem for each other item.
+	private static final class Side{
+		//The position of each non-currency item in the side is marked with OTHER, and each currency item with its currency's ordinal.
+		private static final byte OTHER = -1;
+
+		private final Map<InventoryItem, Integer> items;
+		private final List<InventoryItem> others;
+		private final byte[] order;
+		private final int[] currencyValues;
+		private final InventoryItem[] currencies;
+		private final int value;
+		private final boolean unpriced;
+
+		private Side(JSONArray input, ValuationTable values){
+			Currency[] kinds = Currency.values();
+			this.items = new HashMap<>();
+			this.others = new ArrayList<>();
+			this.order = new byte[input.length()];
+			this.currencyValues = new int[kinds.length];
+			this.currencies = new InventoryItem[kinds.length];
+			int value = 0;
+			boolean unpriced = false;
+			for(int i = 0; i < this.order.length; i++){
+				JSONObject j = input.getJSONObject(i);
+				Currency currency = Currency.forOfferItem(j);
+				if(currency != null){
+					int c = currency.ordinal();
+					if(this.currencies[c] == null){
+						this.currencies[c] = new InventoryItem(currency.getItem().getName(), Quality.UNIQUE, null, j.getString("id"));
+						this.currencyValues[c] = values.valueOf(currency);
+						this.items.put(this.currencies[c], this.currencyValues[c]);
+					}
+					this.order[i] = (byte)c;
+					value += this.currencyValues[c];
+					continue;
+				}
+				InventoryItem item = fromTradeOfferItem(j);
+				int itemValue = values.valueOf(item);
+				this.items.putIfAbsent(item, itemValue);
+				this.others.add(item);
+				this.order[i] = OTHER;
+				if(itemValue != 0){
+					value += itemValue;
+				} else {
+					unpriced = true;
+				}
+			}
+			this.value = value;
+			this.unpriced = unpriced;
+		}
+
+		//Appends a line describing each item in this side, in the order they were offered.
+		private void describe(StringBuilder data){
+			int other = 0;
+			for(byte b : this.order){
+				InventoryItem item;
+				int value;
+				if(b == OTHER){
+					item = this.others.get(other++);
+					value = this.items.get(item);
+				} else {
+					item = this.currencies[b];
+					value = this.currencyValues[b];
+				}
+				data.append("\n").append(formatItemString(item));
+				if(value != 0){
+					data.append(", valued at ").append(value);
+				} else {
+					data.append(", not in our pricelist");
+				}
+			}
+		}
+	}
+
 	/**Returns a hash code for this TradeOffer.
 	@return a hash code for this TradeOffer.
 	*/
 	@Override
 	public int hashCode(){
-		return this.data.hashCode();
+		return this.getData().hashCode();
 	}
 
 	/**Returns a boolean indicating whether this TradeOffer is equal to the given Object.<br>
@@ -273,7 +364,7 @@ public class TradeOffer{
 			return false;
 		}
 		TradeOffer to = (TradeOffer)o;
-		return this.data.equals(to.data);
+		return this.getData().equals(to.getData());
 	}
 
 	/**Returns a non-detailed String representation of this TradeOffer.
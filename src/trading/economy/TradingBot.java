@@ -6,20 +6,37 @@ import java.io.*;
 import java.util.*;
 import java.time.*;
 import java.util.function.*;
+import java.util.concurrent.*;
 
 //TODO:
 
 /**Class representing a trading bot. This class keeps track of all Hats that are in the bot's inventory, as well as all BuyListings that the bot wants to buy, 
-and a Backpack.tf prices object.
+and an index of Backpack.tf community prices.<br>
+The bot's Hats, BuyListings, prices and key-to-scrap ratio are kept in an immutable snapshot which is replaced whenever they change. 
+Methods which only read the bot's state use the current snapshot without locking or copying, and always see a consistent view.<br>
+Methods which change the bot's state hold a private write lock only while computing and publishing the new snapshot. 
+Network requests are made before the lock is taken, so reading the bot's state, for example to evaluate a trade offer, never waits for the network.
 */
 
 public class TradingBot{
 	private final String myID;
 	private final FunctionSuite functions;
-	private volatile ListingCollection<Hat> myHats;
-	private volatile ListingCollection<BuyListing> myListings;
-	private volatile JSONObject pricesObject;
-	private volatile int keyScrapRatio;
+	private volatile State state;
+	//Held by writers while they compute and publish a new state. Never held during network requests.
+	private final Object writeLock = new Object();
+	private Set<Item> acceptableHats;
+	//When acceptability was last determined, in seconds since the epoch, so that prices which have since aged out of the AcceptabilityFunction's window can be found.
+	private long lastAcceptabilityCheck;
+	//Items whose hats or buy listings were changed by trades or inventory reads since the last update, and whose buy listings must be reconciled by the next one. Guarded by writeLock.
+	private final Set<Item> unreconciled = new HashSet<>();
+	//What was last sent to Backpack.tf. Held for the whole of a sync, so that syncs do not overlap.
+	private final PublishedListings published = new PublishedListings();
+	//When each listing's price was last recalculated, and how much it changed.
+	private final RecalculationSchedule schedule = new RecalculationSchedule(System.currentTimeMillis());
+	//The Item described by each inventory description in the last inventory read, keyed by class ID and instance ID, or null if it is not unusual. Guarded by writeLock.
+	private Map<String, Item> descriptions = new HashMap<>();
+	//The inputs each listing's price was last calculated from, so that listings whose inputs have not changed need not be recalculated.
+	private final PriceInputs inputs = new PriceInputs();
 	
 	private static final Comparator<Listing> orderByPriority = (Listing listing1, Listing listing2) -> {
 		Integer priority1 = listing1.getPriority();
@@ -42,52 +59,83 @@ public class TradingBot{
 		}
 		this.myID = botID;
 		this.functions = functions;
-		this.myHats = hats == null ? new ListingHashSet<Hat>() : hats.copy();
-		this.myListings = hats == null ? new ListingHashSet<BuyListing>() : listings.copy();
+		ListingSnapshot<Hat> initialHats = hats == null ? ListingSnapshot.empty() : ListingSnapshot.of(hats.copy());
+		ListingSnapshot<BuyListing> initialListings = hats == null ? ListingSnapshot.empty() : ListingSnapshot.of(listings.copy());
+		this.state = new State(initialHats, initialListings, null, 0);
 		this.updateAndFilter(connection);
 	}
 
-	/**Returns this TradingBot's Hats. The returned collection's iterators will iterate in order of priority.
+	/**Returns this TradingBot's Hats. The returned collection's iterators will iterate in order of priority.<br>
+	The returned collection is an unmodifiable view of the bot's current snapshot, and will not reflect later changes to the bot. 
+	Its Hats are shared with the bot and should not be modified; use the collection's copy method to obtain modifiable copies.
 	@return this TradingBot's Hats.
 	*/
-	public synchronized ListingCollection<Hat> getHats(){
-		ListingList<Hat> list = new ListingList<>(this.myHats.copy());
-		list.sort(orderByPriority);
-		return list;
+	public ListingCollection<Hat> getHats(){
+		return this.state.hatsInOrder();
 	}
 
-	/**Returns this TradingBot's BuyListings. The returned collection's iterators will iterate in order of priority.
+	/**Returns this TradingBot's BuyListings. The returned collection's iterators will iterate in order of priority.<br>
+	The returned collection is an unmodifiable view of the bot's current snapshot, and will not reflect later changes to the bot. 
+	Its BuyListings are shared with the bot and should not be modified; use the collection's copy method to obtain modifiable copies.
 	@return this TradingBot's BuyListings.
 	*/
-	public synchronized ListingCollection<BuyListing> getBuyListings(){
-		ListingList<BuyListing> list = new ListingList<>(this.myListings.copy());
-		list.sort(orderByPriority);
-		return list;
+	public ListingCollection<BuyListing> getBuyListings(){
+		return this.state.listingsInOrder();
 	}
 
-	/**Returns all of this TradingBot's Listings. The returned collection's iterators will iterate in order of priority.
+	/**Returns all of this TradingBot's Listings. The returned collection's iterators will iterate in order of priority.<br>
+	The returned collection is an unmodifiable view of the bot's current snapshot, and will not reflect later changes to the bot. 
+	Its Listings are shared with the bot and should not be modified; use the collection's copy method to obtain modifiable copies.
 	@return all of this TradingBot's Listings.
 	*/
-	public synchronized ListingCollection<Listing> getListings(){
-		ListingList<Listing> list = new ListingList<>(this.myHats.copy());
-		list.addAll(this.myListings.copy());
-		list.sort(orderByPriority);
-		return list;
+	public ListingCollection<Listing> getListings(){
+		return this.state.allInOrder();
 	}
 
 	/**Returns the key-to-scrap ratio that this TradingBot is currently using.
 	@return the key-to-scrap ratio that this TradingBot is currently using.
 	*/
-	public synchronized int getKeyScrapRatio(){
-		return this.keyScrapRatio;
+	public int getKeyScrapRatio(){
+		return this.state.keyScrapRatio;
 	}
 
-	/**Uses the given BackpackTFConnection to send all of this bot's listings to Backpack.tf.
+	/**Uses the given BackpackTFConnection to bring this bot's listings on Backpack.tf up to date.<br>
+	The bot remembers the price, description and intent of each listing it has sent. Only listings which were created or changed since the last successful call are sent, 
+	and sell listings with a known id which were sent but are no longer visible, or no longer belong to the bot, are removed. The first call sends every visible listing.<br>
+	Backpack.tf cannot remove other listings by id, so buy listings and sell listings without an id which are no longer visible are left on Backpack.tf, and are still remembered as sent.<br>
+	If sending fails, nothing is remembered, so the next call sends the same changes again.
 	@param connection the connection to Backpack.tf
 	@throws NullPointerException if connection is null.
+	@throws IOException if the connection throws IOException.
 	*/
-	public synchronized void sendListings(BackpackTFConnection connection) throws IOException {
-		connection.sendListings(this.getListings(), this.functions.listingDescriptionFunction);
+	public void sendListings(BackpackTFConnection connection) throws IOException {
+		this.sendListings(connection, false);
+	}
+
+	/**Uses the given BackpackTFConnection to send all of this bot's visible listings to Backpack.tf, whether or not they have changed since they were last sent.<br>
+	This can be used if listings may have been removed from Backpack.tf by something other than the bot.
+	@param connection the connection to Backpack.tf
+	@throws NullPointerException if connection is null.
+	@throws IOException if the connection throws IOException.
+	*/
+	public void sendAllListings(BackpackTFConnection connection) throws IOException {
+		this.sendListings(connection, true);
+	}
+
+	private void sendListings(BackpackTFConnection connection, boolean all) throws IOException {
+		if(connection == null){
+			throw new NullPointerException();
+		}
+		synchronized(this.published){
+			PublishedListings.Changes changes = this.published.changes(this.getListings(), this.functions.listingDescriptionFunction, all);
+			if(!changes.removed().isEmpty()){
+				connection.removeListings(changes.removed());
+			}
+			if(!changes.changed().isEmpty()){
+				connection.sendListings(changes.changed(), this.functions.listingDescriptionFunction);
+			}
+			this.published.commit(changes);
+		}
 	}
 
 	/**Calls recalculatePrice() on all of this bot's Hats and BuyListings using the given BackpackTFConnection.
@@ -106,9 +154,221 @@ public class TradingBot{
 	@throws NullPointerException if connection is null.
 	*/
 	public void recalculatePrices(BackpackTFConnection connection, Consumer<? super BackpackTFConnection> callback){
-		ListingCollection<Hat> newHats = this.recalculatePriceInternal(this.myHats, connection, this.keyScrapRatio, this.functions.hatPriceFunction, callback);
-		this.myListings = this.recalculatePriceInternal(this.myListings, connection, this.keyScrapRatio, this.functions.buyListingPriceFunction, callback);
-		this.myHats = newHats;
+		State start = this.state;
+		LocalDate today = LocalDate.now();
+		List<Pair<Hat, Pair<Price, Integer>>> newHatPrices = this.recalculatePriceInternal(start.hats, connection, start.keyScrapRatio, this.functions.hatPriceFunction, callback);
+		List<Pair<BuyListing, Pair<Price, Integer>>> newListingPrices = this.recalculatePriceInternal(start.listings, connection, start.keyScrapRatio, this.functions.buyListingPriceFunction, callback);
+		this.commitNewPrices(newHatPrices, newListingPrices, List.of(), List.of(), start.keyScrapRatio, today);
+	}
+
+	/**Calls recalculatePrice() on all of this bot's Hats and BuyListings using the given BackpackTFConnection, running up to the given number of price functions at once.<br>
+	Price functions may call the connection from several threads at once, so it should be thread-safe. 
+	To keep several Backpack.tf API calls in flight without exceeding Backpack.tf's rate limits, the connection should be rate limited, 
+	for example with a RateLimitedBackpackTFConnection. Price functions which do not call the Backpack.tf API are then never delayed.<br>
+	After each Listing's price is calculated, the given callback is called on the calling thread, passing in the Listing and the IOException thrown by its price function, or null if none was thrown.<br>
+	As with the other recalculatePrices methods, all new prices are committed at once after every Listing has been considered. 
+	If the calling thread is interrupted, the recalculation is abandoned without changing any prices, and the thread's interrupt status is set.
+	@param connection the connection to Backpack.tf
+	@param threads the maximum number of price functions to run at once. Must be positive.
+	@param callback callback function to call after each Listing's price is calculated. Ignored if null.
+	@throws NullPointerException if connection is null.
+	@throws IllegalArgumentException if threads is non-positive.
+	*/
+	public void recalculatePrices(BackpackTFConnection connection, int threads, BiConsumer<? super Listing, ? super IOException> callback){
+		this.recalculatePrices(connection, threads, callback, null);
+	}
+
+	/**Calls recalculatePrice() on all of this bot's Hats and BuyListings using the given BackpackTFConnection, running up to the given number of price functions at once, 
+	and recording each new price in the given RecalculationCheckpoint.<br>
+	Listings whose prices are already recorded in the checkpoint are not recalculated, and their recorded prices are committed along with the new ones. 
+	The recorded prices are discarded first if they were calculated with a different key-to-scrap ratio or on a different day.<br>
+	Each new price is recorded before the callback is called for its Listing, so the callback can be used to save the checkpoint. 
+	If the recalculation is interrupted, the checkpoint holds every price calculated so far, and passing it to a later recalculation resumes the interrupted one.<br>
+	Otherwise, this method behaves as recalculatePrices(connection, threads, callback) does. In particular, no prices are committed until every Listing has been considered.
+	@param connection the connection to Backpack.tf
+	@param threads the maximum number of price functions to run at once. Must be positive.
+	@param callback callback function to call after each Listing's price is calculated. Ignored if null.
+	@param checkpoint the RecalculationCheckpoint to resume from and record new prices in. Ignored if null.
+	@throws NullPointerException if connection is null.
+	@throws IllegalArgumentException if threads is non-positive.
+	*/
+	public void recalculatePrices(BackpackTFConnection connection, int threads, BiConsumer<? super Listing, ? super IOException> callback, RecalculationCheckpoint checkpoint){
+		if(connection == null){
+			throw new NullPointerException();
+		}
+		if(threads <= 0){
+			throw new IllegalArgumentException("threads was non-positive.");
+		}
+		State start = this.state;
+		this.recalculatePrices(start.hats, start.listings, start.keyScrapRatio, LocalDate.now(), connection, threads, callback, checkpoint);
+	}
+
+	/**Recalculates the prices of only those of this bot's Hats and BuyListings whose prices are dirty, running up to the given number of price functions at once.<br>
+	A Listing's price is dirty if it has never been calculated by this bot, or if any of the inputs it was last calculated from have changed since: 
+	its community price, the key-to-scrap ratio, a Hat's purchase price or purchase date, or the day, as price functions may depend on a Hat's age. 
+	Listings for items which were traded are also dirty. The prices of other Listings are assumed to be unchanged, and their price functions are not called.<br>
+	Price functions which search Backpack.tf listings also depend on other users' listings, which the bot cannot observe without calling them. 
+	Such prices are still recalculated at least daily, and are kept more current by recalculateStalestPrices, which does not skip clean Listings.<br>
+	Otherwise, this method behaves as recalculatePrices(connection, threads, callback) does.
+	@param connection the connection to Backpack.tf
+	@param threads the maximum number of price functions to run at once. Must be positive.
+	@param callback callback function to call after each Listing's price is calculated. Ignored if null.
+	@throws NullPointerException if connection is null.
+	@throws IllegalArgumentException if threads is non-positive.
+	@return the number of Listings whose prices were recalculated.
+	*/
+	public int recalculateDirtyPrices(BackpackTFConnection connection, int threads, BiConsumer<? super Listing, ? super IOException> callback){
+		return this.recalculateDirtyPrices(connection, threads, callback, null);
+	}
+
+	/**Recalculates the prices of only those of this bot's Hats and BuyListings whose prices are dirty, running up to the given number of price functions at once, 
+	and recording each new price in the given RecalculationCheckpoint.<br>
+	This method combines recalculateDirtyPrices(connection, threads, callback) and recalculatePrices(connection, threads, callback, checkpoint): 
+	of the dirty Listings, those whose prices are already recorded in the checkpoint are not recalculated.
+	@param connection the connection to Backpack.tf
+	@param threads the maximum number of price functions to run at once. Must be positive.
+	@param callback callback function to call after each Listing's price is calculated. Ignored if null.
+	@param checkpoint the RecalculationCheckpoint to resume from and record new prices in. Ignored if null.
+	@throws NullPointerException if connection is null.
+	@throws IllegalArgumentException if threads is non-positive.
+	@return the number of dirty Listings, including those whose prices were recorded in the checkpoint.
+	*/
+	public int recalculateDirtyPrices(BackpackTFConnection connection, int threads, BiConsumer<? super Listing, ? super IOException> callback, RecalculationCheckpoint checkpoint){
+		if(connection == null){
+			throw new NullPointerException();
+		}
+		if(threads <= 0){
+			throw new IllegalArgumentException("threads was non-positive.");
+		}
+		State start = this.state;
+		LocalDate today = LocalDate.now();
+		List<Hat> hats = this.inputs.dirty(start.hats, start.keyScrapRatio, today);
+		List<BuyListing> listings = this.inputs.dirty(start.listings, start.keyScrapRatio, today);
+		this.recalculatePrices(hats, listings, start.keyScrapRatio, today, connection, threads, callback, checkpoint);
+		return hats.size() + listings.size();
+	}
+
+	/**Recalculates the prices of up to count of this bot's Hats and BuyListings, choosing the ones whose prices most need recalculating, 
+	and running up to the given number of price functions at once.<br>
+	Each Listing's urgency is the time since its price was last recalculated, weighted by its priority, its community price, 
+	and how much its price has changed when it was recalculated before. Listings whose prices have not been recalculated since this bot was constructed 
+	are treated as if they were recalculated when it was constructed.<br>
+	Calling this method repeatedly spreads recalculation out over time, so that the listings which matter most are recalculated most often, 
+	and the API calls made by price functions are not concentrated in a single full recalculation.<br>
+	Otherwise, this method behaves as recalculatePrices(connection, threads, callback) does, and the new prices of the chosen Listings are committed at once.
+	@param connection the connection to Backpack.tf
+	@param count the maximum number of Listings to recalculate.
+	@param threads the maximum number of price functions to run at once. Must be positive.
+	@param callback callback function to call after each Listing's price is calculated. Ignored if null.
+	@throws NullPointerException if connection is null.
+	@throws IllegalArgumentException if count is negative or threads is non-positive.
+	@return the number of Listings whose prices were recalculated.
+	*/
+	public int recalculateStalestPrices(BackpackTFConnection connection, int count, int threads, BiConsumer<? super Listing, ? super IOException> callback){
+		if(connection == null){
+			throw new NullPointerException();
+		}
+		if(count < 0){
+			throw new IllegalArgumentException("count was negative.");
+		}
+		if(threads <= 0){
+			throw new IllegalArgumentException("threads was non-positive.");
+		}
+		State start = this.state;
+		List<Hat> hats = new ArrayList<>();
+		List<BuyListing> listings = new ArrayList<>();
+		for(Listing listing : this.schedule.next(start.allInOrder(), orderByPriority, start.keyScrapRatio, count, System.currentTimeMillis())){
+			if(listing instanceof Hat){
+				hats.add((Hat)listing);
+			} else {
+				listings.add((BuyListing)listing);
+			}
+		}
+		this.recalculatePrices(hats, listings, start.keyScrapRatio, LocalDate.now(), connection, threads, callback, null);
+		return hats.size() + listings.size();
+	}
+
+	private void recalculatePrices(Collection<Hat> hats, Collection<BuyListing> listings, int keyScrapRatio, LocalDate today, BackpackTFConnection connection, int threads, 
+		BiConsumer<? super Listing, ? super IOException> callback, RecalculationCheckpoint checkpoint){
+		List<Pair<Hat, Pair<Price, Integer>>> resumedHatPrices = new ArrayList<>();
+		List<Pair<BuyListing, Pair<Price, Integer>>> resumedListingPrices = new ArrayList<>();
+		if(checkpoint != null){
+			checkpoint.start(keyScrapRatio, today);
+			hats = resumed(hats, checkpoint, resumedHatPrices);
+			listings = resumed(listings, checkpoint, resumedListingPrices);
+		}
+		Queue<Pair<Hat, Pair<Price, Integer>>> newHatPrices = new ConcurrentLinkedQueue<>();
+		Queue<Pair<BuyListing, Pair<Price, Integer>>> newListingPrices = new ConcurrentLinkedQueue<>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, (Runnable r) -> {
+			Thread t = new Thread(r, "Price recalculation");
+			t.setDaemon(true);
+			return t;
+		});
+		try{
+			CompletionService<Pair<Listing, IOException>> completion = new ExecutorCompletionService<>(executor);
+			int tasks = submitRecalculations(completion, hats, connection, keyScrapRatio, this.functions.hatPriceFunction, newHatPrices, checkpoint)
+				+ submitRecalculations(completion, listings, connection, keyScrapRatio, this.functions.buyListingPriceFunction, newListingPrices, checkpoint);
+			for(int i = 0; i < tasks; i++){
+				Pair<Listing, IOException> result;
+				try{
+					result = completion.take().get();
+				} catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					return;
+				} catch(ExecutionException e){
+					//Price functions are only expected to throw IOException, so anything else is passed on to the caller, as it would be without threads.
+					Throwable cause = e.getCause();
+					if(cause instanceof Error){
+						throw (Error)cause;
+					}
+					throw (RuntimeException)cause;
+				}
+				if(callback != null){
+					callback.accept(result.first(), result.second());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		this.commitNewPrices(newHatPrices, newListingPrices, resumedHatPrices, resumedListingPrices, keyScrapRatio, today);
+	}
+
+	//Returns those of the given listings without a price in the checkpoint, and adds the others to resumedPrices, paired with their prices.
+	private static <T extends Listing> List<T> resumed(Collection<T> l, RecalculationCheckpoint checkpoint, List<Pair<T, Pair<Price, Integer>>> resumedPrices){
+		List<T> answer = new ArrayList<>();
+		for(T listing : l){
+			Pair<Price, Integer> price = checkpoint.get(listing);
+			if(price == null){
+				answer.add(listing);
+			} else {
+				resumedPrices.add(new Pair<>(listing, price));
+			}
+		}
+		return answer;
+	}
+
+	//Publishes all new prices, and any resumed from a checkpoint, at once, accounting for any trades which occurred while prices were being recalculated. 
+	//New prices are recorded in the schedule, along with the inputs they were calculated from. 
+	//Resumed prices are not, as their inputs may have changed since they were calculated, so they remain dirty.
+	private void commitNewPrices(Collection<Pair<Hat, Pair<Price, Integer>>> newHatPrices, Collection<Pair<BuyListing, Pair<Price, Integer>>> newListingPrices, 
+		Collection<Pair<Hat, Pair<Price, Integer>>> resumedHatPrices, Collection<Pair<BuyListing, Pair<Price, Integer>>> resumedListingPrices, int keyScrapRatio, LocalDate today){
+		synchronized(this.writeLock){
+			State current = this.state;
+			ListingSnapshot<Hat> hats = withNewPrices(withNewPrices(current.hats, resumedHatPrices), newHatPrices);
+			ListingSnapshot<BuyListing> listings = withNewPrices(withNewPrices(current.listings, resumedListingPrices), newListingPrices);
+			State committed = new State(hats, listings, current.prices, current.keyScrapRatio);
+			this.state = committed;
+			//Recorded under the lock, so that the schedule and inputs always match the committed prices when passes commit concurrently.
+			long now = System.currentTimeMillis();
+			for(Collection<? extends Pair<? extends Listing, Pair<Price, Integer>>> newPrices : List.of(newHatPrices, newListingPrices)){
+				for(Pair<? extends Listing, Pair<Price, Integer>> newPrice : newPrices){
+					this.schedule.recalculated(newPrice.first(), newPrice.second().first(), keyScrapRatio, now);
+					this.inputs.calculated(newPrice.first(), keyScrapRatio, today);
+				}
+			}
+			this.schedule.retainAll(committed.allInOrder());
+			this.inputs.retainAll(committed.allInOrder());
+		}
 	}
 
 	/**Constructs, evaluates, and returns a TradeOffer from the given data.<br>
@@ -118,7 +378,7 @@ public class TradingBot{
 	@throws NullPointerException if any parameter is null.
 	@return the constructed and evaluated TradeOffer.
 	*/
-	public synchronized TradeOffer evaluateTrade(JSONObject offer){
+	public TradeOffer evaluateTrade(JSONObject offer){
 		return this.evaluateTrade(offer, 0.0, true, null);
 	}
 
@@ -148,59 +408,109 @@ public class TradingBot{
 	@throws IllegalArgumentException if preconditions on forgiveness are violated.
 	@return the constructed and evaluated TradeOffer.
 	*/
-	public synchronized TradeOffer evaluateTrade(JSONObject offer, double forgiveness, boolean canHold, List<String> ownerIDs){
-		return TradeOffer.fromJSON(offer, this.myHats.copy(), this.myListings.copy(), this.keyScrapRatio, forgiveness, canHold, ownerIDs);
+	public TradeOffer evaluateTrade(JSONObject offer, double forgiveness, boolean canHold, List<String> ownerIDs){
+		State current = this.state;
+		return TradeOffer.fromJSON(offer, current.ourValues(), current.theirValues(), forgiveness, canHold, ownerIDs);
+	}
+
+	/**Resolves the consequences of a trade offer returned by evaluateTrade, as updateItemsAfterOffer does, after checking it against the bot's current listings.<br>
+	Offers can be evaluated by evaluateTrade concurrently, but should be committed with this method one at a time, in the order they are responded to.
+	If the bot's listings, prices or key-to-scrap ratio changed since the offer was evaluated, for example because an earlier offer for one of the same hats was committed,
+	the offer is evaluated again against the current listings, and the re-evaluated offer is committed and returned instead. 
+	Its response may differ from the given offer's, so the caller must respond to the offer with the returned offer's response. 
+	As a hat which was given away in an earlier offer is no longer priced, an offer for it is never accepted again.<br>
+	The check and the update are performed atomically.
+	@param offer The trade offer to commit.
+	@param defaultRatio Ratio of community price to set boughtAt to for any hats which have no BuyListing or whose BuyListing is non-visible. 
+	Must be between 0 and 1, inclusive.
+	@throws NullPointerException if offer is null.
+	@throws IllegalArgumentException if preconditions on defaultRatio are violated.
+	@return the committed offer, which is the given offer unless it was re-evaluated.
+	*/
+	public TradeOffer commitTrade(TradeOffer offer, double defaultRatio){
+		if(Double.isNaN(defaultRatio) || defaultRatio < 0 || defaultRatio > 1){
+			throw new IllegalArgumentException("Invalid default ratio value: " + defaultRatio);
+		}
+		synchronized(this.writeLock){
+			State current = this.state;
+			if(!offer.evaluatedWith(current.ourValues(), current.theirValues())){
+				offer = offer.reevaluate(current.ourValues(), current.theirValues());
+			}
+			if(offer.getResponse() == TradeOfferResponse.ACCEPT){
+				this.updateItemsAfterAcceptedOffer(offer, defaultRatio);
+			}
+			return offer;
+		}
 	}
 
 	/**Resolves the consequences of a trade offer.<br>
 	If the given offer was accepted, the bot adds any hats that were received in the offer, and removes them from its BuyListings.<br>
-	Additionally, any hats which were given away in the offer are removed from the bot.
+	Additionally, any hats which were given away in the offer are removed from the bot. The prices of listings for any traded hats are marked dirty (see recalculateDirtyPrices).
 	@param offer The trade offer to consider.
 	@param defaultRatio Ratio of community price to set boughtAt to for any hats which have no BuyListing or whose BuyListing is non-visible.  
 	Must be between 0 and 1, inclusive.
 	@throws NullPointerException if offer is null.
 	@throws IllegalArgumentException if preconditions on defaultRatio are violated
 	*/
-	public synchronized void updateItemsAfterOffer(TradeOffer offer, double defaultRatio){
+	public void updateItemsAfterOffer(TradeOffer offer, double defaultRatio){
 		if(Double.isNaN(defaultRatio) || defaultRatio < 0 || defaultRatio > 1){
 			throw new IllegalArgumentException("Invalid default ratio value: " + defaultRatio);
 		}
 		if(offer.getResponse() != TradeOfferResponse.ACCEPT){
 			return;
 		}
+		synchronized(this.writeLock){
+			this.updateItemsAfterAcceptedOffer(offer, defaultRatio);
+		}
+	}
 
+	private void updateItemsAfterAcceptedOffer(TradeOffer offer, double defaultRatio){
+		State current = this.state;
+		ListingSnapshot<Hat> hats = current.hats;
+		ListingSnapshot<BuyListing> listings = current.listings;
 		for(InventoryItem item : offer.itemsToReceive().keySet()){
 			if(item.getQuality().equals(Quality.UNUSUAL)){
+				this.inputs.markDirty(item);
+				this.unreconciled.add(item);
 				if(item.getName().equals("Haunted Metal Scrap") || item.getName().equals("Horseless Headless Horsemann's Headtaker")){
 					continue;
 				}
 				boolean defaul = false;
-				BuyListing b = myListings.get(item);
+				BuyListing b = listings.get(item);
 				if(b == null){
 					defaul = true;
 				} else {
 					try{
-						myHats.add(Hat.fromListing(b));
+						Hat h = Hat.fromListing(b);
+						if(!hats.contains(h)){
+							hats = hats.with(h);
+						}
 					} catch(NonVisibleListingException e){
 						defaul = true;
 					}
 				}
 
 				if(defaul){
-					PriceRange communityPrice = PriceRange.fromBackpackTFRepresentation(getHatObject(this.pricesObject, item), this.keyScrapRatio);
-					myHats.add(new Hat(item.getName(), item.getEffect(), communityPrice, communityPrice.middle().scaleBy(defaultRatio, this.keyScrapRatio), LocalDate.now()));
-
+					PriceRange communityPrice = current.prices.getCommunityPrice(getHatSlot(current.prices, item), current.keyScrapRatio);
+					Hat h = new Hat(item.getName(), item.getEffect(), communityPrice, communityPrice.middle().scaleBy(defaultRatio, current.keyScrapRatio), LocalDate.now());
+					if(!hats.contains(h)){
+						hats = hats.with(h);
+					}
 				}
 				
-				myListings.remove(item);
+				listings = listings.without(item);
 			}
 		}
 
 		for(InventoryItem item : offer.itemsToGive().keySet()){
 			if(item.getQuality().equals(Quality.UNUSUAL)){
-				myHats.remove(item);
+				this.inputs.markDirty(item);
+				//A buy listing is made for the hat again if it is still acceptable.
+				this.unreconciled.add(item);
+				hats = hats.without(item);
 			}
 		}
+		this.state = new State(hats, listings, current.prices, current.keyScrapRatio);
 	}
 
 	/**Checks that all of the bot's hats have their ID defined.<br>
@@ -209,20 +519,58 @@ public class TradingBot{
 	@throws NullPointerException if connection is null.
 	@throws IOException if the given SteamConnection throws IOException.
 	*/
-	public synchronized void checkHatIDs(SteamConnection connection) throws IOException {
+	public void checkHatIDs(SteamConnection connection) throws IOException {
 		JSONObject inventory = connection.getInventoryForUser(this.myID);
-		JSONObject items = inventory.getJSONObject("rgInventory");
-		for(String s : JSONObject.getNames(items)){
-			InventoryItem item = fromInventory(items.getJSONObject(s), inventory.getJSONObject("rgDescriptions"));
-			if(!item.getQuality().equals(Quality.UNUSUAL)){
-				continue;
+		synchronized(this.writeLock){
+			this.checkHatIDs(inventory, false);
+		}
+	}
+
+	/**Resolves the IDs of the bot's hats which do not have their ID defined, such as hats which were just received in a trade, using the given SteamConnection.<br>
+	Unlike checkHatIDs, the bot's inventory is only requested if some hat has no ID, and hats which already have an ID are left unchanged.
+	@param connection the SteamConnection to use.
+	@throws NullPointerException if connection is null.
+	@throws IOException if the given SteamConnection throws IOException.
+	@return the number of the bot's hats which still do not have their ID defined, for example because they have not yet appeared in the inventory.
+	*/
+	public int resolveMissingHatIDs(SteamConnection connection) throws IOException {
+		if(connection == null){
+			throw new NullPointerException();
+		}
+		if(missingIDs(this.state.hats) == 0){
+			return 0;
+		}
+		JSONObject inventory = connection.getInventoryForUser(this.myID);
+		synchronized(this.writeLock){
+			this.checkHatIDs(inventory, true);
+			return missingIDs(this.state.hats);
+		}
+	}
+
+	private static int missingIDs(ListingCollection<Hat> hats){
+		int answer = 0;
+		for(Hat h : hats){
+			if(h.getID() == null){
+				answer++;
 			}
-			for(Hat h : this.myHats){
-				if(item.equals(h)){
-					h.setID(item.getID());
-				}
+		}
+		return answer;
+	}
+
+	//Assigns each hat the ID of an unusual in the inventory with the same identity, in one pass over the inventory.
+	//A hat keeps its ID if the inventory has an unusual with that ID and the same identity, so that a hat is not moved between identical items on every check.
+	private void checkHatIDs(JSONObject inventory, boolean onlyMissing){
+		Map<String, Item> unusuals = this.unusualsByID(inventory);
+		State current = this.state;
+		ListingSnapshot<Hat> hats = current.hats;
+		for(Map.Entry<String, Item> asset : unusuals.entrySet()){
+			Hat h = hats.get(asset.getValue());
+			if(h == null || (onlyMissing && h.getID() != null) || hasAsset(unusuals, h)){
+				continue;
 			}
+			hats = hats.with(withID(h, asset.getKey()));
 		}
+		this.state = new State(hats, current.listings, current.prices, current.keyScrapRatio);
 	}
 
 	/**This function replaces the trading bot's hats with all unusual hats read from the bot's inventory, using the given SteamConnection.<br>
@@ -235,103 +583,167 @@ public class TradingBot{
 	@throws IOException if the given SteamConnection throws IOException.
 	@throws IllegalArgumentException if preconditions on defaultRatio are violated.
 	*/
-	public synchronized void readHatsFromInventory(SteamConnection connection, double defaultRatio) throws IOException {
+	public void readHatsFromInventory(SteamConnection connection, double defaultRatio) throws IOException {
 		if(Double.isNaN(defaultRatio) || defaultRatio < 0 || defaultRatio > 1){
 			throw new IllegalArgumentException("Invalid default ratio value: " + defaultRatio);
 		}
-		Map<Hat, Boolean> hasBeenSeen = new HashMap<>();
-		for(Hat h : this.myHats){
-			hasBeenSeen.put(h, false);
-		}
 		JSONObject inventory = connection.getInventoryForUser(this.myID);
-		JSONObject items = inventory.getJSONObject("rgInventory");
-		for(String s : JSONObject.getNames(items)){
-			InventoryItem item = fromInventory(items.getJSONObject(s), inventory.getJSONObject("rgDescriptions"));
-			if(!item.getQuality().equals(Quality.UNUSUAL)){
-				continue;
-			}
+		synchronized(this.writeLock){
+			this.readHatsFromInventory(inventory, defaultRatio);
+		}
+	}
+
+	private void readHatsFromInventory(JSONObject inventory, double defaultRatio){
+		Map<String, Item> unusuals = this.unusualsByID(inventory);
+		State current = this.state;
+		ListingSnapshot<Hat> hats = current.hats;
+		ListingSnapshot<BuyListing> listings = current.listings;
+		Set<Item> hasBeenSeen = new HashSet<>();
+		for(Map.Entry<String, Item> asset : unusuals.entrySet()){
+			Item item = asset.getValue();
 			if(item.getName().equals("Haunted Metal Scrap") || item.getName().equals("Horseless Headless Horsemann's Headtaker")){
 				continue;
 			}
-			if(this.myHats.contains(item)){
-				Hat h = this.myHats.get(item);
-				h.setID(item.getID());
-				hasBeenSeen.put(h, true);
+			Hat existing = hats.get(item);
+			if(existing != null){
+				hasBeenSeen.add(existing);
+				if(!hasAsset(unusuals, existing)){
+					hats = hats.with(withID(existing, asset.getKey()));
+				}
 				continue;
 			}
-			PriceRange communityPrice = PriceRange.fromBackpackTFRepresentation(getHatObject(this.pricesObject, item), this.keyScrapRatio);
-			Hat h = new Hat(item.getName(), item.getEffect(), communityPrice, communityPrice.middle().scaleBy(defaultRatio, this.keyScrapRatio), LocalDate.now());
-			h.setID(item.getID());
-			this.myHats.add(h);
-			this.myListings.remove(h);
+			PriceRange communityPrice = current.prices.getCommunityPrice(getHatSlot(current.prices, item), current.keyScrapRatio);
+			Hat h = new Hat(item.getName(), item.getEffect(), communityPrice, communityPrice.middle().scaleBy(defaultRatio, current.keyScrapRatio), LocalDate.now());
+			h.setID(asset.getKey());
+			hats = hats.with(h);
+			listings = listings.without(h);
 		}
-		for(Map.Entry<Hat, Boolean> me : hasBeenSeen.entrySet()){
-			if(me.getValue() == false){
-				this.myHats.remove(me.getKey());
+		for(Hat h : current.hats){
+			if(!hasBeenSeen.contains(h)){
+				hats = hats.without(h);
+				this.unreconciled.add(new Item(h.getName(), h.getQuality(), h.getEffect()));
 			}
 		}
+		this.state = new State(hats, listings, current.prices, current.keyScrapRatio);
 	}
 
-	/**Updates this TradingBot's prices object, recalculates the key-to-scrap ratio, and updates the community prices on all Hats and BuyListings.<br>
-	Additionally, filters this TradingBot's BuyListings to be exactly those which meet the bot's AcceptabilityFunction.
-	@param connection a connection to Backpack.tf, used to update the prices object.
-	@throws NullPointerException if pricesObject is null.
+	/**Updates this TradingBot's price index, recalculates the key-to-scrap ratio, and updates the community prices on all Hats and BuyListings.<br>
+	Additionally, filters this TradingBot's BuyListings to be exactly those which meet the bot's AcceptabilityFunction.<br>
+	The price index is obtained from the connection's getPriceIndex method, so implementations can avoid materializing the full prices object.<br>
+	The new price index is compared to the previous one, and only prices whose value or last update time changed are re-evaluated, 
+	along with prices whose last update has fallen out of the AcceptabilityFunction's last update window (see AcceptabilityFunction.getLastUpdateWindow) since the previous call.
+	Only the listings for those items, and for items traded or read from the inventory since the previous call, are updated. 
+	Every price is re-evaluated, and every listing updated, on the first call and when the key-to-scrap ratio changes.
+	@param connection a connection to Backpack.tf, used to update the price index.
+	@throws NullPointerException if connection is null.
 	@throws IOException if the given BackpackTFConnection throws IOException.
 	*/
-	public synchronized void updateAndFilter(BackpackTFConnection connection) throws IOException {
-		this.pricesObject = connection.getPricesObject();
-		this.updateKeyScrapRatio();
-		for(Hat h : this.myHats){
-			try{
-				JSONObject j = getHatObject(this.pricesObject, h);
-				h.changeCommunityPrice(PriceRange.fromBackpackTFRepresentation(j, this.keyScrapRatio));
-			} catch(JSONException e){}
+	public void updateAndFilter(BackpackTFConnection connection) throws IOException {
+		PriceIndex prices = connection.getPriceIndex();
+		int keyScrapRatio = this.calculateKeyScrapRatio(prices);
+		synchronized(this.writeLock){
+			this.updateAndFilter(prices, keyScrapRatio);
 		}
-		for(BuyListing b : this.myListings){
-			try{
-				JSONObject j = getHatObject(this.pricesObject, b);
-				b.changeCommunityPrice(PriceRange.fromBackpackTFRepresentation(j, this.keyScrapRatio));
-			} catch(JSONException e){}
+	}
+
+	private void updateAndFilter(PriceIndex prices, int keyScrapRatio){
+		State current = this.state;
+		ListingSnapshot<Hat> hats = current.hats;
+		ListingSnapshot<BuyListing> listings = current.listings;
+		long now = System.currentTimeMillis() / 1000;
+		if(current.prices == null || current.keyScrapRatio != keyScrapRatio){
+			hats = withCommunityPrices(hats, prices, keyScrapRatio);
+			listings = withCommunityPrices(listings, prices, keyScrapRatio);
+			this.acceptableHats = this.findAcceptableHats(prices, keyScrapRatio);
+			for(BuyListing b : listings){
+				if(!this.acceptableHats.contains(b) || hats.contains(b) || prices.find(b) == -1){
+					listings = listings.without(b);
+				}
+			}
+			for(Item i : this.acceptableHats){
+				int slot = prices.find(i);
+				if(slot != -1 && !listings.contains(i) && !hats.contains(i)){
+					PriceRange communityPrice = prices.getCommunityPrice(slot, keyScrapRatio);
+					listings = listings.with(new BuyListing(i.getName(), i.getEffect(), communityPrice));
+				}
+			}
+		} else {
+			Set<Item> affected = this.updateAffectedAcceptability(current.prices, prices, keyScrapRatio, now);
+			affected.addAll(this.unreconciled);
+			for(Item item : affected){
+				int slot = prices.find(item);
+				PriceRange communityPrice = slot == -1 ? null : prices.getCommunityPrice(slot, keyScrapRatio);
+				Hat h = hats.get(item);
+				if(h != null && communityPrice != null){
+					hats = hats.with(withCommunityPrice(h, communityPrice));
+				}
+				BuyListing b = listings.get(item);
+				if(communityPrice == null || !this.acceptableHats.contains(item) || hats.contains(item)){
+					if(b != null){
+						listings = listings.without(b);
+					}
+				} else if(b == null){
+					listings = listings.with(new BuyListing(item.getName(), item.getEffect(), communityPrice));
+				} else {
+					listings = listings.with(withCommunityPrice(b, communityPrice));
+				}
+			}
 		}
+		this.unreconciled.clear();
+		this.lastAcceptabilityCheck = now;
+		this.state = new State(hats, listings, prices, keyScrapRatio);
+	}
 
-		forEachUnusual(this.pricesObject, (j, n, e) -> {
-			if(this.functions.acceptabilityFunction.determineAcceptability(j, n, Effect.forInt(e), this.keyScrapRatio)){
-				PriceRange communityPrice = PriceRange.fromBackpackTFRepresentation(j, this.keyScrapRatio);
-				this.myListings.add(new BuyListing(n, Effect.forInt(e), communityPrice));
+	//Determines the acceptability of every unusual in the given price index.
+	private Set<Item> findAcceptableHats(PriceIndex prices, int keyScrapRatio){
+		Set<Item> acceptable = new HashSet<>();
+		forEachUnusual(prices, (i, n, e) -> {
+			if(this.functions.acceptabilityFunction.determineAcceptability(prices.getBackpackTFRepresentation(i), n, Effect.forInt(e), keyScrapRatio)){
+				acceptable.add(new Item(n, Quality.UNUSUAL, Effect.forInt(e)));
 			}
 		});
+		return acceptable;
+	}
 
-		List<BuyListing> toRemove = new ArrayList<BuyListing>();
-		for(BuyListing b : myListings){
-			JSONObject j;
-			try{
-				j = getHatObject(this.pricesObject, b);
-			} catch(JSONException e){
-				//Hat is unpriced
-				toRemove.add(b);
-				continue;
+	//Updates the acceptability of only those unusuals whose prices differ from those in the given previous price index, 
+	//or whose last update left the AcceptabilityFunction's window between the last check and now, and returns them along with the unusuals which are no longer priced.
+	private Set<Item> updateAffectedAcceptability(PriceIndex previous, PriceIndex prices, int keyScrapRatio, long now){
+		Set<Item> changed = new HashSet<>();
+		long window = this.functions.acceptabilityFunction.getLastUpdateWindow();
+		forEachUnusual(prices, (i, n, e) -> {
+			long expiry = prices.getLastUpdate(i) + window;
+			boolean expired = window > 0 && expiry >= this.lastAcceptabilityCheck && expiry < now;
+			if(!expired && !prices.changedFrom(i, previous)){
+				return;
 			}
-			if(myHats.get(b) != null){
-				toRemove.add(b);
-				continue;
+			Item item = new Item(n, Quality.UNUSUAL, Effect.forInt(e));
+			changed.add(item);
+			if(this.functions.acceptabilityFunction.determineAcceptability(prices.getBackpackTFRepresentation(i), n, item.getEffect(), keyScrapRatio)){
+				this.acceptableHats.add(item);
+			} else {
+				this.acceptableHats.remove(item);
 			}
-			if(!this.functions.acceptabilityFunction.determineAcceptability(j, b.getName(), b.getEffect(), this.keyScrapRatio)){
-				toRemove.add(b);
+		});
+		forEachUnusual(previous, (i, n, e) -> {
+			if(prices.find(n, Quality.UNUSUAL, e) == -1){
+				//Hat is no longer priced
+				Item item = new Item(n, Quality.UNUSUAL, Effect.forInt(e));
+				this.acceptableHats.remove(item);
+				changed.add(item);
 			}
-		}
-		for(BuyListing b : toRemove){
-			myListings.remove(b);
-		}
+		});
+		return changed;
 	}
 
 	/**Returns a JSON representation of this TradingBot which is compatible with the fromJSONRepresentation method.
 	@return a JSON representation of this TradingBot.
 	*/
-	public synchronized JSONObject getJSONRepresentation(){
+	public JSONObject getJSONRepresentation(){
 		JSONObject answer = new JSONObject();
 		answer.put("id", this.myID);
-		answer.put("hats", this.myHats.getJSONRepresentation());
-		answer.put("buyListings", this.myListings.getJSONRepresentation());
+		State current = this.state;
+		answer.put("hats", current.hats.getJSONRepresentation());
+		answer.put("buyListings", current.listings.getJSONRepresentation());
 		return answer;
 	}
 
@@ -389,7 +801,8 @@ public class TradingBot{
 	*/
 	@Override
 	public int hashCode(){
-		return this.myID.hashCode() + this.myHats.hashCode() + this.myListings.hashCode();
+		State current = this.state;
+		return this.myID.hashCode() + current.hats.hashCode() + current.listings.hashCode();
 	}
 
 	/**Returns a boolean indicating whether this TradingBot is equal to the given Object.<br>
@@ -409,7 +822,9 @@ public class TradingBot{
 			return false;
 		}
 		TradingBot tb = (TradingBot)o;
-		return this.myID.equals(tb.myID) && this.myHats.equals(tb.myHats) && this.myListings.equals(tb.myListings);
+		State current = this.state;
+		State other = tb.state;
+		return this.myID.equals(tb.myID) && current.hats.equals(other.hats) && current.listings.equals(other.listings);
 	}
 
 	/**Returns a String representation of this TradingBot.
@@ -420,80 +835,252 @@ public class TradingBot{
 		return "trading.economy.TradingBot: ID: " + this.myID;
 	}
 
+	//Calculates new prices for each of the given listings, returning each listing paired with its new price and priority.
 	@SuppressWarnings("unchecked")
-	private <T extends Listing> ListingCollection<T> recalculatePriceInternal(ListingCollection<T> l, BackpackTFConnection connection, int keyScrapRatio, PriceFunction<T> priceFunction, Consumer<? super BackpackTFConnection> callback){
-		HashSet<T> copiedSet = new HashSet<>(l);
-		ListingHashSet<T> newQueue = new ListingHashSet<>();
-		for(T list : copiedSet){
-			synchronized(this){
-				try{
-					list = (T)list.copy();
-					Pair<Price, Integer> newPrice = priceFunction.calculatePrice(list, connection, keyScrapRatio);
-					list.setPrice(newPrice.first());
-					list.setPriority(newPrice.second());
-					newQueue.add(list);
-				} catch(IOException e){} //This is not great, but acceptable because callback function should log any errors.
-			}
+	private <T extends Listing> List<Pair<T, Pair<Price, Integer>>> recalculatePriceInternal(ListingSnapshot<T> l, BackpackTFConnection connection, int keyScrapRatio, PriceFunction<T> priceFunction, Consumer<? super BackpackTFConnection> callback){
+		List<Pair<T, Pair<Price, Integer>>> answer = new ArrayList<>();
+		for(T list : l){
+			try{
+				//The price function is given a copy, as the listings in a snapshot must not be modified.
+				answer.add(new Pair<>(list, priceFunction.calculatePrice((T)list.copy(), connection, keyScrapRatio)));
+			} catch(IOException e){} //This is not great, but acceptable because callback function should log any errors.
 			if(callback != null){
 				callback.accept(connection);
 			}
 		}
-		//Adjusts the sets to account for any trades which occurred while prices were being recalculated.
-		synchronized(this){
-			for(T list : l){
-				if(!newQueue.contains(list)){
-					newQueue.add(list);
+		return answer;
+	}
+
+	//Submits a task to calculate the price of each listing in l, and returns the number of tasks submitted. 
+	//Each task adds the new price to results and records it in checkpoint, if any, and returns the listing and the IOException thrown by priceFunction, if any.
+	@SuppressWarnings("unchecked")
+	private static <T extends Listing> int submitRecalculations(CompletionService<Pair<Listing, IOException>> completion, Collection<T> l, BackpackTFConnection connection, int keyScrapRatio, 
+		PriceFunction<T> priceFunction, Queue<Pair<T, Pair<Price, Integer>>> results, RecalculationCheckpoint checkpoint){
+		for(T list : l){
+			completion.submit(() -> {
+				try{
+					//The price function is given a copy, as the listings in a snapshot must not be modified.
+					Pair<Price, Integer> price = priceFunction.calculatePrice((T)list.copy(), connection, keyScrapRatio);
+					results.add(new Pair<>(list, price));
+					if(checkpoint != null){
+						checkpoint.record(list, price);
+					}
+					return new Pair<>(list, null);
+				} catch(IOException e){
+					return new Pair<>(list, e);
 				}
+			});
+		}
+		return l.size();
+	}
+
+	//Returns a snapshot in which each listing which is still in l has the paired price and priority. Listings which are no longer in l are ignored.
+	@SuppressWarnings("unchecked")
+	private static <T extends Listing> ListingSnapshot<T> withNewPrices(ListingSnapshot<T> l, Collection<Pair<T, Pair<Price, Integer>>> newPrices){
+		ListingSnapshot<T> answer = l;
+		for(Pair<T, Pair<Price, Integer>> newPrice : newPrices){
+			T current = answer.get(newPrice.first());
+			if(current == null){
+				continue;
 			}
-			for(T list : newQueue){
-				if(!l.contains(list)){
-					newQueue.remove(list);
+			T updated = (T)current.copy();
+			updated.setPrice(newPrice.second().first());
+			updated.setPriority(newPrice.second().second());
+			answer = answer.with(updated);
+		}
+		return answer;
+	}
+
+	//Returns a snapshot in which each listing with a price in the given index has its community price updated.
+	private static <T extends Listing> ListingSnapshot<T> withCommunityPrices(ListingSnapshot<T> l, PriceIndex prices, int keyScrapRatio){
+		ListingSnapshot<T> answer = l;
+		for(T listing : l){
+			int slot = prices.find(listing);
+			if(slot != -1){
+				T updated = withCommunityPrice(listing, prices.getCommunityPrice(slot, keyScrapRatio));
+				if(updated != listing){
+					answer = answer.with(updated);
 				}
 			}
 		}
-		return newQueue;
+		return answer;
+	}
+
+	//Returns the given listing if its community price is already the given price, otherwise a copy of it with the given community price.
+	@SuppressWarnings("unchecked")
+	private static <T extends Listing> T withCommunityPrice(T listing, PriceRange communityPrice){
+		if(communityPrice.equals(listing.getCommunityPrice())){
+			return listing;
+		}
+		T answer = (T)listing.copy();
+		answer.changeCommunityPrice(communityPrice);
+		return answer;
+	}
+
+	private static Hat withID(Hat h, String id){
+		if(id.equals(h.getID())){
+			return h;
+		}
+		Hat answer = h.copy();
+		answer.setID(id);
+		return answer;
 	}
 
-	private static JSONObject getHatObject(JSONObject pricesObject, Item l){
-		return pricesObject.getJSONObject("response").getJSONObject("items").getJSONObject(l.getName()).getJSONObject("prices").getJSONObject("5").getJSONObject("Tradable").getJSONObject("Craftable").getJSONObject(Integer.toString(l.getEffect().getIntValue()));
+	//Returns the slot of the given item's price, throwing JSONException if the item is unpriced.
+	private static int getHatSlot(PriceIndex prices, Item l){
+		int slot = prices.find(l);
+		if(slot == -1){
+			throw new JSONException("No community price found for " + l.toString());
+		}
+		return slot;
 	}
 
-	private static interface PricesObjectFunction{
-    	void execute(JSONObject j, String name, int effect);
+	private static interface PriceIndexFunction{
+    	void execute(int slot, String name, int effect);
     }
 
-	private static void forEachUnusual(JSONObject a, PricesObjectFunction jof){
-		JSONObject items = a.getJSONObject("response").getJSONObject("items");
-		for(String s : JSONObject.getNames(items)){
+	private static void forEachUnusual(PriceIndex prices, PriceIndexFunction pif){
+		for(int i = 0; i < prices.size(); i++){
+			String s = prices.getName(i);
+			if(prices.getQuality(i) != Quality.UNUSUAL){
+				continue;
+			}
 			if(s.equals("Haunted Metal Scrap") || s.equals("Horseless Headless Horsemann's Headtaker") || s.equals("Unusualifier")){
 				continue;
 			}
-			JSONObject itemPrices = items.getJSONObject(s).getJSONObject("prices");
-			if(itemPrices.has("5")){
-				JSONObject unusualPrices = itemPrices.getJSONObject("5").getJSONObject("Tradable").getJSONObject("Craftable");
-				for(String t : JSONObject.getNames(unusualPrices)){
-					jof.execute(unusualPrices.getJSONObject(t), s, Integer.parseInt(t));
-				}
+			pif.execute(i, s, prices.getPriceIndex(i));
+		}
+	}
+
+	//Returns the unusual items in the given inventory, keyed by their asset IDs, in the order of the inventory. Must be called with writeLock held.
+	//Assets which share a description share an Item, and each description is only parsed once: Steam never changes what a class ID and instance ID describe,
+	//so descriptions parsed for an earlier inventory are reused. Only the descriptions in this inventory are kept for the next one.
+	//Assets which are not unusual are skipped without constructing an Item.
+	private Map<String, Item> unusualsByID(JSONObject inventory){
+		JSONObject items = inventory.getJSONObject("rgInventory");
+		JSONObject descriptions = inventory.getJSONObject("rgDescriptions");
+		Map<String, Item> answer = new LinkedHashMap<>();
+		Map<String, Item> parsed = new HashMap<>();
+		for(String s : items.keySet()){
+			JSONObject asset = items.getJSONObject(s);
+			String key = asset.getString("classid") + "_" + asset.getString("instanceid");
+			Item item;
+			if(parsed.containsKey(key)){
+				item = parsed.get(key);
+			} else {
+				item = this.descriptions.containsKey(key) ? this.descriptions.get(key) : fromDescription(descriptions.getJSONObject(key));
+				parsed.put(key, item);
+			}
+			if(item != null){
+				answer.put(asset.getString("id"), item);
 			}
 		}
+		this.descriptions = parsed;
+		return answer;
 	}
 
-	private static InventoryItem fromInventory(JSONObject inventoryItem, JSONObject inventoryDescriptions){
-		JSONObject itemDescription = inventoryDescriptions.getJSONObject(inventoryItem.getString("classid") + "_" + inventoryItem.getString("instanceid"));
+	//Returns the unusual item the given inventory description describes, or null if it is not unusual.
+	private static Item fromDescription(JSONObject itemDescription){
+		Quality quality = Quality.forInt(Integer.parseInt(itemDescription.getJSONObject("app_data").getString("quality")));
+		if(quality != Quality.UNUSUAL){
+			return null;
+		}
 		JSONArray descriptions;
 		try{
 			descriptions = itemDescription.getJSONArray("descriptions");
 		} catch(JSONException e) {
 			descriptions = new JSONArray();
 		}
-		return new InventoryItem(itemDescription.getString("market_name"), Quality.forInt(Integer.parseInt(itemDescription.getJSONObject("app_data").getString("quality"))), InventoryItem.parseEffect(descriptions), inventoryItem.getString("id"));
+		return new Item(itemDescription.getString("market_name"), quality, InventoryItem.parseEffect(descriptions));
 	}
 
-	private void updateKeyScrapRatio(){
-		int ksr = this.functions.keyScrapRatioFunction.calculateRatio(this.pricesObject);
+	//Returns whether the given hat's ID is the asset ID of an item in the inventory with the same identity.
+	private static boolean hasAsset(Map<String, Item> unusualsByID, Hat h){
+		return h.getID() != null && h.equals(unusualsByID.get(h.getID()));
+	}
+
+	private int calculateKeyScrapRatio(PriceIndex prices){
+		int ksr = this.functions.keyScrapRatioFunction.calculateRatio(prices);
 		if(ksr <= 0){
 			throw new IllegalArgumentException("Key-to-scrap ratio function returned non-positive value: " + ksr);
 		}
-		this.keyScrapRatio = ksr;
+		return ksr;
+	}
+
+	//Immutable state of a TradingBot. Priority-ordered views are created the first time they are requested, and shared by all readers of the state.
+	private static final class State{
+		private final ListingSnapshot<Hat> hats;
+		private final ListingSnapshot<BuyListing> listings;
+		private final PriceIndex prices;
+		private final int keyScrapRatio;
+		private volatile ListingCollection<Hat> hatsInOrder;
+		private volatile ListingCollection<BuyListing> listingsInOrder;
+		private volatile ListingCollection<Listing> allInOrder;
+		private volatile ValuationTable ourValues;
+		private volatile ValuationTable theirValues;
+
+		private State(ListingSnapshot<Hat> hats, ListingSnapshot<BuyListing> listings, PriceIndex prices, int keyScrapRatio){
+			this.hats = hats;
+			this.listings = listings;
+			this.prices = prices;
+			this.keyScrapRatio = keyScrapRatio;
+		}
+
+		private ListingCollection<Hat> hatsInOrder(){
+			ListingCollection<Hat> answer = this.hatsInOrder;
+			if(answer == null){
+				answer = new OrderedListingView<>(orderByPriority, List.of(this.hats));
+				this.hatsInOrder = answer;
+			}
+			return answer;
+		}
+
+		private ListingCollection<BuyListing> listingsInOrder(){
+			ListingCollection<BuyListing> answer = this.listingsInOrder;
+			if(answer == null){
+				answer = new OrderedListingView<>(orderByPriority, List.of(this.listings));
+				this.listingsInOrder = answer;
+			}
+			return answer;
+		}
+
+		private ListingCollection<Listing> allInOrder(){
+			ListingCollection<Listing> answer = this.allInOrder;
+			if(answer == null){
+				answer = new OrderedListingView<>(orderByPriority, List.<ListingCollection<? extends Listing>>of(this.hats, this.listings));
+				this.allInOrder = answer;
+			}
+			return answer;
+		}
+
+		//Valuation tables are built the first time an offer is evaluated against this State, so they are only rebuilt when the prices, listings or key-to-scrap ratio change.
+		//Each State builds its tables only once, even if several offers are evaluated against it at once, so that commitTrade can tell which State an offer was evaluated against.
+		private ValuationTable ourValues(){
+			ValuationTable answer = this.ourValues;
+			if(answer == null){
+				synchronized(this){
+					answer = this.ourValues;
+					if(answer == null){
+						answer = ValuationTable.fromListings(this.hats, this.keyScrapRatio);
+						this.ourValues = answer;
+					}
+				}
+			}
+			return answer;
+		}
+
+		private ValuationTable theirValues(){
+			ValuationTable answer = this.theirValues;
+			if(answer == null){
+				synchronized(this){
+					answer = this.theirValues;
+					if(answer == null){
+						answer = ValuationTable.fromListings(this.listings, this.keyScrapRatio);
+						this.theirValues = answer;
+					}
+				}
+			}
+			return answer;
+		}
 	}
 }
\ No newline at end of file
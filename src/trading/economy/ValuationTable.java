@@ -0,0 +1,61 @@
+package trading.economy;
+
+import java.util.*;
+
+//Table from items to their values in scrap, used to evaluate one side of a trade offer.
+//Contains the prices of all visible listings in a ListingCollection, and the values of the currency items. Items not in the table are valued at 0.
+final class ValuationTable{
+	private final HashMap<Item, Integer> values;
+	private final int keyScrapRatio;
+
+	private ValuationTable(HashMap<Item, Integer> values, int keyScrapRatio){
+		this.values = values;
+		this.keyScrapRatio = keyScrapRatio;
+	}
+
+	/**Constructs a ValuationTable containing the prices of the visible listings in the given ListingCollection, and the values of the currency items.<br>
+	Non-visible listings are valued at 0.
+	@param listings the listings to use.
+	@param keyScrapRatio the key-to-scrap ratio to use.
+	@throws NullPointerException if listings is null.
+	@throws IllegalArgumentException if keyScrapRatio is non-positive.
+	@return the constructed ValuationTable.
+	*/
+	static ValuationTable fromListings(ListingCollection<? extends Listing> listings, int keyScrapRatio){
+		if(keyScrapRatio <= 0){
+			throw new IllegalArgumentException("keyScrapRatio was non-positive");
+		}
+		HashMap<Item, Integer> values = new HashMap<>(Math.max((int)((listings.size() + Currency.values().length) / .75f) + 1, 16));
+		for(Listing listing : listings){
+			int value = 0;
+			if(listing.isVisible()){
+				try{
+					value = listing.getPrice().getScrapValue(keyScrapRatio);
+				} catch(NonVisibleListingException e){} //Can not happen, as the listing is visible.
+			}
+			values.putIfAbsent(listing, value);
+		}
+		for(Currency c : Currency.values()){
+			values.putIfAbsent(c.getItem(), c.getScrapValue(keyScrapRatio));
+		}
+		return new ValuationTable(values, keyScrapRatio);
+	}
+
+	/**Returns the value of the given item in scrap, or 0 if it is not in this table.
+	@param item the item.
+	@return the value of the given item in scrap.
+	*/
+	int valueOf(Item item){
+		Integer value = this.values.get(item);
+		return value == null ? 0 : value;
+	}
+
+	/**Returns the value of the given currency in scrap, without a table lookup.
+	@param currency the currency.
+	@throws NullPointerException if currency is null.
+	@return the value of the given currency in scrap.
+	*/
+	int valueOf(Currency currency){
+		return currency.getScrapValue(this.keyScrapRatio);
+	}
+}
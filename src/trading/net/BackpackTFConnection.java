@@ -1,6 +1,8 @@
 package trading.net;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 import org.json.*;
 import trading.economy.*;
 
@@ -18,6 +20,18 @@ public interface BackpackTFConnection{
 	*/
 	void sendListings(ListingCollection<? extends Listing> listings, ListingDescriptionFunction ldf) throws IOException;
 
+	/**Removes the given listings from backpack.tf.<br>
+	The default implementation does nothing, which leaves the listings to be removed by backpack.tf, for example when a listed item leaves the bot's inventory.
+	@param listings The listings to remove.
+	@throws NullPointerException if listings is null.
+	@throws IOException if an IO error occurs.
+	*/
+	default void removeListings(Collection<? extends Listing> listings) throws IOException {
+		if(listings == null){
+			throw new NullPointerException();
+		}
+	}
+
 	/**Sends a heartbeat API call to Backpack.tf.
 	@throws IOException if an IO error occurs.
 	*/
@@ -37,4 +51,45 @@ public interface BackpackTFConnection{
 	@return the result of a backpack.tf get prices API call
 	*/
 	JSONObject getPricesObject() throws IOException;
+
+	/**Returns an index of the prices in the result of a backpack.tf get prices API call.<br>
+	The default implementation indexes the result of getPricesObject(). Implementing classes are encouraged to override this method to build the index 
+	without materializing the full prices object, for example by using PriceIndex.fromBackpackTFRepresentation(Reader).
+	@throws IOException if an IO error occurs.
+	@return an index of the prices in the result of a backpack.tf get prices API call.
+	*/
+	default PriceIndex getPriceIndex() throws IOException {
+		return PriceIndex.fromBackpackTFRepresentation(this.getPricesObject());
+	}
+
+	/**Searches the backpack.tf listings for the given item without blocking, and returns a CompletableFuture which completes with the result.<br>
+	The default implementation calls getListingsForItem(i) on the calling thread, and returns an already completed CompletableFuture. 
+	Implementing classes which make API calls are encouraged to override this method to make the call without blocking.
+	@param i The item to search for.
+	@throws NullPointerException if i is null.
+	@return a CompletableFuture which completes with the result of a backpack.tf classifieds search API call for the given item, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	default CompletableFuture<JSONObject> getListingsForItemAsync(Item i){
+		if(i == null){
+			throw new NullPointerException();
+		}
+		try{
+			return CompletableFuture.completedFuture(this.getListingsForItem(i));
+		} catch(IOException e){
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**Returns a CompletableFuture which completes with the result of a backpack.tf get prices API call, without blocking.<br>
+	The default implementation calls getPricesObject() on the calling thread, and returns an already completed CompletableFuture. 
+	Implementing classes which make API calls are encouraged to override this method to make the call without blocking.
+	@return a CompletableFuture which completes with the result of a backpack.tf get prices API call, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	default CompletableFuture<JSONObject> getPricesObjectAsync(){
+		try{
+			return CompletableFuture.completedFuture(this.getPricesObject());
+		} catch(IOException e){
+			return CompletableFuture.failedFuture(e);
+		}
+	}
 }
\ No newline at end of file
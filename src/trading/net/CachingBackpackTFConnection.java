@@ -0,0 +1,219 @@
+package trading.net;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.json.*;
+import trading.economy.*;
+
+/**BackpackTFConnection which caches the results of classifieds searches, and otherwise delegates to another BackpackTFConnection.<br>
+Results are cached by item name, quality and effect. A cached result is used until it is ttlMillis milliseconds old,
+and once more than maxSize results are cached, the least recently used one is discarded. While an item is being searched, callers which search for the same item wait for that search
+instead of making their own, so an item is only searched once however many callers need it at once. Failed searches are not cached.<br>
+Every call to getListingsForItem returns a new copy of the result, so callers may modify it, for example with PriceFunctionUtils, without affecting the cache.<br>
+This class is thread-safe if the connection it delegates to is.
+*/
+
+public class CachingBackpackTFConnection implements BackpackTFConnection{
+	private final BackpackTFConnection connection;
+	private final long ttlNanos;
+	private final Map<Item, Entry> cache;
+	private long hits;
+	private long misses;
+
+	/**Constructs a CachingBackpackTFConnection.
+	@param connection the connection to delegate to.
+	@param ttlMillis the number of milliseconds to use a cached result for. Must be non-negative.
+	@param maxSize the maximum number of results to cache. Must be positive.
+	@throws NullPointerException if connection is null.
+	@throws IllegalArgumentException if any preconditions are violated.
+	*/
+	public CachingBackpackTFConnection(BackpackTFConnection connection, long ttlMillis, int maxSize){
+		if(connection == null){
+			throw new NullPointerException();
+		}
+		if(ttlMillis < 0){
+			throw new IllegalArgumentException("ttlMillis was negative.");
+		}
+		if(maxSize <= 0){
+			throw new IllegalArgumentException("maxSize was non-positive.");
+		}
+		this.connection = connection;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.cache = new LinkedHashMap<>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Item, Entry> eldest){
+				return this.size() > maxSize;
+			}
+		};
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	@Override
+	public void sendListings(ListingCollection<? extends Listing> listings, ListingDescriptionFunction ldf) throws IOException {
+		this.connection.sendListings(listings, ldf);
+	}
+
+	@Override
+	public void removeListings(Collection<? extends Listing> listings) throws IOException {
+		this.connection.removeListings(listings);
+	}
+
+	@Override
+	public void heartbeat() throws IOException {
+		this.connection.heartbeat();
+	}
+
+	/**Returns a copy of the cached result of a classifieds search for the given item if there is one which has not expired, or waits for the search if the item is already being searched.
+	Otherwise, searches the backpack.tf listings for the given item, caches the result, and returns a copy of it.
+	@param i The item to search for.
+	@throws NullPointerException if i is null.
+	@throws IOException if an IO error occurs.
+	@return the result of a backpack.tf classifieds search API call for the given item.
+	*/
+	@Override
+	public JSONObject getListingsForItem(Item i) throws IOException {
+		if(i == null){
+			throw new NullPointerException();
+		}
+		//Listings are keyed by a plain Item, as listings can be modified.
+		Item key = new Item(i.getName(), i.getQuality(), i.getEffect());
+		CompletableFuture<String> request = new CompletableFuture<>();
+		CompletableFuture<String> cached = this.lookup(key, request);
+		if(cached != null){
+			return new JSONObject(await(cached));
+		}
+		try{
+			String answer = this.connection.getListingsForItem(i).toString();
+			request.complete(answer);
+			return new JSONObject(answer);
+		} catch(Throwable e){
+			//Callers waiting for this search must not wait forever, whatever went wrong.
+			request.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**Returns a CompletableFuture which completes with a copy of the cached result of a classifieds search for the given item if there is one which has not expired, 
+	or with a copy of the result of the search if the item is already being searched.
+	Otherwise, searches the backpack.tf listings for the given item without blocking, and the CompletableFuture completes with a copy of the result once it is cached.
+	@param i The item to search for.
+	@throws NullPointerException if i is null.
+	@return a CompletableFuture which completes with the result of a backpack.tf classifieds search API call for the given item, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	@Override
+	public CompletableFuture<JSONObject> getListingsForItemAsync(Item i){
+		if(i == null){
+			throw new NullPointerException();
+		}
+		Item key = new Item(i.getName(), i.getQuality(), i.getEffect());
+		CompletableFuture<String> request = new CompletableFuture<>();
+		CompletableFuture<String> cached = this.lookup(key, request);
+		if(cached != null){
+			return cached.thenApply(JSONObject::new);
+		}
+		this.connection.getListingsForItemAsync(i).whenComplete((JSONObject result, Throwable e) -> {
+			if(e == null){
+				request.complete(result.toString());
+			} else {
+				request.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+			}
+		});
+		return request.thenApply(JSONObject::new);
+	}
+
+	@Override
+	public JSONObject getPricesObject() throws IOException {
+		return this.connection.getPricesObject();
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getPricesObjectAsync(){
+		return this.connection.getPricesObjectAsync();
+	}
+
+	@Override
+	public PriceIndex getPriceIndex() throws IOException {
+		return this.connection.getPriceIndex();
+	}
+
+	/**Returns the number of calls to getListingsForItem which used a cached result or waited for a search which was already being made.
+	@return the number of cache hits.
+	*/
+	public synchronized long getHits(){
+		return this.hits;
+	}
+
+	/**Returns the number of calls to getListingsForItem which searched for an item.
+	@return the number of cache misses.
+	*/
+	public synchronized long getMisses(){
+		return this.misses;
+	}
+
+	/**Returns the number of results currently cached, including expired ones which have not yet been discarded, and searches being made.
+	@return the number of results currently cached.
+	*/
+	public synchronized int size(){
+		return this.cache.size();
+	}
+
+	/**Discards all cached results. Searches already being made are not affected. The hit and miss counts are not reset.
+	*/
+	public synchronized void clear(){
+		this.cache.clear();
+	}
+
+	//Returns the cached or pending search for key, which completes with the serialized result, and counts a hit.
+	//If there is none, or it has expired, caches request as the pending search, counts a miss, and returns null, and the caller must complete request.
+	private synchronized CompletableFuture<String> lookup(Item key, CompletableFuture<String> request){
+		Entry entry = this.cache.get(key);
+		if(entry != null && (entry.fetched == null || System.nanoTime() - entry.fetched < this.ttlNanos)){
+			this.hits++;
+			return entry.request;
+		}
+		this.misses++;
+		Entry pending = new Entry(request);
+		this.cache.put(key, pending);
+		request.whenComplete((String result, Throwable e) -> {
+			synchronized(this){
+				if(e != null){
+					this.cache.remove(key, pending);
+				} else {
+					pending.fetched = System.nanoTime();
+				}
+			}
+		});
+		return null;
+	}
+
+	private static String await(CompletableFuture<String> request) throws IOException {
+		try{
+			return request.get();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a classifieds search.");
+		} catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException){
+				throw (IOException)cause;
+			}
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	//A search, which completes with its serialized result, and the System.nanoTime() at which it completed, or null if it is still pending. Guarded by the CachingBackpackTFConnection.
+	private static final class Entry{
+		private final CompletableFuture<String> request;
+		private Long fetched;
+
+		private Entry(CompletableFuture<String> request){
+			this.request = request;
+			this.fetched = null;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package trading.net;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.json.*;
+
+//TODO:
+
+/**SteamConnection which caches inventories, and otherwise delegates to another SteamConnection.<br>
+A cached inventory is used until it is ttlMillis milliseconds old. While an inventory is being requested, callers which ask for the same inventory wait for that request
+instead of making their own, so an inventory is only requested once however many callers need it at once. Failed requests are not cached.<br>
+Unlike CachingBackpackTFConnection, every caller is given the same JSONObject, so that an inventory is not parsed again for each caller. Callers must not modify it.<br>
+This class is thread-safe if the connection it delegates to is.
+*/
+
+public class CachingSteamConnection implements SteamConnection{
+	private final SteamConnection connection;
+	private final long ttlNanos;
+	private final Map<String, Entry> cache;
+	private long hits;
+	private long misses;
+
+	/**Constructs a CachingSteamConnection.
+	@param connection the connection to delegate to.
+	@param ttlMillis the number of milliseconds to use a cached inventory for. Must be non-negative.
+	@throws NullPointerException if connection is null.
+	@throws IllegalArgumentException if ttlMillis is negative.
+	*/
+	public CachingSteamConnection(SteamConnection connection, long ttlMillis){
+		if(connection == null){
+			throw new NullPointerException();
+		}
+		if(ttlMillis < 0){
+			throw new IllegalArgumentException("ttlMillis was negative.");
+		}
+		this.connection = connection;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.cache = new HashMap<>();
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**Returns the cached inventory of the given user if there is one which has not expired, or waits for the inventory if it is already being requested.
+	Otherwise, requests the inventory, caches it, and returns it.
+	@param steamID the ID to lookup.
+	@throws NullPointerException if steamID is null.
+	@throws IOException if an IO error occurs.
+	@return the result of a Steam user inventory API call for the given ID.
+	*/
+	@Override
+	public JSONObject getInventoryForUser(String steamID) throws IOException {
+		if(steamID == null){
+			throw new NullPointerException();
+		}
+		CompletableFuture<JSONObject> request = new CompletableFuture<>();
+		CompletableFuture<JSONObject> cached = this.lookup(steamID, request);
+		if(cached != null){
+			return await(cached);
+		}
+		try{
+			JSONObject answer = this.connection.getInventoryForUser(steamID);
+			request.complete(answer);
+			return answer;
+		} catch(Throwable e){
+			//Callers waiting for this request must not wait forever, whatever went wrong.
+			request.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**Returns a CompletableFuture which completes with the cached inventory of the given user if there is one which has not expired, or with the inventory being requested if it is already being requested.
+	Otherwise, requests the inventory without blocking, and the CompletableFuture completes with the inventory once it is cached.
+	@param steamID the ID to lookup.
+	@throws NullPointerException if steamID is null.
+	@return a CompletableFuture which completes with the result of a Steam user inventory API call for the given ID, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	@Override
+	public CompletableFuture<JSONObject> getInventoryForUserAsync(String steamID){
+		if(steamID == null){
+			throw new NullPointerException();
+		}
+		CompletableFuture<JSONObject> request = new CompletableFuture<>();
+		CompletableFuture<JSONObject> cached = this.lookup(steamID, request);
+		if(cached != null){
+			return cached.copy();
+		}
+		this.connection.getInventoryForUserAsync(steamID).whenComplete((JSONObject result, Throwable e) -> {
+			if(e == null){
+				request.complete(result);
+			} else {
+				request.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+			}
+		});
+		return request.copy();
+	}
+
+	/**Returns the number of calls which used a cached inventory or waited for an inventory which was already being requested.
+	@return the number of cache hits.
+	*/
+	public synchronized long getHits(){
+		return this.hits;
+	}
+
+	/**Returns the number of calls which requested an inventory.
+	@return the number of cache misses.
+	*/
+	public synchronized long getMisses(){
+		return this.misses;
+	}
+
+	/**Discards all cached inventories, for example because a trade has changed them. Requests already being made are not affected. The hit and miss counts are not reset.
+	*/
+	public synchronized void clear(){
+		this.cache.clear();
+	}
+
+	//Returns the cached or pending request for the given user's inventory and counts a hit.
+	//If there is none, or it has expired, caches request as the pending request, counts a miss, and returns null, and the caller must complete request.
+	private synchronized CompletableFuture<JSONObject> lookup(String steamID, CompletableFuture<JSONObject> request){
+		Entry entry = this.cache.get(steamID);
+		if(entry != null && (entry.fetched == null || System.nanoTime() - entry.fetched < this.ttlNanos)){
+			this.hits++;
+			return entry.request;
+		}
+		this.misses++;
+		Entry pending = new Entry(request);
+		this.cache.put(steamID, pending);
+		request.whenComplete((JSONObject result, Throwable e) -> {
+			synchronized(this){
+				if(e != null){
+					this.cache.remove(steamID, pending);
+				} else {
+					pending.fetched = System.nanoTime();
+				}
+			}
+		});
+		return null;
+	}
+
+	private static JSONObject await(CompletableFuture<JSONObject> request) throws IOException {
+		try{
+			return request.get();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for an inventory.");
+		} catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException){
+				throw (IOException)cause;
+			}
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	//A request for an inventory, and the System.nanoTime() at which it completed, or null if it is still pending. Guarded by the CachingSteamConnection.
+	private static final class Entry{
+		private final CompletableFuture<JSONObject> request;
+		private Long fetched;
+
+		private Entry(CompletableFuture<JSONObject> request){
+			this.request = request;
+			this.fetched = null;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package trading.net;
+
+import org.json.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+//TODO:
+
+/**Class recording the traffic to a single endpoint: the latency and status code of each request attempt, the bytes sent and received, and the number of attempts in flight.<br>
+Each retry of a request counts as a separate attempt. An attempt's latency is the time from sending it until the response headers arrive,
+and it is in flight until then. Attempts which fail before a response arrives, for example by timing out, are counted as failures instead of by status code.<br>
+Bytes are counted as sent and received over the network, before decompression, excluding headers.<br>
+EndpointMetrics are created and updated by NetUtils. This class is thread-safe.
+*/
+
+public class EndpointMetrics{
+	private final LatencyHistogram latency;
+	private final Map<Integer, LongAdder> statusCounts;
+	private final LongAdder failures;
+	private final LongAdder bytesSent;
+	private final LongAdder bytesReceived;
+	private final AtomicInteger inFlight;
+
+	EndpointMetrics(){
+		this.latency = new LatencyHistogram();
+		this.statusCounts = new ConcurrentHashMap<>();
+		this.failures = new LongAdder();
+		this.bytesSent = new LongAdder();
+		this.bytesReceived = new LongAdder();
+		this.inFlight = new AtomicInteger();
+	}
+
+	/**Returns the LatencyHistogram of the attempts to this endpoint which received a response.
+	@return the LatencyHistogram of the attempts to this endpoint which received a response.
+	*/
+	public LatencyHistogram getLatency(){
+		return this.latency;
+	}
+
+	/**Returns the number of attempts to this endpoint which received a response with each status code.
+	@return a sorted map from each status code received to the number of attempts which received it.
+	*/
+	public SortedMap<Integer, Long> getStatusCounts(){
+		SortedMap<Integer, Long> answer = new TreeMap<>();
+		for(Map.Entry<Integer, LongAdder> entry : this.statusCounts.entrySet()){
+			answer.put(entry.getKey(), entry.getValue().sum());
+		}
+		return answer;
+	}
+
+	/**Returns the number of attempts to this endpoint which failed before a response arrived.
+	@return the number of attempts to this endpoint which failed before a response arrived.
+	*/
+	public long getFailures(){
+		return this.failures.sum();
+	}
+
+	/**Returns the number of request body bytes sent to this endpoint.
+	@return the number of request body bytes sent to this endpoint.
+	*/
+	public long getBytesSent(){
+		return this.bytesSent.sum();
+	}
+
+	/**Returns the number of response body bytes received from this endpoint.
+	@return the number of response body bytes received from this endpoint.
+	*/
+	public long getBytesReceived(){
+		return this.bytesReceived.sum();
+	}
+
+	/**Returns the number of attempts to this endpoint which are waiting for a response.
+	@return the number of attempts to this endpoint which are waiting for a response.
+	*/
+	public int getInFlight(){
+		return this.inFlight.get();
+	}
+
+	/**Discards everything recorded about this endpoint, except for the number of attempts in flight.
+	*/
+	public void reset(){
+		this.latency.reset();
+		this.statusCounts.clear();
+		this.failures.reset();
+		this.bytesSent.reset();
+		this.bytesReceived.reset();
+	}
+
+	/**Returns a JSON summary of this EndpointMetrics, including the summary of its LatencyHistogram.
+	@return a JSON summary of this EndpointMetrics.
+	*/
+	public JSONObject getJSONSummary(){
+		JSONObject answer = new JSONObject();
+		answer.put("latency", this.latency.getJSONSummary());
+		JSONObject statuses = new JSONObject();
+		for(Map.Entry<Integer, Long> entry : this.getStatusCounts().entrySet()){
+			statuses.put(entry.getKey().toString(), entry.getValue());
+		}
+		answer.put("statusCounts", statuses);
+		answer.put("failures", this.getFailures());
+		answer.put("bytesSent", this.getBytesSent());
+		answer.put("bytesReceived", this.getBytesReceived());
+		answer.put("inFlight", this.getInFlight());
+		return answer;
+	}
+
+	/**Returns a one-line human-readable summary of this EndpointMetrics, with latencies in milliseconds.
+	@return a one-line summary of this EndpointMetrics.
+	*/
+	@Override
+	public String toString(){
+		long count = this.latency.getCount();
+		return count + " responses, " + this.getFailures() + " failures, " + this.getInFlight() + " in flight; latency p50 " + millis(this.latency.getPercentile(50))
+			+ ", p90 " + millis(this.latency.getPercentile(90)) + ", p99 " + millis(this.latency.getPercentile(99)) + ", max " + millis(this.latency.getMax())
+			+ " ms; statuses " + this.getStatusCounts() + "; " + this.getBytesSent() + " bytes sent, " + this.getBytesReceived() + " bytes received";
+	}
+
+	//Records the start of an attempt which sends the given number of bytes, and returns the Attempt to record its outcome with.
+	Attempt start(long bytesSent){
+		this.bytesSent.add(bytesSent);
+		this.inFlight.incrementAndGet();
+		return new Attempt();
+	}
+
+	void received(long bytes){
+		this.bytesReceived.add(bytes);
+	}
+
+	private static String millis(long micros){
+		return String.format(Locale.ROOT, "%.1f", micros / 1000.0);
+	}
+
+	//A single attempt. Only the first outcome recorded for an attempt counts, so that a failure while reading a response body is not also counted as a failure to respond.
+	final class Attempt{
+		private final long start;
+		private final AtomicBoolean finished;
+
+		private Attempt(){
+			this.start = System.nanoTime();
+			this.finished = new AtomicBoolean();
+		}
+
+		void responded(int statusCode){
+			if(this.finished.compareAndSet(false, true)){
+				EndpointMetrics.this.inFlight.decrementAndGet();
+				EndpointMetrics.this.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - this.start));
+				EndpointMetrics.this.statusCounts.computeIfAbsent(statusCode, (Integer i) -> new LongAdder()).increment();
+			}
+		}
+
+		void failed(){
+			if(this.finished.compareAndSet(false, true)){
+				EndpointMetrics.this.inFlight.decrementAndGet();
+				EndpointMetrics.this.failures.increment();
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package trading.net;
+
+import org.json.*;
+import java.util.concurrent.atomic.*;
+
+//TODO:
+
+/**Class recording a distribution of latencies, in microseconds, in fixed memory.<br>
+Like an HDR histogram, values are counted in buckets whose width grows with their magnitude:
+each power of two is split into 32 equal buckets, so any recorded value is reported with an error of at most about 3%.
+Latencies from 0 microseconds to several hours are recorded in 1056 buckets. Longer latencies are recorded as the longest latency this class can represent.<br>
+Recording never blocks or allocates, so a LatencyHistogram can be updated from many threads at once. This class is thread-safe.
+*/
+
+public class LatencyHistogram{
+	//Each power of two is split into 2^SUB_BUCKET_BITS buckets.
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_MAGNITUDE = 36;
+	private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts;
+	private final LongAdder count;
+	private final LongAdder sum;
+	private final AtomicLong max;
+
+	/**Constructs an empty LatencyHistogram.
+	*/
+	public LatencyHistogram(){
+		this.counts = new AtomicLongArray(BUCKETS);
+		this.count = new LongAdder();
+		this.sum = new LongAdder();
+		this.max = new AtomicLong();
+	}
+
+	/**Records the given latency.
+	@param micros the latency, in microseconds.
+	@throws IllegalArgumentException if micros is negative.
+	*/
+	public void record(long micros){
+		if(micros < 0){
+			throw new IllegalArgumentException("micros was negative.");
+		}
+		micros = Math.min(micros, MAX_VALUE);
+		this.counts.incrementAndGet(index(micros));
+		this.count.increment();
+		this.sum.add(micros);
+		this.max.accumulateAndGet(micros, Math::max);
+	}
+
+	/**Returns the number of latencies recorded.
+	@return the number of latencies recorded.
+	*/
+	public long getCount(){
+		return this.count.sum();
+	}
+
+	/**Returns the longest latency recorded, in microseconds, or 0 if none have been recorded.
+	@return the longest latency recorded.
+	*/
+	public long getMax(){
+		return this.max.get();
+	}
+
+	/**Returns the mean of the latencies recorded, in microseconds, or 0 if none have been recorded.
+	@return the mean of the latencies recorded.
+	*/
+	public double getMean(){
+		long count = this.count.sum();
+		return count == 0 ? 0 : (double)this.sum.sum() / count;
+	}
+
+	/**Returns the latency, in microseconds, which the given percentage of the recorded latencies are less than or equal to, or 0 if none have been recorded.<br>
+	The returned latency is the highest latency in the bucket containing the percentile, so it is never less than the true percentile, and at most about 3% more.
+	@param percentile the percentage, from 0 to 100.
+	@throws IllegalArgumentException if percentile is less than 0, greater than 100, or NaN.
+	@return the latency at the given percentile.
+	*/
+	public long getPercentile(double percentile){
+		if(!(percentile >= 0 && percentile <= 100)){
+			throw new IllegalArgumentException("percentile was not between 0 and 100.");
+		}
+		//The buckets are read one at a time while others may be recording, so the total is taken from the buckets themselves.
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			snapshot[i] = this.counts.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += snapshot[i];
+			if(seen >= rank){
+				return Math.min(highestEquivalentValue(i), this.getMax());
+			}
+		}
+		return this.getMax();
+	}
+
+	/**Discards every recorded latency.<br>
+	Latencies recorded while this method runs may be partially discarded.
+	*/
+	public void reset(){
+		for(int i = 0; i < BUCKETS; i++){
+			this.counts.set(i, 0);
+		}
+		this.count.reset();
+		this.sum.reset();
+		this.max.set(0);
+	}
+
+	/**Returns a JSON summary of this LatencyHistogram: its count, mean, maximum, and 50th, 90th, 99th and 99.9th percentiles, in microseconds.
+	@return a JSON summary of this LatencyHistogram.
+	*/
+	public JSONObject getJSONSummary(){
+		JSONObject answer = new JSONObject();
+		answer.put("count", this.getCount());
+		answer.put("mean", Math.round(this.getMean()));
+		answer.put("p50", this.getPercentile(50));
+		answer.put("p90", this.getPercentile(90));
+		answer.put("p99", this.getPercentile(99));
+		answer.put("p999", this.getPercentile(99.9));
+		answer.put("max", this.getMax());
+		return answer;
+	}
+
+	//Values below SUB_BUCKETS have a bucket each. Above that, a value's magnitude (the index of its highest bit) selects a group of SUB_BUCKETS buckets,
+	//and its next SUB_BUCKET_BITS bits select the bucket within the group.
+	private static int index(long value){
+		if(value < SUB_BUCKETS){
+			return (int)value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+	}
+
+	private static long highestEquivalentValue(int index){
+		if(index < SUB_BUCKETS){
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long lowest = (long)(SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
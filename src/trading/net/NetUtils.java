@@ -3,14 +3,117 @@ package trading.net;
 import org.json.*;
 import java.io.*;
 import java.net.*;
+import java.net.http.*;
+import java.nio.charset.*;
+import java.time.*;
+import java.time.format.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
 
 //TODO:
 
-/**Static class containing utility methods for use in connection requests.
+/**Static class containing utility methods for use in connection requests.<br>
+All requests are made by a single shared HTTP client, which keeps connections alive and reuses them for later requests to the same host,
+uses HTTP/2 where the server supports it, and accepts gzip and deflate compressed responses.<br>
+Requests which are throttled (429 Too Many Requests) or fail with 502, 503 or 504 are retried up to 3 times. 
+Failures of other methods than GET and DELETE are only retried if they were throttled, as the server may have acted on them. 
+Before each retry, the request waits for as long as the response's Retry-After header asks, or otherwise for an exponentially increasing, randomly jittered delay. 
+Retries are limited by a shared budget, which allows roughly one retry for every five requests, so that a struggling server is not flooded with retries. 
+Whenever a request is throttled or fails in this way, the ThrottleListener set for its endpoint, if any, is notified, 
+so that it can slow down later requests, for example with RateLimiter.throttled.<br>
+The latency, status code and size of every request attempt are recorded in an EndpointMetrics for its endpoint, which can be read with getMetrics.
 */
 
 public class NetUtils{
+	private static final int DEFAULT_TIMEOUT = 10000;
+	private static final HttpClient client = HttpClient.newBuilder()
+		.version(HttpClient.Version.HTTP_2)
+		.followRedirects(HttpClient.Redirect.NORMAL)
+		.connectTimeout(Duration.ofMillis(DEFAULT_TIMEOUT))
+		.build();
+	private static final Map<String, Integer> timeouts = new ConcurrentHashMap<>();
+	private static final Map<String, ThrottleListener> throttleListeners = new ConcurrentHashMap<>();
+	private static final Map<String, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+	private static final int MAX_RETRIES = 3;
+	private static final long BASE_BACKOFF = 1000;
+	private static final long MAX_BACKOFF = 30000;
+	//Requests asking for a longer wait than this are not retried.
+	private static final long MAX_RETRY_AFTER = 300000;
+	//Each request adds RETRY_DEPOSIT to the retry budget, up to MAX_RETRY_BUDGET, and each retry takes 1 from it.
+	private static final double RETRY_DEPOSIT = 0.2;
+	private static final double MAX_RETRY_BUDGET = 10;
+	private static double retryBudget = MAX_RETRY_BUDGET;
+
+	/**Sets the timeout for requests to the given endpoint.<br>
+	The timeout is the number of milliseconds to wait for the server to start responding. It does not limit the time taken to read the response body.
+	@param endpoint the uri of the endpoint, without any query string.
+	@param timeoutMillis the timeout in milliseconds. Must be positive.
+	@throws NullPointerException if endpoint is null.
+	@throws IllegalArgumentException if timeoutMillis is non-positive.
+	*/
+	public static void setTimeout(String endpoint, int timeoutMillis){
+		if(endpoint == null){
+			throw new NullPointerException();
+		}
+		if(timeoutMillis <= 0){
+			throw new IllegalArgumentException("timeoutMillis was non-positive.");
+		}
+		timeouts.put(endpoint, timeoutMillis);
+	}
+
+	/**Returns the timeout for requests to the given endpoint, in milliseconds. Endpoints without a timeout set by setTimeout use a timeout of 10000 milliseconds.
+	@param endpoint the uri of the endpoint, without any query string.
+	@throws NullPointerException if endpoint is null.
+	@return the timeout for requests to the given endpoint.
+	*/
+	public static int getTimeout(String endpoint){
+		return timeouts.getOrDefault(endpoint, DEFAULT_TIMEOUT);
+	}
+
+	/**Sets the ThrottleListener to notify whenever a request to the given endpoint is throttled or fails with a retryable server error, replacing any previous one.
+	@param endpoint the uri of the endpoint, without any query string.
+	@param listener the ThrottleListener to notify, or null to remove the endpoint's ThrottleListener.
+	@throws NullPointerException if endpoint is null.
+	*/
+	public static void setThrottleListener(String endpoint, ThrottleListener listener){
+		if(endpoint == null){
+			throw new NullPointerException();
+		}
+		if(listener == null){
+			throttleListeners.remove(endpoint);
+		} else {
+			throttleListeners.put(endpoint, listener);
+		}
+	}
+
+	/**Returns the EndpointMetrics of every endpoint which has been requested, keyed by the uri of the endpoint, without any query string.<br>
+	The returned map is a snapshot, but the EndpointMetrics in it continue to be updated.
+	@return a sorted map from each endpoint which has been requested to its EndpointMetrics.
+	*/
+	public static SortedMap<String, EndpointMetrics> getMetrics(){
+		return new TreeMap<>(metrics);
+	}
+
+	/**Returns a JSONObject mapping the uri of every endpoint which has been requested to the JSON summary of its EndpointMetrics.
+	@return a JSON summary of the EndpointMetrics of every endpoint.
+	*/
+	public static JSONObject getMetricsSummary(){
+		JSONObject answer = new JSONObject();
+		for(Map.Entry<String, EndpointMetrics> entry : getMetrics().entrySet()){
+			answer.put(entry.getKey(), entry.getValue().getJSONSummary());
+		}
+		return answer;
+	}
+
+	/**Discards everything recorded in the EndpointMetrics of every endpoint, except for the number of attempts in flight.
+	*/
+	public static void resetMetrics(){
+		for(EndpointMetrics m : metrics.values()){
+			m.reset();
+		}
+	}
+
 	/**Performs a HTTP request for a JSONObject and returns the result.
 	@param uri The uri to request
 	@param method The HTTP request method (ie "get", "post"), etc
@@ -20,34 +123,395 @@ public class NetUtils{
 	@return the JSON result of the request.
 	*/
 	public static JSONObject request(String uri, String method, JSONObject args) throws IOException {
-		if(uri == null || method == null || args == null){
+		return request(uri, method, args, (Reader input) -> new JSONObject(new JSONTokener(input)));
+	}
+
+	/**Performs a HTTP request and returns the result of passing the response body to the given ResponseParser.<br>
+	The response body is streamed to the parser as it arrives, so it is never held in memory in its entirety unless the parser does so.<br>
+	For GET requests, args are sent as the query string. For other requests, args are sent as a JSON request body.
+	@param uri The uri to request
+	@param method The HTTP request method (ie "get", "post"), etc
+	@param args The JSON arguments to include.
+	@param parser The parser to read the response body with.
+	@throws IOException if an IO error occurs, including while the parser is reading the response body, or if the server responds with an error status.
+	@throws NullPointerException if any parameter is null.
+	@return the result of the parser.
+	*/
+	public static <T> T request(String uri, String method, JSONObject args, ResponseParser<T> parser) throws IOException {
+		if(uri == null || method == null || args == null || parser == null){
 			throw new NullPointerException();
 		}
-		HttpURLConnection connection;
+		HttpResponse<InputStream> response = send(buildRequest(uri, method, args), uri);
+		return parse(decode(response.headers(), response.body()), parser);
+	}
+
+	/**Performs a conditional HTTP GET request, and returns the result of passing the response body to the given ResponseParser, 
+	or null if the server responds that the resource has not been modified.<br>
+	The request carries the validators (the ETag and Last-Modified headers) which the server sent with the last successful response to a request using the same Validators, if any.
+	If the server honors them and the resource has not changed, it responds with 304 Not Modified instead of a body, and null is returned. 
+	Otherwise, the response is parsed as by request, and once the parser succeeds, the validators sent with it are stored in the given Validators.<br>
+	Servers which do not honor validators always send the full response, so callers must be prepared to handle either.
+	@param uri The uri to request
+	@param args The JSON arguments to send as the query string.
+	@param validators The Validators to send with the request and to store the response's validators in.
+	@param parser The parser to read the response body with.
+	@throws IOException if an IO error occurs, including while the parser is reading the response body, or if the server responds with an error status.
+	@throws NullPointerException if any parameter is null.
+	@return the result of the parser, or null if the resource has not been modified.
+	*/
+	public static <T> T requestIfModified(String uri, JSONObject args, Validators validators, ResponseParser<T> parser) throws IOException {
+		if(uri == null || args == null || validators == null || parser == null){
+			throw new NullPointerException();
+		}
+		HttpRequest.Builder builder = requestBuilder(uri, "GET", args);
+		String eTag = validators.getETag();
+		String lastModified = validators.getLastModified();
+		if(eTag != null){
+			builder.header("If-None-Match", eTag);
+		}
+		if(lastModified != null){
+			builder.header("If-Modified-Since", lastModified);
+		}
+		HttpResponse<InputStream> response = send(builder.build(), uri);
+		if(response.statusCode() == 304){
+			response.body().close();
+			return null;
+		}
+		T answer = parse(decode(response.headers(), response.body()), parser);
+		validators.set(response.headers().firstValue("ETag").orElse(null), response.headers().firstValue("Last-Modified").orElse(null));
+		return answer;
+	}
+
+	/**Performs a HTTP request for a JSONObject without blocking, and returns a CompletableFuture which completes with the result.
+	@param uri The uri to request
+	@param method The HTTP request method (ie "get", "post"), etc
+	@param args The JSON arguments to include.
+	@throws NullPointerException if any parameter is null.
+	@return a CompletableFuture which completes with the JSON result of the request, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	public static CompletableFuture<JSONObject> requestAsync(String uri, String method, JSONObject args){
+		return requestAsync(uri, method, args, (Reader input) -> new JSONObject(new JSONTokener(input)));
+	}
+
+	/**Performs a HTTP request without blocking, and returns a CompletableFuture which completes with the result of passing the response body to the given ResponseParser.<br>
+	No thread waits for the response. Once the response body has arrived, it is parsed by a thread belonging to the shared HTTP client, 
+	so the CompletableFuture should not be used to run long blocking tasks.<br>
+	Unlike request, the response body is held in memory before it is parsed.
+	@param uri The uri to request
+	@param method The HTTP request method (ie "get", "post"), etc
+	@param args The JSON arguments to include.
+	@param parser The parser to read the response body with.
+	@throws NullPointerException if any parameter is null.
+	@return a CompletableFuture which completes with the result of the parser, or completes exceptionally with an IOException if an IO error occurs, 
+	including while the parser is reading the response body, or if the server responds with an error status.
+	*/
+	public static <T> CompletableFuture<T> requestAsync(String uri, String method, JSONObject args, ResponseParser<T> parser){
+		if(uri == null || method == null || args == null || parser == null){
+			throw new NullPointerException();
+		}
+		HttpRequest request;
+		try{
+			request = buildRequest(uri, method, args);
+		} catch(IOException e){
+			return CompletableFuture.failedFuture(e);
+		}
+		return sendAsync(request, uri, 0).thenApply((HttpResponse<byte[]> response) -> {
+			try{
+				return parse(decode(response.headers(), new ByteArrayInputStream(response.body())), parser);
+			} catch(IOException e){
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**Functional interface representing a function which parses a HTTP response body.
+	*/
+	@FunctionalInterface
+	public static interface ResponseParser<T>{
+		/**Parses the response body read from the given Reader.
+		@param input the response body.
+		@throws IOException if an IO error occurs.
+		@return the parsed response.
+		*/
+		T parse(Reader input) throws IOException;
+	}
+
+	/**Functional interface representing a listener which is notified whenever a request to an endpoint is throttled or fails with a retryable server error.
+	*/
+	@FunctionalInterface
+	public static interface ThrottleListener{
+		/**Called whenever a request is throttled or fails with a retryable server error, whether or not it will be retried.
+		@param statusCode the response's HTTP status code: 429, 502, 503 or 504.
+		@param waitMillis the number of milliseconds the server asked to wait before retrying, or the backoff delay if it did not ask.
+		*/
+		void throttled(int statusCode, long waitMillis);
+	}
+
+	/**Class holding the HTTP validators of the last successful response to a conditional request, for use by requestIfModified.<br>
+	A Validators should only be used for requests to a single resource. This class is thread-safe.
+	*/
+	public static class Validators{
+		private String eTag;
+		private String lastModified;
+
+		/**Constructs a Validators holding no validators, so that the next request using it is unconditional.
+		*/
+		public Validators(){
+			this.eTag = null;
+			this.lastModified = null;
+		}
+
+		/**Returns the ETag of the last successful response, or null if there is none.
+		@return the ETag of the last successful response, or null if there is none.
+		*/
+		public synchronized String getETag(){
+			return this.eTag;
+		}
+
+		/**Returns the Last-Modified date of the last successful response, or null if there is none.
+		@return the Last-Modified date of the last successful response, or null if there is none.
+		*/
+		public synchronized String getLastModified(){
+			return this.lastModified;
+		}
+
+		/**Discards the held validators, so that the next request using this Validators is unconditional.
+		*/
+		public synchronized void clear(){
+			this.set(null, null);
+		}
+
+		private synchronized void set(String eTag, String lastModified){
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+	}
+
+	//Sends the given request, retrying it if it is throttled or fails with a retryable error, and returns the response. 
+	//Throws an IOException if the server responds with an error status.
+	private static HttpResponse<InputStream> send(HttpRequest request, String uri) throws IOException {
+		depositRetry();
+		EndpointMetrics endpoint = metricsFor(uri);
+		for(int attempt = 0; ; attempt++){
+			HttpResponse<InputStream> response;
+			EndpointMetrics.Attempt recorded = endpoint.start(bodyLength(request));
+			HttpResponse.BodyHandler<InputStream> handler = recording(recorded, (HttpResponse.ResponseInfo info) -> HttpResponse.BodySubscribers.mapping(
+				HttpResponse.BodySubscribers.ofInputStream(), (InputStream body) -> new CountingInputStream(body, endpoint)));
+			try{
+				response = client.send(request, handler);
+			} catch(InterruptedException e){
+				recorded.failed();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a response from " + uri);
+			} catch(IOException e){
+				recorded.failed();
+				throw e;
+			}
+			if(response.statusCode() < 400){
+				return response;
+			}
+			//The error body is read to the end so that the connection can be reused.
+			try(InputStream error = response.body()){
+				error.transferTo(OutputStream.nullOutputStream());
+			}
+			long delay = retryDelay(request, response, uri, attempt);
+			if(delay < 0){
+				throw new IOException("Server returned HTTP response code: " + response.statusCode() + " for URL: " + uri);
+			}
+			try{
+				Thread.sleep(delay);
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to retry a request to " + uri);
+			}
+		}
+	}
+
+	//Sends the given request without blocking, retrying it as send does, and returns a CompletableFuture which completes with the response.
+	private static CompletableFuture<HttpResponse<byte[]>> sendAsync(HttpRequest request, String uri, int attempt){
+		if(attempt == 0){
+			depositRetry();
+		}
+		EndpointMetrics endpoint = metricsFor(uri);
+		EndpointMetrics.Attempt recorded = endpoint.start(bodyLength(request));
+		return client.sendAsync(request, recording(recorded, HttpResponse.BodyHandlers.ofByteArray())).whenComplete((HttpResponse<byte[]> response, Throwable t) -> {
+			if(t != null){
+				recorded.failed();
+			}
+		}).thenCompose((HttpResponse<byte[]> response) -> {
+			endpoint.received(response.body().length);
+			if(response.statusCode() < 400){
+				return CompletableFuture.completedFuture(response);
+			}
+			long delay = retryDelay(request, response, uri, attempt);
+			if(delay < 0){
+				return CompletableFuture.failedFuture(new IOException("Server returned HTTP response code: " + response.statusCode() + " for URL: " + uri));
+			}
+			Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+			return CompletableFuture.supplyAsync(() -> null, delayed).thenCompose((Object o) -> sendAsync(request, uri, attempt + 1));
+		});
+	}
+
+	//Notifies the endpoint's ThrottleListener if the response was throttled or failed with a retryable error. 
+	//Returns the number of milliseconds to wait before retrying the request, or -1 if it should not be retried.
+	private static long retryDelay(HttpRequest request, HttpResponse<?> response, String uri, int attempt){
+		int status = response.statusCode();
+		boolean throttled = status == 429;
+		boolean unavailable = status == 502 || status == 503 || status == 504;
+		if(!throttled && !unavailable){
+			return -1;
+		}
+		long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << attempt);
+		//Equal jitter: half of the backoff, plus a random part of the other half, so that clients throttled together do not retry together.
+		long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		long retryAfter = retryAfter(response.headers());
+		if(retryAfter >= 0){
+			delay = retryAfter;
+		}
+		ThrottleListener listener = throttleListeners.get(uri);
+		if(listener != null){
+			listener.throttled(status, delay);
+		}
+		boolean idempotent = request.method().equals("GET") || request.method().equals("DELETE");
+		if(attempt >= MAX_RETRIES || delay > MAX_RETRY_AFTER || (!throttled && !idempotent) || !withdrawRetry()){
+			return -1;
+		}
+		return delay;
+	}
+
+	//Returns the number of milliseconds the Retry-After header asks to wait, or -1 if there is no valid Retry-After header. 
+	//The header holds either a number of seconds or a HTTP date.
+	private static long retryAfter(HttpHeaders headers){
+		String value = headers.firstValue("Retry-After").orElse(null);
+		if(value == null){
+			return -1;
+		}
+		value = value.trim();
+		try{
+			return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+		} catch(NumberFormatException e){}
+		try{
+			ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+			return Math.max(0, Duration.between(Instant.now(), date.toInstant()).toMillis());
+		} catch(DateTimeParseException e){
+			return -1;
+		}
+	}
+
+	private static EndpointMetrics metricsFor(String uri){
+		return metrics.computeIfAbsent(uri, (String s) -> new EndpointMetrics());
+	}
+
+	//Wraps the given BodyHandler so that the attempt is recorded as responded as soon as the response headers arrive.
+	private static <T> HttpResponse.BodyHandler<T> recording(EndpointMetrics.Attempt recorded, HttpResponse.BodyHandler<T> handler){
+		return (HttpResponse.ResponseInfo info) -> {
+			recorded.responded(info.statusCode());
+			return handler.apply(info);
+		};
+	}
+
+	private static long bodyLength(HttpRequest request){
+		return Math.max(0, request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L));
+	}
+
+	//Counts the bytes read from a response body as received from an endpoint.
+	private static class CountingInputStream extends FilterInputStream{
+		private final EndpointMetrics endpoint;
+
+		private CountingInputStream(InputStream in, EndpointMetrics endpoint){
+			super(in);
+			this.endpoint = endpoint;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int answer = super.read();
+			if(answer >= 0){
+				this.endpoint.received(1);
+			}
+			return answer;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int answer = super.read(b, off, len);
+			if(answer > 0){
+				this.endpoint.received(answer);
+			}
+			return answer;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long answer = super.skip(n);
+			this.endpoint.received(answer);
+			return answer;
+		}
+	}
+
+	//Refills the retry budget, so that tests do not depend on the retries made by earlier tests.
+	static synchronized void resetRetryBudget(){
+		retryBudget = MAX_RETRY_BUDGET;
+	}
+
+	private static synchronized void depositRetry(){
+		retryBudget = Math.min(MAX_RETRY_BUDGET, retryBudget + RETRY_DEPOSIT);
+	}
+
+	private static synchronized boolean withdrawRetry(){
+		if(retryBudget < 1){
+			return false;
+		}
+		retryBudget--;
+		return true;
+	}
+
+	private static HttpRequest buildRequest(String uri, String method, JSONObject args) throws IOException {
+		return requestBuilder(uri, method, args).build();
+	}
+
+	private static HttpRequest.Builder requestBuilder(String uri, String method, JSONObject args) throws IOException {
 		boolean get = method.equals("GET");
+		HttpRequest.Builder builder;
+		try{
+			builder = HttpRequest.newBuilder(URI.create(get ? uri + JSONToURL(args) : uri));
+		} catch(IllegalArgumentException e){
+			throw new MalformedURLException(e.getMessage());
+		}
+		builder.timeout(Duration.ofMillis(getTimeout(uri)));
+		builder.header("Accept-Encoding", "gzip, deflate");
 		if(get){
-			uri += JSONToURL(args);
-		}
-		URL url = new URL(uri);
-		connection = (HttpURLConnection)url.openConnection();
-		connection.setRequestMethod(method);
-		connection.setDoOutput(true);
-		connection.setRequestProperty("Content-Type", "application/json");
-		connection.setConnectTimeout(10000);
-		connection.setReadTimeout(10000);
-		if(!get){
-			PrintStream wr = new PrintStream(connection.getOutputStream(), true, "UTF-8");
-			wr.print(args.toString());
-			wr.flush();
-			wr.close();
-		}
-		JSONObject data;
-		Scanner input = new Scanner(connection.getInputStream());
-		input.useDelimiter("\\Z");
-		String result = input.next();
-		data = new JSONObject(result);
-		input.close();
-		return data;
+			builder.GET();
+		} else {
+			builder.header("Content-Type", "application/json");
+			builder.method(method, HttpRequest.BodyPublishers.ofString(args.toString(), StandardCharsets.UTF_8));
+		}
+		return builder;
+	}
+
+	private static <T> T parse(InputStream body, ResponseParser<T> parser) throws IOException {
+		try(Reader input = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))){
+			return parser.parse(input);
+		} catch(JSONException e){
+			if(e.getCause() instanceof IOException){
+				throw (IOException)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	//Returns the response body, decompressed according to the Content-Encoding header.
+	private static InputStream decode(HttpHeaders headers, InputStream body) throws IOException {
+		String encoding = headers.firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+		switch(encoding){
+			case "gzip":
+			case "x-gzip":
+				return new GZIPInputStream(body);
+			case "deflate":
+				return new InflaterInputStream(body);
+			default:
+				return body;
+		}
 	}
 
 	//Converts a JSONObject to a String usable in a URL.
@@ -58,8 +522,12 @@ public class NetUtils{
 			return "";
 		}
 		for(String s : keys){
-			answer += s + "=" + args.get(s).toString().replaceAll(" ", "%20").replaceAll("'", "%27") + "&";
+			answer += encode(s) + "=" + encode(args.get(s).toString()) + "&";
 		}
 		return answer.substring(0, answer.length() - 1);
 	}
-}
\ No newline at end of file
+
+	private static String encode(String s){
+		return URLEncoder.encode(s, StandardCharsets.UTF_8).replace("+", "%20");
+	}
+}
@@ -0,0 +1,93 @@
+package trading.net;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.json.*;
+import trading.economy.*;
+
+/**BackpackTFConnection which acquires a permit from a RateLimiter before each classifieds search, and otherwise delegates to another BackpackTFConnection.<br>
+Only getListingsForItem is rate limited, so price functions which do not search Backpack.tf listings never wait for a permit.
+*/
+
+public class RateLimitedBackpackTFConnection implements BackpackTFConnection{
+	private final BackpackTFConnection connection;
+	private final RateLimiter limiter;
+
+	/**Constructs a RateLimitedBackpackTFConnection.
+	@param connection the connection to delegate to.
+	@param limiter the RateLimiter to acquire permits from.
+	@throws NullPointerException if any parameter is null.
+	*/
+	public RateLimitedBackpackTFConnection(BackpackTFConnection connection, RateLimiter limiter){
+		if(connection == null || limiter == null){
+			throw new NullPointerException();
+		}
+		this.connection = connection;
+		this.limiter = limiter;
+	}
+
+	@Override
+	public void sendListings(ListingCollection<? extends Listing> listings, ListingDescriptionFunction ldf) throws IOException {
+		this.connection.sendListings(listings, ldf);
+	}
+
+	@Override
+	public void removeListings(Collection<? extends Listing> listings) throws IOException {
+		this.connection.removeListings(listings);
+	}
+
+	@Override
+	public void heartbeat() throws IOException {
+		this.connection.heartbeat();
+	}
+
+	/**Waits for a permit from this connection's RateLimiter, then searches the backpack.tf listings for the given item and returns the result.
+	@param i The item to search for.
+	@throws NullPointerException if i is null.
+	@throws InterruptedIOException if the thread is interrupted while waiting for a permit.
+	@throws IOException if an IO error occurs.
+	@return the result of a backpack.tf classifieds search API call for the given item.
+	*/
+	@Override
+	public JSONObject getListingsForItem(Item i) throws IOException {
+		if(i == null){
+			throw new NullPointerException();
+		}
+		try{
+			this.limiter.acquire();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a Backpack.tf API permit.");
+		}
+		return this.connection.getListingsForItem(i);
+	}
+
+	/**Acquires a permit from this connection's RateLimiter without blocking, then searches the backpack.tf listings for the given item without blocking.
+	@param i The item to search for.
+	@throws NullPointerException if i is null.
+	@return a CompletableFuture which completes with the result of a backpack.tf classifieds search API call for the given item, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	@Override
+	public CompletableFuture<JSONObject> getListingsForItemAsync(Item i){
+		if(i == null){
+			throw new NullPointerException();
+		}
+		return this.limiter.acquireAsync().thenCompose((Void v) -> this.connection.getListingsForItemAsync(i));
+	}
+
+	@Override
+	public JSONObject getPricesObject() throws IOException {
+		return this.connection.getPricesObject();
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getPricesObjectAsync(){
+		return this.connection.getPricesObjectAsync();
+	}
+
+	@Override
+	public PriceIndex getPriceIndex() throws IOException {
+		return this.connection.getPriceIndex();
+	}
+}
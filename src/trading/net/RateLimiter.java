@@ -0,0 +1,136 @@
+package trading.net;
+
+import java.util.concurrent.*;
+
+//TODO:
+
+/**Class representing a token bucket which limits the rate of API calls.<br>
+A RateLimiter holds up to burst permits, and gains permitsPerSecond permits every second. Each API call should acquire one permit before it is made.
+If no permit is available, acquire() waits until one is. Permits are handed out in the order they were requested.<br>
+A RateLimiter is thread-safe, and is intended to be shared by every thread which calls the same API.<br>
+A RateLimiter adapts to the API's actual rate limit: whenever throttled is called, it halves its rate and hands out no permits until the requested wait is over. 
+Each permit it then hands out raises its rate again by a small step, until it is back to permitsPerSecond. 
+The rate therefore settles just below the API's actual limit, if that is lower than permitsPerSecond.
+*/
+
+public class RateLimiter{
+	//The fraction of the maximum rate which each permit restores, and the lowest fraction of it which throttling can reduce the rate to.
+	private static final double RECOVERY_STEP = 1.0 / 32;
+	private static final double MIN_RATE = 1.0 / 64;
+	//Throttling within this long of the last decrease does not decrease the rate again, as it is most likely caused by calls made before that decrease.
+	private static final long THROTTLE_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+	private final double maxPermitsPerNano;
+	private final double burst;
+	private double permitsPerNano;
+	private double permits;
+	private long lastRefill;
+	private long lastDecrease;
+
+	/**Constructs a RateLimiter which allows permitsPerSecond API calls per second on average, with at most burst API calls in quick succession.<br>
+	The RateLimiter starts with burst permits available.
+	@param permitsPerSecond the average number of permits per second. Must be positive and finite.
+	@param burst the maximum number of permits which can be saved up. Must be positive.
+	@throws IllegalArgumentException if any preconditions are violated.
+	*/
+	public RateLimiter(double permitsPerSecond, int burst){
+		if(Double.isNaN(permitsPerSecond) || Double.isInfinite(permitsPerSecond) || permitsPerSecond <= 0){
+			throw new IllegalArgumentException("Invalid permitsPerSecond value: " + permitsPerSecond);
+		}
+		if(burst <= 0){
+			throw new IllegalArgumentException("burst was non-positive.");
+		}
+		this.maxPermitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.permitsPerNano = this.maxPermitsPerNano;
+		this.burst = burst;
+		this.permits = burst;
+		this.lastRefill = System.nanoTime();
+		this.lastDecrease = this.lastRefill - THROTTLE_WINDOW;
+	}
+
+	/**Returns the current average number of permits per second. This is permitsPerSecond, unless it has been reduced by throttled.
+	@return the current average number of permits per second.
+	*/
+	public synchronized double getRate(){
+		return this.permitsPerNano * TimeUnit.SECONDS.toNanos(1);
+	}
+
+	/**Reports that the API throttled a call, and asked to wait for the given number of milliseconds before calling it again.<br>
+	This RateLimiter halves its rate, unless it already did so within the last second, down to at least 1/64 of permitsPerSecond, 
+	and hands out no permits until the given wait is over. Permits which were already acquired are not affected.
+	@param waitMillis the number of milliseconds to wait before calling the API again. Must be non-negative.
+	@throws IllegalArgumentException if waitMillis is negative.
+	*/
+	public synchronized void throttled(long waitMillis){
+		if(waitMillis < 0){
+			throw new IllegalArgumentException("waitMillis was negative.");
+		}
+		this.refill();
+		if(this.lastRefill - this.lastDecrease >= THROTTLE_WINDOW){
+			this.permitsPerNano = Math.max(this.maxPermitsPerNano * MIN_RATE, this.permitsPerNano / 2);
+			this.lastDecrease = this.lastRefill;
+		}
+		//The next permit is then available once the wait is over.
+		this.permits = Math.min(this.permits, 1 - TimeUnit.MILLISECONDS.toNanos(waitMillis) * this.permitsPerNano);
+	}
+
+	/**Acquires a permit, waiting until one is available if necessary.
+	@throws InterruptedException if the thread is interrupted while waiting. In this case, the permit is still consumed.
+	*/
+	public void acquire() throws InterruptedException {
+		long wait = this.reserve();
+		if(wait > 0){
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**Acquires a permit without blocking, and returns a CompletableFuture which completes once the permit is available.
+	@return a CompletableFuture which completes once the acquired permit is available.
+	*/
+	public CompletableFuture<Void> acquireAsync(){
+		long wait = this.reserve();
+		if(wait <= 0){
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+	}
+
+	/**Acquires a permit if one is available immediately, and returns whether a permit was acquired.
+	@return whether a permit was acquired.
+	*/
+	public synchronized boolean tryAcquire(){
+		this.refill();
+		if(this.permits < 1){
+			return false;
+		}
+		this.permits--;
+		this.recover();
+		return true;
+	}
+
+	//Takes a permit, which may put the bucket in debt, and returns the nanoseconds until the taken permit would have been available.
+	//Later callers see the debt, so they wait behind earlier ones.
+	private synchronized long reserve(){
+		this.refill();
+		this.permits--;
+		long wait = this.permits >= 0 ? 0 : (long)Math.ceil(-this.permits / this.permitsPerNano);
+		this.recover();
+		return wait;
+	}
+
+	//Additively raises the rate after a permit is handed out, so that it returns to its maximum unless the API keeps throttling calls.
+	//Debt is rescaled so that permits already reserved still become available at the times they were promised.
+	private void recover(){
+		double rate = Math.min(this.maxPermitsPerNano, this.permitsPerNano + this.maxPermitsPerNano * RECOVERY_STEP);
+		if(this.permits < 0){
+			this.permits = this.permits * rate / this.permitsPerNano;
+		}
+		this.permitsPerNano = rate;
+	}
+
+	private void refill(){
+		long now = System.nanoTime();
+		this.permits = Math.min(this.burst, this.permits + (now - this.lastRefill) * this.permitsPerNano);
+		this.lastRefill = now;
+	}
+}
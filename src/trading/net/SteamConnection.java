@@ -2,6 +2,7 @@ package trading.net;
 
 import org.json.*;
 import java.io.*;
+import java.util.concurrent.*;
 
 //TODO:
 
@@ -16,4 +17,22 @@ public interface SteamConnection{
 	@return the result of a Steam user inventory API call for the given ID.
 	*/
 	JSONObject getInventoryForUser(String steamID) throws IOException;
+
+	/**Returns a CompletableFuture which completes with the result of a Steam user inventory API call for the given ID, without blocking.<br>
+	The default implementation calls getInventoryForUser(steamID) on the calling thread, and returns an already completed CompletableFuture. 
+	Implementing classes which make API calls are encouraged to override this method to make the call without blocking.
+	@param steamID the ID to lookup.
+	@throws NullPointerException if steamID is null.
+	@return a CompletableFuture which completes with the result of a Steam user inventory API call for the given ID, or completes exceptionally with an IOException if an IO error occurs.
+	*/
+	default CompletableFuture<JSONObject> getInventoryForUserAsync(String steamID){
+		if(steamID == null){
+			throw new NullPointerException();
+		}
+		try{
+			return CompletableFuture.completedFuture(this.getInventoryForUser(steamID));
+		} catch(IOException e){
+			return CompletableFuture.failedFuture(e);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package trading.driver;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import trading.economy.TradeOfferResponse;
+
+public class OfferBridgeTest {
+	@Test
+	public void testRead() throws IOException {
+		String input = "{\"type\": \"offer\", \"id\": \"1\", \"offer\": {\"partner\": \"A\"}}\n"
+			+ "{\"type\": \"offer\", \"id\": \"2\", \"offer\": {\"partner\": \"B\"}}\n"
+			+ "{\"type\": \"ack\", \"id\": \"2\"}\n"
+			+ "{\"type\": \"error\", \"id\": \"1\", \"message\": \"Trade offer is no longer valid\"}\n"
+			+ "{\"type\": \"error\", \"id\": null, \"message\": \"Logged off\"}\n"
+			+ "Some library output\n";
+		OfferBridge bridge = new OfferBridge(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream());
+
+		OfferBridge.Message message = bridge.read();
+		assertEquals(message.getType(), OfferBridge.Type.OFFER);
+		assertEquals(message.getID(), "1");
+		assertEquals(message.getOffer().getString("partner"), "A");
+		assertEquals(bridge.read().getID(), "2");
+
+		//Acknowledgements and errors may arrive in any order.
+		message = bridge.read();
+		assertEquals(message.getType(), OfferBridge.Type.ACK);
+		assertEquals(message.getID(), "2");
+		message = bridge.read();
+		assertEquals(message.getType(), OfferBridge.Type.ERROR);
+		assertEquals(message.getID(), "1");
+		assertEquals(message.getText(), "Trade offer is no longer valid");
+		message = bridge.read();
+		assertEquals(message.getType(), OfferBridge.Type.ERROR);
+		assertNull(message.getID());
+
+		message = bridge.read();
+		assertEquals(message.getType(), OfferBridge.Type.LOG);
+		assertEquals(message.getText(), "Some library output");
+		assertNull(bridge.read());
+
+		assertEquals(OfferBridge.Message.parse("{\"type\": \"unknown\"}").getType(), OfferBridge.Type.LOG);
+		testExpectedException(() -> {OfferBridge.Message.parse("{\"type\": \"offer\", \"id\": \"1\"}");}, JSONException.class);
+		testExpectedException(() -> {new OfferBridge(null, new ByteArrayOutputStream());}, NullPointerException.class);
+	}
+
+	@Test
+	public void testRespond() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		OfferBridge bridge = new OfferBridge(new ByteArrayInputStream(new byte[0]), output);
+		bridge.respond("2", TradeOfferResponse.DECLINE);
+		bridge.respond("1", TradeOfferResponse.ACCEPT);
+		String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+		assertEquals(lines.length, 2);
+		assertTrue(new JSONObject(lines[0]).similar(new JSONObject().put("type", "response").put("id", "2").put("response", "DECLINE")));
+		assertTrue(new JSONObject(lines[1]).similar(new JSONObject().put("type", "response").put("id", "1").put("response", "ACCEPT")));
+
+		testExpectedException(() -> {bridge.respond(null, TradeOfferResponse.HOLD);}, NullPointerException.class);
+		testExpectedException(() -> {bridge.respond("1", null);}, NullPointerException.class);
+	}
+}
@@ -0,0 +1,69 @@
+package trading.driver;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class SteamTest {
+	@Test
+	public void testPaging() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		int[] requests = new int[] {0};
+		server.createContext("/profiles/", (exchange) -> {
+			requests[0]++;
+			String query = exchange.getRequestURI().getRawQuery();
+			String body;
+			if(exchange.getRequestURI().getPath().startsWith("/profiles/stuck/")) {
+				body = "{\"success\": true, \"rgInventory\": [], \"rgDescriptions\": [], \"more\": true, \"more_start\": 0}";
+			} else if(query == null) {
+				body = "{\"success\": true, \"rgInventory\": {\"1\": {\"id\": \"1\", \"classid\": \"10\", \"instanceid\": \"0\"}}, \"rgDescriptions\": {\"10_0\": {\"market_name\": \"A\"}}, \"more\": true, \"more_start\": 1}";
+			} else if(query.equals("start=1")) {
+				body = "{\"success\": true, \"rgInventory\": {\"2\": {\"id\": \"2\", \"classid\": \"20\", \"instanceid\": \"0\"}}, \"rgDescriptions\": {\"20_0\": {\"market_name\": \"B\"}}, \"more\": true, \"more_start\": 2}";
+			} else {
+				body = "{\"success\": true, \"rgInventory\": [], \"rgDescriptions\": [], \"more\": false, \"more_start\": false}";
+			}
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, bytes.length);
+			try(OutputStream output = exchange.getResponseBody()) {
+				output.write(bytes);
+			}
+		});
+		server.start();
+		try {
+			Steam steam = Steam.open("http://127.0.0.1:" + server.getAddress().getPort());
+			JSONObject inventory = steam.getInventoryForUser("76561198000000000");
+			assertEquals(requests[0], 3);
+			assertEquals(inventory.getJSONObject("rgInventory").length(), 2);
+			assertEquals(inventory.getJSONObject("rgInventory").getJSONObject("2").getString("classid"), "20");
+			assertEquals(inventory.getJSONObject("rgDescriptions").getJSONObject("10_0").getString("market_name"), "A");
+			assertEquals(inventory.getJSONObject("rgDescriptions").getJSONObject("20_0").getString("market_name"), "B");
+			assertFalse(inventory.getBoolean("more"));
+
+			JSONObject async = steam.getInventoryForUserAsync("76561198000000000").join();
+			assertEquals(requests[0], 6);
+			assertTrue(async.similar(inventory));
+
+			//Pages which do not advance are an error, rather than being requested forever.
+			testExpectedException(() -> {steam.getInventoryForUser("stuck");}, IOException.class);
+			try {
+				steam.getInventoryForUserAsync("stuck").join();
+				fail();
+			} catch(CompletionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+			testExpectedException(() -> {steam.getInventoryForUser(null);}, NullPointerException.class);
+		} finally {
+			server.stop(0);
+		}
+	}
+}
@@ -143,4 +143,13 @@ public class AcceptabilityFunctionTest {
 		Item i = p.first();
 		return af.determineAcceptability(p.second(), i.getName(), i.getEffect(), keyScrapRatio);
 	}
+
+	@Test
+	public void testLastUpdateWindow() {
+		assertEquals(AcceptabilityFunction.acceptAll().getLastUpdateWindow(), 0);
+		assertEquals(AcceptabilityFunction.checkType(false, null, false, null).getLastUpdateWindow(), 0);
+		assertEquals(AcceptabilityFunction.checkData(8, 51, 4, 100000).getLastUpdateWindow(), 100000);
+		assertEquals(AcceptabilityFunction.checkData(8, 51, 4, -1).getLastUpdateWindow(), 0);
+		assertEquals(AcceptabilityFunction.checkDataAndType(0, 0, -1, 500, false, null, false, null).getLastUpdateWindow(), 500);
+	}
 }
\ No newline at end of file
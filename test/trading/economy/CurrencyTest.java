@@ -0,0 +1,41 @@
+package trading.economy;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class CurrencyTest {
+	private static JSONObject offerItem(String name, int quality, Integer defindex) {
+		JSONObject appData = new JSONObject().put("quality", quality);
+		if(defindex != null) {
+			appData.put("def_index", defindex.toString());
+		}
+		return new JSONObject().put("market_name", name).put("app_data", appData);
+	}
+
+	@Test
+	public void testForOfferItem() {
+		assertEquals(Currency.forOfferItem(offerItem("Mann Co. Supply Crate Key", 6, 5021)), Currency.KEY);
+		assertEquals(Currency.forOfferItem(offerItem("Refined Metal", 6, null)), Currency.REFINED);
+		assertEquals(Currency.forOfferItem(offerItem("reclaimed metal", 6, null)), Currency.RECLAIMED);
+		assertEquals(Currency.forOfferItem(offerItem("Anything", 6, 5000)), Currency.SCRAP);
+		assertNull(Currency.forOfferItem(offerItem("Scrap Metal", 6, 5003)));
+		assertNull(Currency.forOfferItem(offerItem("Scrap Metal", 11, 5000)));
+		assertNull(Currency.forOfferItem(offerItem("War Pig", 5, null)));
+
+		testExpectedException(() -> {Currency.forOfferItem(null);}, NullPointerException.class);
+		testExpectedException(() -> {Currency.forOfferItem(new JSONObject());}, JSONException.class);
+	}
+
+	@Test
+	public void testGetScrapValue() {
+		assertEquals(Currency.KEY.getScrapValue(450), 450);
+		assertEquals(Currency.REFINED.getScrapValue(450), 9);
+		assertEquals(Currency.RECLAIMED.getScrapValue(450), 3);
+		assertEquals(Currency.SCRAP.getScrapValue(450), 1);
+		assertEquals(Currency.SCRAP.getItem(), new Item("Scrap Metal", Quality.UNIQUE));
+	}
+}
@@ -8,8 +8,8 @@ import org.json.JSONObject;
 import org.junit.Test;
 
 public class KeyScrapRatioFunctionTest {
-	private static final JSONObject pricesObject = new JSONObject("{\"response\": {\"items\": {\"Mann Co. Supply Crate Key\": {\"prices\": {\"6\": {\"Tradable\": {\"Craftable\": [{\"value\": 55, \"value_high\": 55.66, \"currency\": \"metal\"}]}}}}}}}}");
-	private static final JSONObject badCurrency = new JSONObject("{\"response\": {\"items\": {\"Mann Co. Supply Crate Key\": {\"prices\": {\"6\": {\"Tradable\": {\"Craftable\": [{\"value\": 55, \"value_high\": 55.66, \"currency\": \"USD\"}]}}}}}}}}");
+	private static final PriceIndex pricesObject = PriceIndex.fromBackpackTFRepresentation(new JSONObject("{\"response\": {\"items\": {\"Mann Co. Supply Crate Key\": {\"prices\": {\"6\": {\"Tradable\": {\"Craftable\": [{\"value\": 55, \"value_high\": 55.66, \"currency\": \"metal\"}]}}}}}}}}"));
+	private static final PriceIndex badCurrency = PriceIndex.fromBackpackTFRepresentation(new JSONObject("{\"response\": {\"items\": {\"Mann Co. Supply Crate Key\": {\"prices\": {\"6\": {\"Tradable\": {\"Craftable\": [{\"value\": 55, \"value_high\": 55.66, \"currency\": \"USD\"}]}}}}}}}}"));
 	
 	@Test
 	public void testCustomRatio() {
@@ -23,7 +23,7 @@ public class KeyScrapRatioFunctionTest {
 		KeyScrapRatioFunction bptf = KeyScrapRatioFunction.backpackTFRatio();
 		assertEquals(bptf.calculateRatio(pricesObject), 498);
 		testExpectedException(() -> {bptf.calculateRatio(null);}, NullPointerException.class);
-		testExpectedException(() -> {bptf.calculateRatio(new JSONObject());}, JSONException.class);
+		testExpectedException(() -> {bptf.calculateRatio(new PriceIndex.Builder().build());}, JSONException.class);
 		testExpectedException(() -> {bptf.calculateRatio(badCurrency);}, JSONException.class);
 	}
 }
@@ -54,6 +54,32 @@ public class ListingHashSetTest {
 		assertFalse(oneCopy == one);
 	}
 	
+	@Test
+	public void testGet() {
+		Hat h = new Hat("Anger", Effect.forName("Massed Flies"), new PriceRange(new Price(10, 0), new Price(12, 0), 180), new Price(8, 0), "KJ", LocalDate.of(2021, 1, 20));
+		Hat h2 = new Hat("Anger", Effect.forName("Massed Flies"), new PriceRange(new Price(10, 0), new Price(12, 0), 180), new Price(9, 0), "JK", LocalDate.of(2021, 1, 20));
+		ListingHashSet<Hat> hats = new ListingHashSet<>(List.of(h));
+		assertTrue(hats.get(new Item("anger", Quality.UNUSUAL, Effect.forName("Massed Flies"))) == h);
+		assertNull(hats.get(new Item("Anger", Quality.UNUSUAL, Effect.forName("Orbiting Fire"))));
+		assertNull(hats.get(new Item("Anger", Quality.UNIQUE)));
+		assertNull(hats.get(null));
+		assertFalse(hats.add(h2));
+		assertTrue(hats.get(h2) == h);
+		assertTrue(hats.contains(new Item("Anger", Quality.UNUSUAL, Effect.forName("Massed Flies"))));
+		assertFalse(hats.contains("Anger"));
+		assertTrue(hats.remove(new Item("Anger", Quality.UNUSUAL, Effect.forName("Massed Flies"))));
+		assertNull(hats.get(h));
+		assertEquals(hats.size(), 0);
+		testExpectedException(() -> {hats.add(null);}, NullPointerException.class);
+
+		ListingList<Hat> list = new ListingList<>(List.of(h));
+		assertTrue(list.get(h2) == h);
+		list.set(0, h2);
+		assertTrue(list.get(h) == h2);
+		list.remove(0);
+		assertNull(list.get(h));
+	}
+
 	@Test
 	public void testToString() {
 		assertNotNull(empty.toString());
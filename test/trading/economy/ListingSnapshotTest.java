@@ -0,0 +1,131 @@
+package trading.economy;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ListingSnapshotTest {
+	private static final PriceRange communityPrice = new PriceRange(new Price(10, 0), new Price(12, 0), 180);
+	private static final BuyListing anger = new BuyListing("Anger", Effect.forName("Massed Flies"), communityPrice);
+	private static final BuyListing ballcap = new BuyListing("Backwards Ballcap", Effect.forName("Scorching Flames"), communityPrice);
+
+	@Test
+	public void testWithAndWithout() {
+		ListingSnapshot<BuyListing> empty = ListingSnapshot.empty();
+		ListingSnapshot<BuyListing> one = empty.with(anger);
+		ListingSnapshot<BuyListing> two = one.with(ballcap);
+		assertEquals(empty.size(), 0);
+		assertEquals(one.size(), 1);
+		assertEquals(two.size(), 2);
+		assertNull(empty.get(anger));
+		assertTrue(one.get(new Item("anger", Quality.UNUSUAL, Effect.forName("Massed Flies"))) == anger);
+		assertNull(one.get(ballcap));
+		assertTrue(two.get(ballcap) == ballcap);
+		assertNull(two.get(null));
+		assertFalse(two.contains("Anger"));
+
+		BuyListing angerCopy = anger.copy();
+		angerCopy.setPrice(new Price(11, 0));
+		ListingSnapshot<BuyListing> replaced = two.with(angerCopy);
+		assertEquals(replaced.size(), 2);
+		assertTrue(replaced.get(anger) == angerCopy);
+		assertTrue(two.get(anger) == anger);
+
+		ListingSnapshot<BuyListing> removed = two.without(anger);
+		assertEquals(removed.size(), 1);
+		assertNull(removed.get(anger));
+		assertTrue(two.get(anger) == anger);
+		assertTrue(removed.without(anger) == removed);
+		testExpectedException(() -> {empty.with(null);}, NullPointerException.class);
+	}
+
+	@Test
+	public void testImmutable() {
+		ListingSnapshot<BuyListing> two = ListingSnapshot.of(List.of(anger, ballcap));
+		testExpectedException(() -> {two.add(anger);}, UnsupportedOperationException.class);
+		testExpectedException(() -> {two.remove(anger);}, UnsupportedOperationException.class);
+		testExpectedException(() -> {two.clear();}, UnsupportedOperationException.class);
+		testExpectedException(() -> {two.iterator().remove();}, UnsupportedOperationException.class);
+		assertEquals(two.size(), 2);
+	}
+
+	@Test
+	public void testOf() {
+		BuyListing angerCopy = anger.copy();
+		ListingSnapshot<BuyListing> snapshot = ListingSnapshot.of(List.of(anger, ballcap, angerCopy));
+		assertEquals(snapshot.size(), 2);
+		assertTrue(snapshot.get(anger) == anger);
+		assertTrue(ListingSnapshot.of(snapshot) == snapshot);
+		assertEquals(snapshot, new ListingHashSet<>(List.of(anger, ballcap)));
+		assertEquals(new ListingHashSet<>(List.of(anger, ballcap)), snapshot);
+		testHashCode(snapshot, new ListingHashSet<>(List.of(anger, ballcap)));
+		testExpectedException(() -> {ListingSnapshot.of(null);}, NullPointerException.class);
+	}
+
+	@Test
+	public void testManyListings() {
+		Random random = new Random(440);
+		Map<Item, BuyListing> expected = new HashMap<>();
+		ListingSnapshot<BuyListing> snapshot = ListingSnapshot.empty();
+		for(int i = 0; i < 20000; i++) {
+			BuyListing listing = new BuyListing("Hat " + random.nextInt(2000), Effect.forInt(13), communityPrice);
+			if(random.nextInt(3) == 0) {
+				snapshot = snapshot.without(listing);
+				expected.remove(listing);
+			} else {
+				snapshot = snapshot.with(listing);
+				expected.put(listing, listing);
+			}
+		}
+		assertEquals(snapshot.size(), expected.size());
+		for(BuyListing listing : expected.values()) {
+			assertTrue(snapshot.get(listing) == listing);
+		}
+		HashSet<BuyListing> iterated = new HashSet<>();
+		for(BuyListing listing : snapshot) {
+			assertTrue(iterated.add(listing));
+		}
+		assertEquals(iterated, new HashSet<>(expected.values()));
+	}
+
+	@Test
+	public void testEqualHashes() {
+		//"a?" and "b " have the same hash code.
+		BuyListing first = new BuyListing("a?", Effect.forInt(13), communityPrice);
+		BuyListing second = new BuyListing("b ", Effect.forInt(13), communityPrice);
+		assertEquals(first.hashCode(), second.hashCode());
+		ListingSnapshot<BuyListing> snapshot = ListingSnapshot.<BuyListing>empty().with(first).with(second).with(anger);
+		assertEquals(snapshot.size(), 3);
+		assertTrue(snapshot.get(first) == first);
+		assertTrue(snapshot.get(second) == second);
+		assertEquals(Set.copyOf(snapshot), Set.of(first, second, anger));
+		ListingSnapshot<BuyListing> removed = snapshot.without(first);
+		assertNull(removed.get(first));
+		assertTrue(removed.get(second) == second);
+		assertEquals(removed.size(), 2);
+		assertEquals(removed.without(second).without(anger).size(), 0);
+		assertFalse(removed.without(second).without(anger).iterator().hasNext());
+	}
+
+	@Test
+	public void testCopy() {
+		ListingSnapshot<BuyListing> snapshot = ListingSnapshot.of(List.of(anger, ballcap));
+		ListingHashSet<BuyListing> copy = snapshot.copy();
+		assertEquals(copy, snapshot);
+		assertFalse(copy.get(anger) == anger);
+	}
+
+	@Test
+	public void testToString() {
+		assertNotNull(ListingSnapshot.empty().toString());
+		assertNotNull(ListingSnapshot.of(List.of(anger, ballcap)).toString());
+	}
+}
@@ -0,0 +1,204 @@
+package trading.economy;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PriceIndexTest {
+	private static final JSONObject pricesObject = new JSONObject("{\"response\": {\"items\": {"
+			+ "\"Mann Co. Supply Crate Key\": {\"prices\": {\"6\": {\"Tradable\": {\"Craftable\": [{\"value\": 55, \"value_high\": 55.66, \"currency\": \"metal\", \"last_update\": 10}]}}}}, "
+			+ "\"War Pig\": {\"prices\": {\"6\": {\"Tradable\": {\"Craftable\": [{\"value\": 1.33, \"currency\": \"metal\"}]}}, \"5\": {\"Tradable\": {\"Craftable\": {"
+			+ "\"12\": {\"value\": 10, \"value_high\": 12.5, \"currency\": \"keys\", \"last_update\": 20}, "
+			+ "\"13\": {\"value\": 40, \"currency\": \"usd\", \"last_update\": 30}}}}}}}}}");
+
+	@Test
+	public void testFromBackpackTFRepresentation() {
+		PriceIndex index = PriceIndex.fromBackpackTFRepresentation(pricesObject);
+		assertEquals(index.size(), 3);
+		assertEquals(index.find("War Pig", Quality.UNIQUE, 0), -1);
+		assertEquals(index.find("Bunsen Brave", Quality.UNUSUAL, 12), -1);
+		assertEquals(index.find("War Pig", Quality.UNUSUAL, 14), -1);
+
+		int key = index.find(PriceIndex.KEY_NAME, Quality.UNIQUE, 0);
+		assertEquals(index.getCurrency(key), "metal");
+		assertEquals(index.getValue(key), 55, 0);
+		assertEquals(index.getValueHigh(key), 55.66, 0);
+		assertEquals(index.getLastUpdate(key), 10);
+
+		int warPig = index.find(new Item("War Pig", Quality.UNUSUAL, Effect.forInt(12)));
+		assertEquals(index.getName(warPig), "War Pig");
+		assertEquals(index.getQuality(warPig), Quality.UNUSUAL);
+		assertEquals(index.getPriceIndex(warPig), 12);
+		assertTrue(index.hasValueHigh(warPig));
+		assertTrue(index.acceptableCurrency(warPig));
+		assertEquals(index.getCommunityPrice(warPig, 450), new PriceRange(new Price(10, 0), new Price(12, 0), 450));
+
+		int usd = index.find("War Pig", Quality.UNUSUAL, 13);
+		assertFalse(index.hasValueHigh(usd));
+		assertEquals(index.getValueHigh(usd), 40, 0);
+		assertFalse(index.acceptableCurrency(usd));
+		testExpectedException(() -> {index.getCommunityPrice(usd, 450);}, IllegalArgumentException.class);
+
+		testExpectedException(() -> {PriceIndex.fromBackpackTFRepresentation((JSONObject)null);}, NullPointerException.class);
+		testExpectedException(() -> {PriceIndex.fromBackpackTFRepresentation(new JSONObject());}, JSONException.class);
+	}
+
+	@Test
+	public void testBackpackTFRepresentation() {
+		PriceIndex index = PriceIndex.fromBackpackTFRepresentation(pricesObject);
+		JSONObject entry = pricesObject.getJSONObject("response").getJSONObject("items").getJSONObject("War Pig").getJSONObject("prices").getJSONObject("5").getJSONObject("Tradable").getJSONObject("Craftable").getJSONObject("12");
+		int slot = index.find("War Pig", Quality.UNUSUAL, 12);
+		assertEquals(PriceRange.fromBackpackTFRepresentation(index.getBackpackTFRepresentation(slot), 450), PriceRange.fromBackpackTFRepresentation(entry, 450));
+		assertEquals(index.getBackpackTFRepresentation(slot).getLong("last_update"), 20);
+	}
+
+	@Test
+	public void testBuilder() {
+		PriceIndex.Builder builder = new PriceIndex.Builder();
+		for(int i = 0; i < 1000; i++) {
+			builder.add("Hat " + (i % 100), Quality.UNUSUAL, i / 100, "keys", i, Double.NaN, i);
+		}
+		builder.add("Hat 0", Quality.UNUSUAL, 0, "metal", 5, 6, 7);
+		PriceIndex index = builder.build();
+		assertEquals(index.size(), 1000);
+		for(int i = 1; i < 1000; i++) {
+			int slot = index.find("Hat " + (i % 100), Quality.UNUSUAL, i / 100);
+			assertEquals(index.getValue(slot), i, 0);
+			assertEquals(index.getLastUpdate(slot), i);
+		}
+		assertEquals(index.getCurrency(index.find("Hat 0", Quality.UNUSUAL, 0)), "metal");
+		assertEquals(new PriceIndex.Builder().build().size(), 0);
+		testExpectedException(() -> {new PriceIndex.Builder().add(null, Quality.UNUSUAL, 0, "keys", 1, 1, 1);}, NullPointerException.class);
+	}
+
+	@Test
+	public void testMerge() {
+		PriceIndex index = PriceIndex.fromBackpackTFRepresentation(pricesObject);
+		assertEquals(index.getLatestUpdate(), 30);
+		assertEquals(new PriceIndex.Builder().build().getLatestUpdate(), 0);
+		assertSame(index.merge(new PriceIndex.Builder().build()), index);
+		assertSame(index.merge(PriceIndex.fromBackpackTFRepresentation(pricesObject)), index);
+
+		PriceIndex updates = new PriceIndex.Builder()
+			.add("War Pig", Quality.UNUSUAL, 12, "keys", 11, Double.NaN, 40)
+			.add("Bunsen Brave", Quality.UNUSUAL, 13, "metal", 20, 25, 50).build();
+		PriceIndex merged = index.merge(updates);
+		assertEquals(merged.size(), 4);
+		assertEquals(merged.getLatestUpdate(), 50);
+		int warPig = merged.find("War Pig", Quality.UNUSUAL, 12);
+		assertEquals(merged.getValue(warPig), 11, 0);
+		assertFalse(merged.hasValueHigh(warPig));
+		assertTrue(merged.changedFrom(warPig, index));
+		int key = merged.find(PriceIndex.KEY_NAME, Quality.UNIQUE, 0);
+		assertFalse(merged.changedFrom(key, index));
+		assertFalse(merged.changedFrom(merged.find("War Pig", Quality.UNUSUAL, 13), index));
+		assertEquals(merged.getValueHigh(merged.find("Bunsen Brave", Quality.UNUSUAL, 13)), 25, 0);
+		assertEquals(index.size(), 3);
+		testExpectedException(() -> {index.merge(null);}, NullPointerException.class);
+	}
+
+	@Test
+	public void testSamplePrices() throws IOException {
+		JSONObject sample = new JSONObject(new String(Files.readAllBytes(Paths.get("./test/trading/net/inventory.json"))));
+		PriceIndex index = PriceIndex.fromBackpackTFRepresentation(sample);
+		JSONObject groundControl = sample.getJSONObject("response").getJSONObject("items").getJSONObject("Ground Control").getJSONObject("prices").getJSONObject("5").getJSONObject("Tradable").getJSONObject("Craftable");
+		for(String effect : JSONObject.getNames(groundControl)) {
+			int slot = index.find("Ground Control", Quality.UNUSUAL, Integer.parseInt(effect));
+			assertEquals(index.getValue(slot), groundControl.getJSONObject(effect).getDouble("value"), 0);
+		}
+	}
+
+	@Test
+	public void testStreaming() throws IOException {
+		assertSameIndex(PriceIndex.fromBackpackTFRepresentation(new StringReader(pricesObject.toString())), PriceIndex.fromBackpackTFRepresentation(pricesObject));
+		try(Reader sample = Files.newBufferedReader(Paths.get("./test/trading/net/inventory.json"))) {
+			JSONObject sampleObject = new JSONObject(new String(Files.readAllBytes(Paths.get("./test/trading/net/inventory.json")), StandardCharsets.UTF_8));
+			assertSameIndex(PriceIndex.fromBackpackTFRepresentation(sample), PriceIndex.fromBackpackTFRepresentation(sampleObject));
+		}
+		assertEquals(PriceIndex.fromBackpackTFRepresentation(new StringReader("{\"response\": {\"items\": {}, \"success\": 1}}")).size(), 0);
+
+		testExpectedException(() -> {PriceIndex.fromBackpackTFRepresentation((Reader)null);}, NullPointerException.class);
+		testExpectedException(() -> {PriceIndex.fromBackpackTFRepresentation(new StringReader("{}"));}, JSONException.class);
+		testExpectedException(() -> {PriceIndex.fromBackpackTFRepresentation(new StringReader("{\"response\": {\"items\": {\"War Pig\": "));}, JSONException.class);
+		testExpectedException(() -> {PriceIndex.fromBackpackTFRepresentation(new StringReader("[]"));}, JSONException.class);
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		Path snapshot = Files.createTempFile("prices", ".bin");
+		try {
+			PriceIndex index;
+			try(Reader sample = Files.newBufferedReader(Paths.get("./test/trading/net/inventory.json"))) {
+				index = PriceIndex.fromBackpackTFRepresentation(sample);
+			}
+			index.writeSnapshot(snapshot);
+			assertTrue(PriceIndex.isSnapshot(snapshot));
+			PriceIndex opened = PriceIndex.openSnapshot(snapshot);
+			assertSameIndex(opened, index);
+			assertEquals(opened.find("War Pig", Quality.UNUSUAL, 1), -1);
+			assertEquals(opened.getCommunityPrice(opened.find(PriceIndex.KEY_NAME, Quality.UNIQUE, 0), 450), index.getCommunityPrice(index.find(PriceIndex.KEY_NAME, Quality.UNIQUE, 0), 450));
+
+			Path copy = Files.createTempFile("prices", ".bin");
+			try {
+				opened.writeSnapshot(copy);
+				assertArrayEquals(Files.readAllBytes(copy), Files.readAllBytes(snapshot));
+				PriceIndex read = PriceIndex.readSnapshot(copy);
+				assertSameIndex(read, index);
+				//A snapshot which was read rather than opened no longer depends on its file.
+				new PriceIndex.Builder().build().writeSnapshot(copy);
+				assertSameIndex(read, index);
+			} finally {
+				Files.delete(copy);
+			}
+
+			new PriceIndex.Builder().build().writeSnapshot(snapshot);
+			assertEquals(PriceIndex.openSnapshot(snapshot).size(), 0);
+			assertEquals(PriceIndex.openSnapshot(snapshot).find("War Pig", Quality.UNUSUAL, 12), -1);
+
+			PriceIndex.fromBackpackTFRepresentation(pricesObject).writeSnapshot(snapshot);
+			byte[] bytes = Files.readAllBytes(snapshot);
+			bytes[bytes.length - 40] ^= 1;
+			Files.write(snapshot, bytes);
+			testExpectedException(() -> {PriceIndex.openSnapshot(snapshot);}, IOException.class);
+			testExpectedException(() -> {PriceIndex.readSnapshot(snapshot);}, IOException.class);
+			Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 1));
+			testExpectedException(() -> {PriceIndex.openSnapshot(snapshot);}, IOException.class);
+
+			assertFalse(PriceIndex.isSnapshot(Paths.get("./test/trading/net/inventory.json")));
+			testExpectedException(() -> {PriceIndex.openSnapshot(Paths.get("./test/trading/net/inventory.json"));}, IOException.class);
+			testExpectedException(() -> {PriceIndex.openSnapshot(null);}, NullPointerException.class);
+		} finally {
+			Files.delete(snapshot);
+		}
+	}
+
+	@Test
+	public void testToString() {
+		assertNotNull(PriceIndex.fromBackpackTFRepresentation(pricesObject).toString());
+	}
+
+	private static void assertSameIndex(PriceIndex actual, PriceIndex expected) {
+		assertEquals(actual.size(), expected.size());
+		for(int i = 0; i < expected.size(); i++) {
+			int slot = actual.find(expected.getName(i), expected.getQuality(i), expected.getPriceIndex(i));
+			assertNotEquals(slot, -1);
+			assertEquals(actual.getCurrency(slot), expected.getCurrency(i));
+			assertEquals(actual.getValue(slot), expected.getValue(i), 0);
+			assertEquals(actual.hasValueHigh(slot), expected.hasValueHigh(i));
+			assertEquals(actual.getValueHigh(slot), expected.getValueHigh(i), 0);
+			assertEquals(actual.getLastUpdate(slot), expected.getLastUpdate(i));
+		}
+	}
+}
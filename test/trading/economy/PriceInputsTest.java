@@ -0,0 +1,44 @@
+package trading.economy;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PriceInputsTest {
+	private static final int keyScrapRatio = 450;
+	private static final LocalDate today = LocalDate.of(2021, 2, 20);
+	private static final Hat ballcap = new Hat("Backwards Ballcap", Effect.forName("Scorching Flames"), new PriceRange(new Price(50, 0)), new Price(35, 0), "C", today);
+	private static final BuyListing lid = new BuyListing("War Pig", Effect.forName("Massed Flies"), new PriceRange(new Price(11, 0)));
+
+	@Test
+	public void testDirty() {
+		PriceInputs inputs = new PriceInputs();
+		List<Listing> listings = List.of(ballcap, lid);
+		assertEquals(inputs.dirty(listings, keyScrapRatio, today), listings);
+		inputs.calculated(ballcap, keyScrapRatio, today);
+		inputs.calculated(lid, keyScrapRatio, today);
+		assertTrue(inputs.dirty(listings, keyScrapRatio, today).isEmpty());
+
+		//Each input dirties the listings which depend on it.
+		assertEquals(inputs.dirty(listings, keyScrapRatio + 1, today), listings);
+		assertEquals(inputs.dirty(listings, keyScrapRatio, today.plusDays(1)), listings);
+		BuyListing changedLid = lid.copy();
+		changedLid.changeCommunityPrice(new PriceRange(new Price(12, 0)));
+		assertEquals(inputs.dirty(List.of(ballcap, changedLid), keyScrapRatio, today), List.of(changedLid));
+		Hat rebought = new Hat("Backwards Ballcap", Effect.forName("Scorching Flames"), new PriceRange(new Price(50, 0)), new Price(30, 0), "C", today);
+		assertEquals(inputs.dirty(List.of(rebought, lid), keyScrapRatio, today), List.of(rebought));
+
+		inputs.markDirty(new Item("War Pig", Quality.UNUSUAL, Effect.forName("Massed Flies")));
+		assertEquals(inputs.dirty(listings, keyScrapRatio, today), List.of(lid));
+		inputs.calculated(lid, keyScrapRatio, today);
+		inputs.retainAll(List.of(lid));
+		assertEquals(inputs.dirty(listings, keyScrapRatio, today), List.of(ballcap));
+
+		testExpectedException(() -> {inputs.dirty(null, keyScrapRatio, today);}, NullPointerException.class);
+		testExpectedException(() -> {inputs.calculated(lid, keyScrapRatio, null);}, NullPointerException.class);
+	}
+}
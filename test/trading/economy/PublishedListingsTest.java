@@ -0,0 +1,73 @@
+package trading.economy;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PublishedListingsTest {
+	private static final PriceRange communityPrice = new PriceRange(new Price(10, 0), new Price(12, 0), 450);
+	private static final ListingDescriptionFunction ldf = ListingDescriptionFunction.simpleDescription();
+
+	@Test
+	public void testChanges() {
+		Hat ballcap = new Hat("Backwards Ballcap", Effect.forName("Scorching Flames"), communityPrice, new Price(8, 0), "A", LocalDate.now());
+		ballcap.setPrice(new Price(11, 0));
+		BuyListing anger = new BuyListing("Anger", Effect.forName("Massed Flies"), communityPrice);
+		anger.setPrice(new Price(9, 0));
+		BuyListing hidden = new BuyListing("War Pig", Effect.forName("Massed Flies"), communityPrice);
+		PublishedListings published = new PublishedListings();
+
+		PublishedListings.Changes first = published.changes(new ListingHashSet<>(List.of(ballcap, anger, hidden)), ldf, false);
+		assertEquals(first.changed().size(), 2);
+		assertNull(first.changed().get(hidden));
+		assertTrue(first.removed().isEmpty());
+		//Nothing is remembered until the changes are committed.
+		assertEquals(published.changes(new ListingHashSet<>(List.of(ballcap, anger, hidden)), ldf, false).changed().size(), 2);
+		published.commit(first);
+		assertEquals(published.changes(new ListingHashSet<>(List.of(ballcap, anger, hidden)), ldf, false).changed().size(), 0);
+		assertEquals(published.changes(new ListingHashSet<>(List.of(ballcap, anger, hidden)), ldf, true).changed().size(), 2);
+
+		BuyListing newAnger = anger.copy();
+		newAnger.setPrice(new Price(9, 5));
+		PublishedListings.Changes priceChanged = published.changes(new ListingHashSet<>(List.of(ballcap, newAnger)), ldf, false);
+		assertEquals(priceChanged.changed().size(), 1);
+		assertTrue(priceChanged.changed().get(anger) == newAnger);
+		assertTrue(priceChanged.removed().isEmpty());
+
+		Hat newBallcap = ballcap.copy();
+		newBallcap.setID("B");
+		BuyListing hiddenAnger = anger.copy();
+		hiddenAnger.setPrice(null);
+		PublishedListings.Changes removed = published.changes(new ListingHashSet<>(List.of(newBallcap, hiddenAnger)), ldf, false);
+		assertEquals(removed.changed().size(), 1);
+		assertTrue(removed.changed().get(ballcap) == newBallcap);
+		//Backpack.tf cannot remove buy listings, so the hidden one is still remembered as published.
+		assertEquals(removed.removed(), List.of(ballcap));
+		published.commit(removed);
+		assertTrue(published.changes(new ListingHashSet<>(List.of(newBallcap)), ldf, false).removed().isEmpty());
+		assertEquals(published.changes(new ListingHashSet<>(List.of(newBallcap, anger)), ldf, false).changed().size(), 0);
+	}
+
+	@Test
+	public void testSameItemWithBothIntents() {
+		Hat ballcap = new Hat("Backwards Ballcap", Effect.forName("Scorching Flames"), communityPrice, new Price(8, 0), "A", LocalDate.now());
+		ballcap.setPrice(new Price(11, 0));
+		BuyListing buyBallcap = new BuyListing("Backwards Ballcap", Effect.forName("Scorching Flames"), communityPrice);
+		buyBallcap.setPrice(new Price(9, 0));
+		PublishedListings published = new PublishedListings();
+
+		PublishedListings.Changes first = published.changes(new ListingList<>(List.of(ballcap, buyBallcap)), ldf, false);
+		assertEquals(first.changed().size(), 2);
+		published.commit(first);
+		PublishedListings.Changes second = published.changes(new ListingList<>(List.of(ballcap, buyBallcap)), ldf, false);
+		assertEquals(second.changed().size(), 0);
+		assertTrue(second.removed().isEmpty());
+
+		PublishedListings.Changes sold = published.changes(new ListingList<>(List.of(buyBallcap)), ldf, false);
+		assertEquals(sold.changed().size(), 0);
+		assertEquals(sold.removed(), List.of(ballcap));
+	}
+}
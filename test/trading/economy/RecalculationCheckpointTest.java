@@ -0,0 +1,62 @@
+package trading.economy;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.time.LocalDate;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class RecalculationCheckpointTest {
+	private static final int keyScrapRatio = 450;
+	private static final LocalDate today = LocalDate.of(2021, 2, 20);
+	private static final Hat ballcap = new Hat("Backwards Ballcap", Effect.forName("Scorching Flames"), new PriceRange(new Price(50, 0)), new Price(35, 0), "C", today);
+	private static final BuyListing lid = new BuyListing("War Pig", Effect.forName("Massed Flies"), new PriceRange(new Price(11, 0)));
+	private static final BuyListing sameItem = new BuyListing("Backwards Ballcap", Effect.forName("Scorching Flames"), new PriceRange(new Price(50, 0)));
+
+	@Test
+	public void testRecord() {
+		RecalculationCheckpoint checkpoint = new RecalculationCheckpoint();
+		assertEquals(checkpoint.size(), 0);
+		checkpoint.start(keyScrapRatio, today);
+		checkpoint.record(ballcap, new Pair<>(new Price(45, 0), 1));
+		checkpoint.record(lid, new Pair<>(new Price(10, 5), null));
+		assertEquals(checkpoint.size(), 2);
+		assertEquals(checkpoint.get(ballcap), new Pair<>(new Price(45, 0), 1));
+		assertEquals(checkpoint.get(lid), new Pair<>(new Price(10, 5), null));
+		//Sell and buy listings for the same item are recorded separately.
+		assertNull(checkpoint.get(sameItem));
+
+		checkpoint.start(keyScrapRatio, today);
+		assertEquals(checkpoint.size(), 2);
+		checkpoint.start(keyScrapRatio + 1, today);
+		assertEquals(checkpoint.size(), 0);
+		checkpoint.record(lid, new Pair<>(new Price(10, 5), null));
+		checkpoint.start(keyScrapRatio + 1, today.plusDays(1));
+		assertEquals(checkpoint.size(), 0);
+		checkpoint.record(lid, new Pair<>(new Price(10, 5), null));
+		checkpoint.clear();
+		assertNull(checkpoint.get(lid));
+	}
+
+	@Test
+	public void testJSONRepresentation() {
+		RecalculationCheckpoint checkpoint = new RecalculationCheckpoint();
+		assertEquals(RecalculationCheckpoint.fromJSONRepresentation(checkpoint.getJSONRepresentation()).size(), 0);
+		checkpoint.start(keyScrapRatio, today);
+		checkpoint.record(ballcap, new Pair<>(new Price(45, 0), 1));
+		checkpoint.record(lid, new Pair<>(new Price(10, 5), null));
+		RecalculationCheckpoint copy = RecalculationCheckpoint.fromJSONRepresentation(new JSONObject(checkpoint.getJSONRepresentation().toString()));
+		assertEquals(copy.size(), 2);
+		assertEquals(copy.get(ballcap), new Pair<>(new Price(45, 0), 1));
+		assertEquals(copy.get(lid), new Pair<>(new Price(10, 5), null));
+		copy.start(keyScrapRatio, today);
+		assertEquals(copy.size(), 2);
+
+		testExpectedException(() -> {RecalculationCheckpoint.fromJSONRepresentation(null);}, NullPointerException.class);
+		testExpectedException(() -> {RecalculationCheckpoint.fromJSONRepresentation(new JSONObject());}, JSONException.class);
+		testExpectedException(() -> {RecalculationCheckpoint.fromJSONRepresentation(new JSONObject("{\"keyScrapRatio\": 1, \"day\": \"yesterday\", \"hats\": [], \"buyListings\": []}"));}, JSONException.class);
+	}
+}
@@ -0,0 +1,53 @@
+package trading.economy;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RecalculationScheduleTest {
+	private static final int keyScrapRatio = 450;
+	private static final Comparator<Listing> order = Comparator.comparing(Listing::getPriority, Comparator.nullsLast(Comparator.naturalOrder()));
+
+	private static BuyListing listing(String name, int keys, Integer priority) {
+		BuyListing answer = new BuyListing(name, Effect.forName("Massed Flies"), new PriceRange(new Price(keys, 0)));
+		answer.setPrice(new Price(keys, 0));
+		answer.setPriority(priority);
+		return answer;
+	}
+
+	@Test
+	public void testNext() {
+		BuyListing important = listing("War Pig", 10, 1);
+		BuyListing cheap = listing("Bill's Hat", 10, null);
+		BuyListing expensive = listing("Team Captain", 100, null);
+		List<Listing> inOrder = List.of(important, cheap, expensive);
+		RecalculationSchedule schedule = new RecalculationSchedule(0);
+
+		//Expensive listings can outweigh higher priority ones, and equal priorities are weighted equally.
+		assertEquals(schedule.next(inOrder, order, keyScrapRatio, 2, 1000), List.of(expensive, important));
+		assertEquals(schedule.next(inOrder, order, keyScrapRatio, 5, 1000).size(), 3);
+		assertTrue(schedule.next(inOrder, order, keyScrapRatio, 0, 1000).isEmpty());
+
+		//Recently recalculated listings wait behind stale ones.
+		schedule.recalculated(important, new Price(10, 0), keyScrapRatio, 1000);
+		schedule.recalculated(expensive, new Price(100, 0), keyScrapRatio, 1000);
+		assertEquals(schedule.next(inOrder, order, keyScrapRatio, 1, 1500), List.of(cheap));
+
+		//Listings whose prices change are recalculated more often.
+		schedule.recalculated(cheap, new Price(10, 0), keyScrapRatio, 1000);
+		assertEquals(schedule.next(inOrder, order, keyScrapRatio, 1, 2000), List.of(expensive));
+		schedule.recalculated(important, new Price(20, 0), keyScrapRatio, 1000);
+		assertEquals(schedule.next(inOrder, order, keyScrapRatio, 1, 2000), List.of(important));
+
+		//Forgotten listings are treated as if they were recalculated when the schedule was created.
+		schedule.retainAll(List.of(cheap));
+		assertEquals(schedule.next(List.of(important, cheap), order, keyScrapRatio, 1, 2000), List.of(important));
+
+		testExpectedException(() -> {schedule.next(null, order, keyScrapRatio, 1, 0);}, NullPointerException.class);
+		testExpectedException(() -> {schedule.recalculated(null, new Price(1, 0), keyScrapRatio, 0);}, NullPointerException.class);
+	}
+}
@@ -11,6 +11,7 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
@@ -128,6 +129,39 @@ public class TradeOfferTest {
 	public void testGetData() {
 		assertNotNull(offer1.getData());
 		assertNotNull(offer2.getData());
+		assertEquals(offer1.getData(), "Our items include:\nUnique Mann Co. Supply Crate Key, valued at 450\nUnique Scrap Metal, valued at 1\nScorching Flames Backwards Ballcap, valued at 9765"
+			+ "\n\nTheir items include:\nUnique Refined Metal, valued at 9\nUnique Reclaimed Metal, valued at 3\nMassed Flies War Pig, valued at 4500"
+			+ "\n\nOur value: 10216 Their value: 4512\n\nThe offer with Halibuttcheeks was declined because our value was greater than their value.");
+	}
+
+	@Test
+	public void testCurrencyItems() {
+		JSONArray theirItems = new JSONArray();
+		for(int i = 0; i < 200; i++) {
+			theirItems.put(new JSONObject().put("id", "R" + i).put("market_name", "Refined Metal").put("app_data", new JSONObject().put("quality", 6).put("def_index", "5002")).put("descriptions", new JSONArray()));
+		}
+		//Currencies are recognized by their defindex rather than their name, and must be Unique.
+		theirItems.put(new JSONObject().put("id", "K").put("market_name", "Something Else").put("app_data", new JSONObject().put("quality", 6).put("def_index", 5021)).put("descriptions", new JSONArray()));
+		theirItems.put(new JSONObject().put("id", "S").put("market_name", "Scrap Metal").put("app_data", new JSONObject().put("quality", 11).put("def_index", 5000)).put("descriptions", new JSONArray()));
+		JSONObject offer = new JSONObject().put("itemsToGive", sampleOffer.getJSONArray("itemsToGive")).put("itemsToReceive", theirItems).put("partner", "Halibuttcheeks");
+		Hat ballcapCopy = ballcap.copy();
+		ballcapCopy.setPrice(new Price(21, 35));
+		TradeOffer evaluated = TradeOffer.fromJSON(offer, new ListingHashSet<Hat>(List.of(ballcapCopy)), new ListingHashSet<BuyListing>(), keyScrapRatio);
+		assertEquals(evaluated.getTheirValue(), 200 * 9 + keyScrapRatio);
+		assertEquals(evaluated.itemsToReceive(), Map.of(
+				new Item("Refined Metal", Quality.UNIQUE), 9, 
+				new Item("Mann Co. Supply Crate Key", Quality.UNIQUE), keyScrapRatio, 
+				new Item("Scrap Metal", Quality.STRANGE), 0)
+		);
+		for(InventoryItem item : evaluated.itemsToReceive().keySet()) {
+			if(item.getName().equals("Refined Metal")) {
+				assertEquals(item.getID(), "R0");
+			}
+		}
+		assertEquals(evaluated.getResponse(), TradeOfferResponse.HOLD);
+		String data = evaluated.getData();
+		assertEquals(data.split("Unique Refined Metal, valued at 9", -1).length - 1, 200);
+		assertTrue(data.contains("Unique Mann Co. Supply Crate Key, valued at 450\nStrange Scrap Metal, not in our pricelist\n\nOur value: 10216"));
 	}
 	
 	@Test
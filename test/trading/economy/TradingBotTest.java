@@ -8,14 +8,20 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
 
 import trading.net.BackpackTFConnection;
+import trading.net.RateLimitedBackpackTFConnection;
+import trading.net.RateLimiter;
 import trading.net.SampleBackpackTFConnection;
 import trading.net.SampleSteamConnection;
 import trading.net.SteamConnection;
@@ -81,6 +87,37 @@ public class TradingBotTest {
 	public void testSendListings() throws IOException {
 		withoutHats.sendListings(tfConnection);
 		autoCreated.sendListings(tfConnection);
+
+		int[] sent = new int[] {0};
+		boolean[] fail = new boolean[] {false};
+		BackpackTFConnection recording = new SampleBackpackTFConnection((Item i) -> {return new JSONObject(SampleBackpackTFConnection.getSampleListings());}) {
+			@Override
+			public void sendListings(ListingCollection<? extends Listing> listings, ListingDescriptionFunction ldf) {
+				if(fail[0]) {
+					throw new UncheckedIOException(new IOException());
+				}
+				sent[0] += listings.size();
+			}
+		};
+		TradingBot bot = TradingBot.fromJSONRepresentation(autoCreated.getJSONRepresentation(), tfConnection, functions);
+		bot.recalculatePrices(tfConnection);
+		int visible = bot.getListings().getListingRepresentation(null).length();
+		assertTrue(visible > 0);
+		bot.sendListings(recording);
+		assertEquals(sent[0], visible);
+		bot.sendListings(recording);
+		assertEquals(sent[0], visible);
+		bot.sendAllListings(recording);
+		assertEquals(sent[0], 2 * visible);
+
+		//If sending fails, the same listings are sent next time.
+		TradingBot failing = TradingBot.fromJSONRepresentation(bot.getJSONRepresentation(), tfConnection, functions);
+		fail[0] = true;
+		testExpectedException(() -> {failing.sendListings(recording);}, UncheckedIOException.class);
+		fail[0] = false;
+		failing.sendListings(recording);
+		assertEquals(sent[0], 3 * visible);
+		testExpectedException(() -> {bot.sendListings(null);}, NullPointerException.class);
 	}
 	
 	@Test
@@ -97,6 +134,59 @@ public class TradingBotTest {
 		assertEquals(hats.get(new Item("Bear Necessities", Quality.UNUSUAL, Effect.forName("Purple Confetti"))).getPrice(), new Price(16, 0));
 		assertEquals(listings.get(new Item("War Pig", Quality.UNUSUAL, Effect.forName("Massed Flies"))).getPrice(), new Price(56, 40));
 		
+		TradingBot concurrentCopy = TradingBot.fromJSONRepresentation(autoCreated.getJSONRepresentation(), tfConnection, functions);
+		int[] concurrentCallbackCalled = new int[] {0};
+		concurrentCopy.recalculatePrices(new RateLimitedBackpackTFConnection(tfConnection, new RateLimiter(1000, 1)), 3, (Listing l, IOException e) -> {
+			assertNull(e);
+			concurrentCallbackCalled[0]++;
+		});
+		assertEquals(concurrentCallbackCalled[0], 6);
+		assertEquals(concurrentCopy.getHats().get(new Item("Bear Necessities", Quality.UNUSUAL, Effect.forName("Purple Confetti"))).getPrice(), new Price(16, 0));
+		assertEquals(new ListingHashSet<>(concurrentCopy.getBuyListings()), new ListingHashSet<>(autoCreatedCopy2.getBuyListings()));
+		assertEquals(concurrentCopy.getBuyListings().get(new Item("War Pig", Quality.UNUSUAL, Effect.forName("Massed Flies"))).getPrice(), new Price(56, 40));
+		testExpectedException(() -> {concurrentCopy.recalculatePrices(null, 3, null);}, NullPointerException.class);
+		testExpectedException(() -> {concurrentCopy.recalculatePrices(tfConnection, 0, null);}, IllegalArgumentException.class);
+
+		TradingBot dirtyCopy = TradingBot.fromJSONRepresentation(autoCreated.getJSONRepresentation(), tfConnection, functions);
+		int[] dirtyCallbackCalled = new int[] {0};
+		assertEquals(dirtyCopy.recalculateDirtyPrices(tfConnection, 2, (Listing l, IOException e) -> {dirtyCallbackCalled[0]++;}), 6);
+		assertEquals(dirtyCallbackCalled[0], 6);
+		assertEquals(new ListingHashSet<>(dirtyCopy.getBuyListings()), new ListingHashSet<>(autoCreatedCopy2.getBuyListings()));
+		//No inputs changed, so nothing is recalculated.
+		assertEquals(dirtyCopy.recalculateDirtyPrices(tfConnection, 2, (Listing l, IOException e) -> {dirtyCallbackCalled[0]++;}), 0);
+		assertEquals(dirtyCallbackCalled[0], 6);
+		testExpectedException(() -> {dirtyCopy.recalculateDirtyPrices(null, 1, null);}, NullPointerException.class);
+		testExpectedException(() -> {dirtyCopy.recalculateDirtyPrices(tfConnection, 0, null);}, IllegalArgumentException.class);
+
+		TradingBot checkpointedCopy = TradingBot.fromJSONRepresentation(autoCreated.getJSONRepresentation(), tfConnection, functions);
+		RecalculationCheckpoint checkpoint = new RecalculationCheckpoint();
+		checkpointedCopy.recalculatePrices(tfConnection, 2, null, checkpoint);
+		assertEquals(checkpoint.size(), 6);
+		//Prices recorded in the checkpoint are committed without being recalculated.
+		Item warPig = new Item("War Pig", Quality.UNUSUAL, Effect.forName("Massed Flies"));
+		checkpoint.record(checkpointedCopy.getBuyListings().get(warPig), new Pair<>(new Price(1, 0), 7));
+		int[] checkpointCallbackCalled = new int[] {0};
+		checkpointedCopy.recalculatePrices(tfConnection, 2, (Listing l, IOException e) -> {checkpointCallbackCalled[0]++;}, checkpoint);
+		assertEquals(checkpointCallbackCalled[0], 0);
+		assertEquals(checkpointedCopy.getBuyListings().get(warPig).getPrice(), new Price(1, 0));
+		assertEquals(checkpointedCopy.getBuyListings().get(warPig).getPriority(), (Integer)7);
+		checkpoint.clear();
+		checkpointedCopy.recalculatePrices(tfConnection, 2, null, checkpoint);
+		assertEquals(checkpointedCopy.getBuyListings().get(warPig).getPrice(), new Price(56, 40));
+
+		TradingBot slicedCopy = TradingBot.fromJSONRepresentation(autoCreated.getJSONRepresentation(), tfConnection, functions);
+		int[] slicedCallbackCalled = new int[] {0};
+		assertEquals(slicedCopy.recalculateStalestPrices(tfConnection, 4, 2, (Listing l, IOException e) -> {slicedCallbackCalled[0]++;}), 4);
+		assertEquals(slicedCopy.recalculateStalestPrices(tfConnection, 4, 2, null), 4);
+		assertEquals(slicedCallbackCalled[0], 4);
+		assertEquals(slicedCopy.recalculateStalestPrices(tfConnection, 0, 2, null), 0);
+		//A slice larger than the bot recalculates every listing.
+		assertEquals(slicedCopy.recalculateStalestPrices(tfConnection, 10, 2, null), 6);
+		assertEquals(slicedCopy.getHats().get(new Item("Bear Necessities", Quality.UNUSUAL, Effect.forName("Purple Confetti"))).getPrice(), new Price(16, 0));
+		assertEquals(slicedCopy.getBuyListings().get(new Item("War Pig", Quality.UNUSUAL, Effect.forName("Massed Flies"))).getPrice(), new Price(56, 40));
+		testExpectedException(() -> {slicedCopy.recalculateStalestPrices(null, 1, 1, null);}, NullPointerException.class);
+		testExpectedException(() -> {slicedCopy.recalculateStalestPrices(tfConnection, -1, 1, null);}, IllegalArgumentException.class);
+		testExpectedException(() -> {slicedCopy.recalculateStalestPrices(tfConnection, 1, 0, null);}, IllegalArgumentException.class);
 	}
 	
 	@Test
@@ -155,6 +245,41 @@ public class TradingBotTest {
 		testExpectedException(() -> {shouldDecline.updateItemsAfterOffer(null, defaultRatio);}, NullPointerException.class);
 		testExpectedException(() -> {shouldDecline.updateItemsAfterOffer(shouldBeAccepted, -1);}, IllegalArgumentException.class);
 	}
+
+	@Test
+	public void testCommitTrade() throws IOException {
+		JSONObject sampleOffer = new JSONObject(new String(Files.readAllBytes(Paths.get("./test/trading/economy/sampleOffer.json"))));
+		TradingBot bot = TradingBot.fromJSONRepresentation(
+				new JSONObject("{\"id\": \"\", \"hats\": [{\"name\": \"Backwards Ballcap\", \"effect\": 14, \"communityPrice\": {\"lower\": {\"keys\": 10, \"metal\": 0}, \"middle\": {\"keys\": 10, \"metal\": 0}, \"upper\": {\"keys\": 10, \"metal\": 0}}, \"id\": \"A\", \"dateBought\": \"1961-01-17\", \"price\": {\"keys\": 10, \"metal\": 5}, \"boughtAt\": {\"keys\": 10, \"metal\": 5}}], "
+						+ "\"buyListings\": [{\"name\": \"War Pig\", \"effect\": 12, \"communityPrice\": {\"lower\": {\"keys\": 10, \"metal\": 0}, \"middle\": {\"keys\": 10, \"metal\": 0}, \"upper\": {\"keys\": 10, \"metal\": 0}}, \"price\": {\"keys\": 40, \"metal\": 10}}]}]}"), 
+				tfConnection, functions
+		);
+		Item ballcap = new Item("Backwards Ballcap", Quality.UNUSUAL, Effect.forInt(14));
+		//Two offers for the same hat, evaluated concurrently against the same listings, are both accepted.
+		TradeOffer first = bot.evaluateTrade(sampleOffer, 0.1, true, null);
+		TradeOffer second = bot.evaluateTrade(sampleOffer, 0.1, true, null);
+		assertEquals(first.getResponse(), TradeOfferResponse.ACCEPT);
+		assertEquals(second.getResponse(), TradeOfferResponse.ACCEPT);
+
+		//The first is committed as it was evaluated.
+		assertSame(bot.commitTrade(first, defaultRatio), first);
+		assertNull(bot.getHats().get(ballcap));
+
+		//The second conflicts with the first, as the hat was already given away, so it is re-evaluated and not accepted.
+		TradeOffer committed = bot.commitTrade(second, defaultRatio);
+		assertNotSame(committed, second);
+		assertEquals(committed.getResponse(), TradeOfferResponse.HOLD);
+		assertEquals((int)committed.itemsToGive().get(ballcap), 0);
+		assertEquals(bot.getHats().size(), 1);
+
+		//Offers evaluated against the current listings are committed as they were evaluated.
+		TradeOffer current = bot.evaluateTrade(sampleOffer, 0.1, false, null);
+		assertEquals(current.getResponse(), TradeOfferResponse.DECLINE);
+		assertSame(bot.commitTrade(current, defaultRatio), current);
+
+		testExpectedException(() -> {bot.commitTrade(null, defaultRatio);}, NullPointerException.class);
+		testExpectedException(() -> {bot.commitTrade(current, -1);}, IllegalArgumentException.class);
+	}
 	
 	@Test
 	public void testCheckHatIDs() throws IOException {
@@ -165,8 +290,51 @@ public class TradingBotTest {
 		nullHatID.checkHatIDs(steamConnection);
 		Hat result = nullHatID.getHats().get(new Item("Bear Necessities", Quality.UNUSUAL, Effect.forInt(7)));
 		assertEquals(result.getID(), "7955412500");
+		//A hat whose ID already belongs to the same item in the inventory is left as it is.
+		nullHatID.checkHatIDs(steamConnection);
+		assertSame(nullHatID.getHats().get(new Item("Bear Necessities", Quality.UNUSUAL, Effect.forInt(7))), result);
+
+		TradingBot wrongHatID = TradingBot.fromJSONRepresentation(
+				new JSONObject("{\"id\": \"\", \"hats\": [{\"name\": \"Bear Necessities\", \"effect\": 7, \"communityPrice\": {\"lower\": {\"keys\": 10, \"metal\": 0}, \"middle\": {\"keys\": 10, \"metal\": 0}, \"upper\": {\"keys\": 10, \"metal\": 0}}, \"id\": \"Z\", \"dateBought\": \"1961-01-17\", \"price\": null, \"boughtAt\": {\"keys\": 10, \"metal\": 5}}], \"buyListings\": []}"),
+				tfConnection, functions
+		);
+		wrongHatID.checkHatIDs(steamConnection);
+		assertEquals(wrongHatID.getHats().get(new Item("Bear Necessities", Quality.UNUSUAL, Effect.forInt(7))).getID(), "7955412500");
 	}
-	
+
+	@Test
+	public void testResolveMissingHatIDs() throws IOException {
+		int[] requests = new int[] {0};
+		SteamConnection countingConnection = (String id) -> {
+			requests[0]++;
+			return steamConnection.getInventoryForUser(id);
+		};
+		TradingBot bot = TradingBot.fromJSONRepresentation(
+				new JSONObject("{\"id\": \"\", \"hats\": [{\"name\": \"Bear Necessities\", \"effect\": 7, \"communityPrice\": {\"lower\": {\"keys\": 10, \"metal\": 0}, \"middle\": {\"keys\": 10, \"metal\": 0}, \"upper\": {\"keys\": 10, \"metal\": 0}}, \"id\": null, \"dateBought\": \"1961-01-17\", \"price\": null, \"boughtAt\": {\"keys\": 10, \"metal\": 5}}, "
+						+ "{\"name\": \"Backwards Ballcap\", \"effect\": 14, \"communityPrice\": {\"lower\": {\"keys\": 10, \"metal\": 0}, \"middle\": {\"keys\": 10, \"metal\": 0}, \"upper\": {\"keys\": 10, \"metal\": 0}}, \"id\": \"Z\", \"dateBought\": \"1961-01-17\", \"price\": null, \"boughtAt\": {\"keys\": 10, \"metal\": 5}}], \"buyListings\": []}"), 
+				tfConnection, functions
+		);
+		assertEquals(bot.resolveMissingHatIDs(countingConnection), 0);
+		assertEquals(requests[0], 1);
+		assertEquals(bot.getHats().get(new Item("Bear Necessities", Quality.UNUSUAL, Effect.forInt(7))).getID(), "7955412500");
+		//Hats which already have an ID are left unchanged.
+		assertEquals(bot.getHats().get(new Item("Backwards Ballcap", Quality.UNUSUAL, Effect.forInt(14))).getID(), "Z");
+
+		//The inventory is not requested when every hat has an ID.
+		assertEquals(bot.resolveMissingHatIDs(countingConnection), 0);
+		assertEquals(requests[0], 1);
+
+		//Hats which are not in the inventory are counted as still missing.
+		TradingBot missing = TradingBot.fromJSONRepresentation(
+				new JSONObject("{\"id\": \"\", \"hats\": [{\"name\": \"Bear Necessities\", \"effect\": 12, \"communityPrice\": {\"lower\": {\"keys\": 10, \"metal\": 0}, \"middle\": {\"keys\": 10, \"metal\": 0}, \"upper\": {\"keys\": 10, \"metal\": 0}}, \"id\": null, \"dateBought\": \"1961-01-17\", \"price\": null, \"boughtAt\": {\"keys\": 10, \"metal\": 5}}], \"buyListings\": []}"), 
+				tfConnection, functions
+		);
+		assertEquals(missing.resolveMissingHatIDs(countingConnection), 1);
+		assertEquals(requests[0], 2);
+
+		testExpectedException(() -> {bot.resolveMissingHatIDs(null);}, NullPointerException.class);
+	}
+
 	@Test
 	public void testReadHatsFromInventory() throws IOException, NonVisibleListingException {
 		TradingBot withNonexistentHat = TradingBot.fromJSONRepresentation(
@@ -192,6 +360,127 @@ public class TradingBotTest {
 		assertNull(listings.get(new Item("Liquidator's Lid", Quality.UNUSUAL, Effect.forInt(7))));
 	}
 	
+	@Test
+	public void testIncrementalUpdateAndFilter() throws IOException {
+		int massedFlies = Effect.forName("Massed Flies").getIntValue();
+		Deque<PriceIndex> indexes = new ArrayDeque<>();
+		indexes.add(new PriceIndex.Builder().add("War Pig", Quality.UNUSUAL, massedFlies, "keys", 10, Double.NaN, 1).add("Bunsen Brave", Quality.UNUSUAL, massedFlies, "keys", 20, Double.NaN, 1)
+				.add("Ellis' Cap", Quality.UNUSUAL, massedFlies, "keys", 30, Double.NaN, 1).build());
+		indexes.add(new PriceIndex.Builder().add("War Pig", Quality.UNUSUAL, massedFlies, "keys", 12, Double.NaN, 2)
+				.add("Ellis' Cap", Quality.UNUSUAL, massedFlies, "keys", 30, Double.NaN, 1).build());
+		indexes.add(new PriceIndex.Builder().add("War Pig", Quality.UNUSUAL, massedFlies, "keys", 12, Double.NaN, 2).add("Bunsen Brave", Quality.UNUSUAL, massedFlies, "keys", 20, Double.NaN, 1)
+				.add("Ellis' Cap", Quality.UNUSUAL, massedFlies, "keys", 30, Double.NaN, 1).build());
+		BackpackTFConnection connection = new SampleBackpackTFConnection(null) {
+			@Override
+			public PriceIndex getPriceIndex() {
+				return indexes.remove();
+			}
+		};
+		int[] evaluations = new int[]{0};
+		AcceptabilityFunction af = (JSONObject pricesObject, String name, Effect effect, int keyScrapRatio) -> {
+			evaluations[0]++;
+			return functions.acceptabilityFunction.determineAcceptability(pricesObject, name, effect, keyScrapRatio);
+		};
+		FunctionSuite countingFunctions = new FunctionSuite(functions.hatPriceFunction, functions.buyListingPriceFunction, functions.listingDescriptionFunction, af, functions.keyScrapRatioFunction);
+		Item warPig = new Item("War Pig", Quality.UNUSUAL, Effect.forInt(massedFlies));
+		Item bunsenBrave = new Item("Bunsen Brave", Quality.UNUSUAL, Effect.forInt(massedFlies));
+
+		TradingBot bot = TradingBot.botWithoutHats(steamID, connection, countingFunctions);
+		assertEquals(evaluations[0], 3);
+		assertEquals(Set.copyOf(bot.getBuyListings()), Set.of(warPig, bunsenBrave));
+
+		bot.updateAndFilter(connection);
+		assertEquals(evaluations[0], 4);
+		assertEquals(Set.copyOf(bot.getBuyListings()), Set.of(warPig));
+		assertEquals(bot.getBuyListings().get(warPig).getCommunityPrice(), new PriceRange(new Price(12, 0), new Price(12, 0), keyScrapRatio));
+
+		bot.updateAndFilter(connection);
+		assertEquals(evaluations[0], 5);
+		assertEquals(Set.copyOf(bot.getBuyListings()), Set.of(warPig, bunsenBrave));
+		assertEquals(bot.getBuyListings().get(warPig).getCommunityPrice(), new PriceRange(new Price(12, 0), new Price(12, 0), keyScrapRatio));
+	}
+
+	@Test
+	public void testExpiredPricesAreReevaluated() throws Exception {
+		int massedFlies = Effect.forName("Massed Flies").getIntValue();
+		long now = System.currentTimeMillis() / 1000;
+		PriceIndex index = new PriceIndex.Builder().add("War Pig", Quality.UNUSUAL, massedFlies, "keys", 10, Double.NaN, now)
+				.add("Bunsen Brave", Quality.UNUSUAL, massedFlies, "keys", 20, Double.NaN, now + 100000).build();
+		BackpackTFConnection connection = new SampleBackpackTFConnection(null) {
+			@Override
+			public PriceIndex getPriceIndex() {
+				return index;
+			}
+		};
+		int[] evaluations = new int[]{0};
+		AcceptabilityFunction checkData = AcceptabilityFunction.checkData(0, 0, -1, 1);
+		AcceptabilityFunction af = new AcceptabilityFunction() {
+			@Override
+			public boolean determineAcceptability(JSONObject pricesObject, String name, Effect effect, int keyScrapRatio) {
+				evaluations[0]++;
+				return checkData.determineAcceptability(pricesObject, name, effect, keyScrapRatio);
+			}
+
+			@Override
+			public long getLastUpdateWindow() {
+				return checkData.getLastUpdateWindow();
+			}
+		};
+		FunctionSuite countingFunctions = new FunctionSuite(functions.hatPriceFunction, functions.buyListingPriceFunction, functions.listingDescriptionFunction, af, functions.keyScrapRatioFunction);
+		Item warPig = new Item("War Pig", Quality.UNUSUAL, Effect.forInt(massedFlies));
+		Item bunsenBrave = new Item("Bunsen Brave", Quality.UNUSUAL, Effect.forInt(massedFlies));
+
+		TradingBot bot = TradingBot.botWithoutHats(steamID, connection, countingFunctions);
+		assertEquals(evaluations[0], 2);
+		assertEquals(Set.copyOf(bot.getBuyListings()), Set.of(warPig, bunsenBrave));
+
+		//Only the price which has aged out of the window is evaluated again, although no price changed.
+		Thread.sleep(2100);
+		bot.updateAndFilter(connection);
+		assertEquals(evaluations[0], 3);
+		assertEquals(Set.copyOf(bot.getBuyListings()), Set.of(bunsenBrave));
+
+		bot.updateAndFilter(connection);
+		assertEquals(evaluations[0], 3);
+	}
+
+	@Test
+	public void testUpdateDoesNotBlockOtherMethods() throws Exception {
+		JSONObject sampleOffer = new JSONObject(new String(Files.readAllBytes(Paths.get("./test/trading/economy/sampleOffer.json"))));
+		CountDownLatch requested = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		BackpackTFConnection slowConnection = new SampleBackpackTFConnection(null) {
+			@Override
+			public PriceIndex getPriceIndex() throws IOException {
+				requested.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					throw new IOException(e);
+				}
+				return tfConnection.getPriceIndex();
+			}
+		};
+		TradingBot bot = TradingBot.botWithoutHats(steamID, tfConnection, functions);
+		Thread updater = new Thread(() -> {
+			try {
+				bot.updateAndFilter(slowConnection);
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		updater.start();
+		assertTrue(requested.await(10, TimeUnit.SECONDS));
+		TradeOffer offer = bot.evaluateTrade(sampleOffer);
+		bot.updateItemsAfterOffer(offer, defaultRatio);
+		assertEquals(bot.getBuyListings().size(), 2);
+		assertEquals(bot.getJSONRepresentation().getJSONArray("buyListings").length(), 2);
+		release.countDown();
+		updater.join(10000);
+		assertFalse(updater.isAlive());
+		assertEquals(Set.copyOf(bot.getBuyListings()), Set.copyOf(withoutHats.getBuyListings()));
+	}
+
 	@Test
 	public void testJSONFunctions() throws IOException {
 		assertEquals(TradingBot.fromJSONRepresentation(withoutHats.getJSONRepresentation(), tfConnection, functions), withoutHats);
@@ -0,0 +1,63 @@
+package trading.economy;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class ValuationTableTest {
+	private static final int keyScrapRatio = 450;
+	private static final Hat ballcap = new Hat("Backwards Ballcap", Effect.forName("Scorching Flames"), new PriceRange(new Price(50, 0)), new Price(35, 0), "C", LocalDate.now());
+	private static final BuyListing lid = new BuyListing("War Pig", Effect.forName("Massed Flies"), new PriceRange(new Price(11, 0)));
+
+	@Test
+	public void testValueOf() {
+		Hat ballcapCopy = ballcap.copy();
+		ballcapCopy.setPrice(new Price(21, 35));
+		ValuationTable table = ValuationTable.fromListings(new ListingHashSet<Hat>(List.of(ballcapCopy)), keyScrapRatio);
+		assertEquals(table.valueOf(ballcap), new Price(21, 35).getScrapValue(keyScrapRatio));
+		assertEquals(table.valueOf(new Item("backwards ballcap", Quality.UNUSUAL, Effect.forName("Scorching Flames"))), new Price(21, 35).getScrapValue(keyScrapRatio));
+		assertEquals(table.valueOf(new Item("Mann Co. Supply Crate Key", Quality.UNIQUE)), keyScrapRatio);
+		assertEquals(table.valueOf(new Item("Refined Metal", Quality.UNIQUE)), 9);
+		assertEquals(table.valueOf(new Item("Reclaimed Metal", Quality.UNIQUE)), 3);
+		assertEquals(table.valueOf(new Item("Scrap Metal", Quality.UNIQUE)), 1);
+		assertEquals(table.valueOf(lid), 0);
+
+		//Listings without a price are valued at 0.
+		ValuationTable invisible = ValuationTable.fromListings(new ListingHashSet<BuyListing>(List.of(lid)), keyScrapRatio);
+		assertEquals(invisible.valueOf(lid), 0);
+		assertEquals(invisible.valueOf(new Item("Scrap Metal", Quality.UNIQUE)), 1);
+
+		testExpectedException(() -> {ValuationTable.fromListings(null, keyScrapRatio);}, NullPointerException.class);
+		testExpectedException(() -> {ValuationTable.fromListings(new ListingHashSet<Hat>(), 0);}, IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testSameEvaluation() throws IOException {
+		JSONObject sampleOffer = new JSONObject(new String(Files.readAllBytes(Paths.get("./test/trading/economy/sampleOffer.json")), StandardCharsets.UTF_8));
+		BuyListing lidCopy = lid.copy();
+		lidCopy.setPrice(new Price(10, 0));
+		Hat ballcapCopy = ballcap.copy();
+		ballcapCopy.setPrice(new Price(21, 35));
+		ListingHashSet<Hat> hats = new ListingHashSet<>(List.of(ballcapCopy));
+		ListingHashSet<BuyListing> listings = new ListingHashSet<>(List.of(lidCopy));
+		TradeOffer expected = TradeOffer.fromJSON(sampleOffer, hats, listings, keyScrapRatio, 0.1, true, null);
+		TradeOffer actual = TradeOffer.fromJSON(sampleOffer, ValuationTable.fromListings(hats, keyScrapRatio), ValuationTable.fromListings(listings, keyScrapRatio), 0.1, true, null);
+		assertEquals(actual.getResponse(), expected.getResponse());
+		assertEquals(actual.getOurValue(), expected.getOurValue());
+		assertEquals(actual.getTheirValue(), expected.getTheirValue());
+		assertEquals(actual.getData(), expected.getData());
+
+		ValuationTable empty = ValuationTable.fromListings(new ListingHashSet<Hat>(), keyScrapRatio);
+		testExpectedException(() -> {TradeOffer.fromJSON(sampleOffer, null, empty, 0, true, null);}, NullPointerException.class);
+		testExpectedException(() -> {TradeOffer.fromJSON(sampleOffer, empty, empty, 2, true, null);}, IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,148 @@
+package trading.net;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import trading.economy.Effect;
+import trading.economy.Item;
+import trading.economy.PriceFunctionUtils;
+import trading.economy.Quality;
+
+public class CachingBackpackTFConnectionTest {
+	private static final Item warPig = new Item("War Pig", Quality.UNUSUAL, Effect.forName("Massed Flies"));
+	private static final Item ballcap = new Item("Backwards Ballcap", Quality.UNUSUAL, Effect.forName("Scorching Flames"));
+
+	@Test
+	public void testCaching() throws IOException {
+		int[] searches = new int[] {0};
+		CachingBackpackTFConnection connection = new CachingBackpackTFConnection(new SampleBackpackTFConnection((Item i) -> {
+			searches[0]++;
+			return new JSONObject(SampleBackpackTFConnection.getSampleListings());
+		}), 60000, 10);
+		JSONObject first = connection.getListingsForItem(warPig);
+		int length = first.getJSONObject("buy").getJSONArray("listings").length();
+		PriceFunctionUtils.removeListingsWithoutUnusualEffect(first);
+		first.getJSONObject("buy").getJSONArray("listings").remove(0);
+		JSONObject second = connection.getListingsForItem(new Item("war pig", Quality.UNUSUAL, Effect.forName("Massed Flies")));
+		assertEquals(second.getJSONObject("buy").getJSONArray("listings").length(), length);
+		assertFalse(first == second);
+		assertEquals(searches[0], 1);
+		assertEquals(connection.getHits(), 1);
+		assertEquals(connection.getMisses(), 1);
+
+		connection.getListingsForItem(ballcap);
+		connection.getListingsForItem(new Item("War Pig", Quality.UNUSUAL, Effect.forName("Purple Confetti")));
+		assertEquals(searches[0], 3);
+		assertEquals(connection.size(), 3);
+		connection.clear();
+		assertEquals(connection.size(), 0);
+		connection.getListingsForItem(warPig);
+		assertEquals(searches[0], 4);
+		assertEquals(connection.getMisses(), 4);
+		testExpectedException(() -> {connection.getListingsForItem(null);}, NullPointerException.class);
+	}
+
+	@Test
+	public void testExpiryAndEviction() throws IOException {
+		int[] searches = new int[] {0};
+		SampleBackpackTFConnection sample = new SampleBackpackTFConnection((Item i) -> {
+			searches[0]++;
+			return new JSONObject(SampleBackpackTFConnection.getSampleListings());
+		});
+		CachingBackpackTFConnection expired = new CachingBackpackTFConnection(sample, 0, 10);
+		expired.getListingsForItem(warPig);
+		expired.getListingsForItem(warPig);
+		assertEquals(searches[0], 2);
+		assertEquals(expired.getHits(), 0);
+
+		CachingBackpackTFConnection small = new CachingBackpackTFConnection(sample, 60000, 1);
+		small.getListingsForItem(warPig);
+		small.getListingsForItem(ballcap);
+		small.getListingsForItem(warPig);
+		assertEquals(searches[0], 5);
+		assertEquals(small.size(), 1);
+
+		testExpectedException(() -> {new CachingBackpackTFConnection(null, 0, 1);}, NullPointerException.class);
+		testExpectedException(() -> {new CachingBackpackTFConnection(sample, -1, 1);}, IllegalArgumentException.class);
+		testExpectedException(() -> {new CachingBackpackTFConnection(sample, 0, 0);}, IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testAsync() throws IOException {
+		int[] searches = new int[] {0};
+		CachingBackpackTFConnection connection = new CachingBackpackTFConnection(new RateLimitedBackpackTFConnection(new SampleBackpackTFConnection((Item i) -> {
+			searches[0]++;
+			return new JSONObject(SampleBackpackTFConnection.getSampleListings());
+		}), new RateLimiter(1000, 1)), 60000, 10);
+		JSONObject first = connection.getListingsForItemAsync(warPig).join();
+		first.getJSONObject("buy").getJSONArray("listings").remove(0);
+		JSONObject second = connection.getListingsForItemAsync(warPig).join();
+		assertEquals(second.getJSONObject("buy").getJSONArray("listings").length(), first.getJSONObject("buy").getJSONArray("listings").length() + 1);
+		assertTrue(connection.getListingsForItem(warPig).similar(second));
+		assertEquals(searches[0], 1);
+		assertEquals(connection.getHits(), 2);
+		assertNotNull(connection.getPricesObjectAsync().join());
+		testExpectedException(() -> {connection.getListingsForItemAsync(null);}, NullPointerException.class);
+	}
+
+	@Test
+	public void testFailuresNotCached() throws IOException {
+		int[] searches = new int[] {0};
+		CachingBackpackTFConnection connection = new CachingBackpackTFConnection(new SampleBackpackTFConnection((Item i) -> {
+			searches[0]++;
+			if(searches[0] == 1) {
+				throw new IOException();
+			}
+			return new JSONObject(SampleBackpackTFConnection.getSampleListings());
+		}), 60000, 10);
+		testExpectedException(() -> {connection.getListingsForItem(warPig);}, IOException.class);
+		assertNotNull(connection.getListingsForItem(warPig));
+		assertEquals(searches[0], 2);
+	}
+
+	@Test
+	public void testConcurrentSearchesAreShared() throws Exception {
+		CountDownLatch searching = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		int[] searches = new int[] {0};
+		CachingBackpackTFConnection connection = new CachingBackpackTFConnection(new SampleBackpackTFConnection((Item i) -> {
+			searches[0]++;
+			searching.countDown();
+			try {
+				release.await();
+			} catch(InterruptedException e) {
+				throw new IOException(e);
+			}
+			return new JSONObject(SampleBackpackTFConnection.getSampleListings());
+		}), 60000, 10);
+		Callable<JSONObject> search = () -> connection.getListingsForItem(warPig);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<JSONObject> first = executor.submit(search);
+			searching.await();
+			Future<JSONObject> second = executor.submit(search);
+			//The second search waits for the first rather than making its own.
+			while(connection.getHits() == 0) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			assertTrue(first.get().similar(second.get()));
+			assertFalse(first.get() == second.get());
+			assertEquals(searches[0], 1);
+			assertEquals(connection.getMisses(), 1);
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+}
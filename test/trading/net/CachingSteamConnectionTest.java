@@ -0,0 +1,114 @@
+package trading.net;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class CachingSteamConnectionTest {
+	private static final SteamConnection sample = new SampleSteamConnection();
+
+	@Test
+	public void testCaching() throws IOException {
+		int[] requests = new int[] {0};
+		CachingSteamConnection connection = new CachingSteamConnection((String id) -> {
+			requests[0]++;
+			return sample.getInventoryForUser(id);
+		}, 60000);
+		JSONObject first = connection.getInventoryForUser("A");
+		JSONObject second = connection.getInventoryForUser("A");
+		assertSame(first, second);
+		assertEquals(requests[0], 1);
+		assertEquals(connection.getHits(), 1);
+		assertEquals(connection.getMisses(), 1);
+
+		connection.getInventoryForUser("B");
+		assertEquals(requests[0], 2);
+		connection.clear();
+		assertNotSame(connection.getInventoryForUser("A"), first);
+		assertEquals(requests[0], 3);
+		assertEquals(connection.getMisses(), 3);
+
+		CachingSteamConnection expired = new CachingSteamConnection((String id) -> {
+			requests[0]++;
+			return sample.getInventoryForUser(id);
+		}, 0);
+		expired.getInventoryForUser("A");
+		expired.getInventoryForUser("A");
+		assertEquals(requests[0], 5);
+
+		testExpectedException(() -> {connection.getInventoryForUser(null);}, NullPointerException.class);
+		testExpectedException(() -> {new CachingSteamConnection(null, 0);}, NullPointerException.class);
+		testExpectedException(() -> {new CachingSteamConnection(sample, -1);}, IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testFailuresAreNotCached() throws IOException {
+		int[] requests = new int[] {0};
+		CachingSteamConnection connection = new CachingSteamConnection((String id) -> {
+			if(requests[0]++ == 0) {
+				throw new IOException("Steam is down.");
+			}
+			return sample.getInventoryForUser(id);
+		}, 60000);
+		testExpectedException(() -> {connection.getInventoryForUser("A");}, IOException.class);
+		assertNotNull(connection.getInventoryForUser("A"));
+		assertEquals(requests[0], 2);
+	}
+
+	@Test
+	public void testPendingRequestsAreShared() throws IOException {
+		CompletableFuture<JSONObject> pending = new CompletableFuture<>();
+		int[] requests = new int[] {0};
+		CachingSteamConnection connection = new CachingSteamConnection(new SteamConnection() {
+			@Override
+			public JSONObject getInventoryForUser(String steamID) throws IOException {
+				throw new AssertionError();
+			}
+
+			@Override
+			public CompletableFuture<JSONObject> getInventoryForUserAsync(String steamID) {
+				requests[0]++;
+				return pending;
+			}
+		}, 60000);
+		CompletableFuture<JSONObject> first = connection.getInventoryForUserAsync("A");
+		CompletableFuture<JSONObject> second = connection.getInventoryForUserAsync("A");
+		assertFalse(first.isDone());
+		assertEquals(requests[0], 1);
+		JSONObject inventory = sample.getInventoryForUser("A");
+		pending.complete(inventory);
+		assertSame(first.join(), inventory);
+		assertSame(second.join(), inventory);
+		assertSame(connection.getInventoryForUser("A"), inventory);
+		assertEquals(connection.getHits(), 2);
+
+		CompletableFuture<JSONObject> failing = new CompletableFuture<>();
+		CachingSteamConnection failed = new CachingSteamConnection(new SteamConnection() {
+			@Override
+			public JSONObject getInventoryForUser(String steamID) throws IOException {
+				return sample.getInventoryForUser(steamID);
+			}
+
+			@Override
+			public CompletableFuture<JSONObject> getInventoryForUserAsync(String steamID) {
+				return failing;
+			}
+		}, 60000);
+		CompletableFuture<JSONObject> result = failed.getInventoryForUserAsync("A");
+		failing.completeExceptionally(new IOException("Steam is down."));
+		try {
+			result.join();
+			fail();
+		} catch(CompletionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertNotNull(failed.getInventoryForUser("A"));
+		assertEquals(failed.getMisses(), 2);
+	}
+}
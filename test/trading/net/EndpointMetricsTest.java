@@ -0,0 +1,47 @@
+package trading.net;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class EndpointMetricsTest {
+	@Test
+	public void testAttempts() {
+		EndpointMetrics metrics = new EndpointMetrics();
+		EndpointMetrics.Attempt first = metrics.start(100);
+		EndpointMetrics.Attempt second = metrics.start(0);
+		EndpointMetrics.Attempt third = metrics.start(0);
+		assertEquals(metrics.getInFlight(), 3);
+		assertEquals(metrics.getBytesSent(), 100);
+
+		first.responded(200);
+		//Only the first outcome of an attempt counts.
+		first.failed();
+		second.responded(429);
+		third.failed();
+		metrics.received(50);
+		assertEquals(metrics.getInFlight(), 0);
+		assertEquals(metrics.getStatusCounts(), Map.of(200, 1L, 429, 1L));
+		assertEquals(metrics.getFailures(), 1);
+		assertEquals(metrics.getLatency().getCount(), 2);
+		assertEquals(metrics.getBytesReceived(), 50);
+
+		JSONObject summary = metrics.getJSONSummary();
+		assertEquals(summary.getJSONObject("statusCounts").getLong("429"), 1);
+		assertEquals(summary.getLong("failures"), 1);
+		assertEquals(summary.getJSONObject("latency").getLong("count"), 2);
+
+		EndpointMetrics.Attempt inFlight = metrics.start(10);
+		metrics.reset();
+		assertEquals(metrics.getInFlight(), 1);
+		assertTrue(metrics.getStatusCounts().isEmpty());
+		assertEquals(metrics.getFailures(), 0);
+		assertEquals(metrics.getBytesSent(), 0);
+		assertEquals(metrics.getLatency().getCount(), 0);
+		inFlight.responded(200);
+		assertEquals(metrics.getInFlight(), 0);
+	}
+}
@@ -0,0 +1,62 @@
+package trading.net;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(histogram.getCount(), 0);
+		assertEquals(histogram.getPercentile(50), 0);
+		assertEquals(histogram.getMean(), 0, 0);
+
+		for(long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertEquals(histogram.getCount(), 1000);
+		assertEquals(histogram.getMax(), 1000000);
+		assertEquals(histogram.getMean(), 500500, 1e-6);
+		//Percentiles are never less than the true value, and at most about 3% more.
+		for(double percentile : new double[] {1, 50, 90, 99, 99.9}) {
+			long expected = (long)Math.ceil(percentile * 10) * 1000;
+			long actual = histogram.getPercentile(percentile);
+			assertTrue(actual + " < " + expected, actual >= expected);
+			assertTrue(actual + " > " + expected, actual <= expected * 1.032);
+		}
+		assertEquals(histogram.getPercentile(100), 1000000);
+		assertEquals(histogram.getPercentile(0), histogram.getPercentile(0.1));
+
+		//Small values are exact.
+		LatencyHistogram small = new LatencyHistogram();
+		small.record(0);
+		small.record(7);
+		small.record(31);
+		assertEquals(small.getPercentile(0), 0);
+		assertEquals(small.getPercentile(50), 7);
+		assertEquals(small.getPercentile(100), 31);
+
+		//Values too large to represent are recorded as the largest representable value.
+		small.record(Long.MAX_VALUE);
+		assertTrue(small.getMax() > 100000000000L);
+		assertEquals(small.getPercentile(100), small.getMax());
+
+		JSONObject summary = histogram.getJSONSummary();
+		assertEquals(summary.getLong("count"), 1000);
+		assertEquals(summary.getLong("max"), 1000000);
+		assertEquals(summary.getLong("p50"), histogram.getPercentile(50));
+
+		histogram.reset();
+		assertEquals(histogram.getCount(), 0);
+		assertEquals(histogram.getMax(), 0);
+		assertEquals(histogram.getPercentile(99), 0);
+
+		testExpectedException(() -> {histogram.record(-1);}, IllegalArgumentException.class);
+		testExpectedException(() -> {histogram.getPercentile(-1);}, IllegalArgumentException.class);
+		testExpectedException(() -> {histogram.getPercentile(101);}, IllegalArgumentException.class);
+		testExpectedException(() -> {histogram.getPercentile(Double.NaN);}, IllegalArgumentException.class);
+	}
+}
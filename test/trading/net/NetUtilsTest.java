@@ -4,11 +4,105 @@ import static org.junit.Assert.*;
 import static trading.economy.StaticTests.*;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPOutputStream;
 
 import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import com.sun.net.httpserver.HttpServer;
+
 public class NetUtilsTest {
+	private static final String VALUE = "{\"value\": 1}";
+
+	private HttpServer server;
+	private String base;
+	private int throttledCalls;
+	private JSONObject arguments;
+
+	//Each test gets its own server on its own port, so that the timeouts, throttle listeners and metrics NetUtils keeps for each endpoint are not shared between tests.
+	@Before
+	public void startServer() throws IOException {
+		NetUtils.resetRetryBudget();
+		this.throttledCalls = 0;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/gzip", (exchange) -> {
+			byte[] body = ("{\"query\": \"" + exchange.getRequestURI().getRawQuery() + "\", \"encoding\": \"" + exchange.getRequestHeaders().getFirst("Accept-Encoding") + "\"}").getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			exchange.sendResponseHeaders(200, 0);
+			try(OutputStream output = new GZIPOutputStream(exchange.getResponseBody())) {
+				output.write(body);
+			}
+		});
+		this.server.createContext("/echo", (exchange) -> {
+			byte[] body = exchange.getRequestBody().readAllBytes();
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		});
+		this.server.createContext("/error", (exchange) -> {
+			byte[] body = "{\"message\": \"no\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(500, body.length);
+			try(OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		});
+		this.server.createContext("/conditional", (exchange) -> {
+			if("\"1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			byte[] body = VALUE.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("ETag", "\"1\"");
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		});
+		//Every other request is throttled.
+		this.server.createContext("/throttled", (exchange) -> {
+			byte[] body = VALUE.getBytes(StandardCharsets.UTF_8);
+			if(this.throttledCalls++ % 2 == 0) {
+				exchange.getResponseHeaders().add("Retry-After", "0");
+				exchange.sendResponseHeaders(429, -1);
+				exchange.close();
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		});
+		this.server.createContext("/unavailable", (exchange) -> {
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+		});
+		this.server.start();
+		this.base = "http://127.0.0.1:" + this.server.getAddress().getPort();
+		this.arguments = new JSONObject();
+		this.arguments.put("item", "Bill's Hat|\u00dcnusual");
+	}
+
+	@After
+	public void stopServer() {
+		NetUtils.setThrottleListener(this.base + "/throttled", null);
+		NetUtils.setThrottleListener(this.base + "/unavailable", null);
+		this.server.stop(0);
+	}
+
 	@Test
 	public void testRequest() throws IOException {
 		JSONObject response = NetUtils.request("https://httpbin.org/anything", "GET", new JSONObject());
@@ -23,4 +117,88 @@ public class NetUtilsTest {
 		assertEquals(response.getString("data"), arguments.toString());
 	}
 
+	@Test
+	public void testEncoding() throws IOException {
+		JSONObject response = NetUtils.request(base + "/gzip", "GET", arguments);
+		assertEquals(response.getString("query"), "item=Bill%27s%20Hat%7C%C3%9Cnusual");
+		assertEquals(response.getString("encoding"), "gzip, deflate");
+		assertEquals(NetUtils.requestAsync(base + "/gzip", "GET", arguments).join().getString("query"), "item=Bill%27s%20Hat%7C%C3%9Cnusual");
+	}
+
+	@Test
+	public void testPost() throws IOException {
+		assertTrue(NetUtils.request(base + "/echo", "POST", arguments).similar(arguments));
+		assertTrue(NetUtils.requestAsync(base + "/echo", "POST", arguments).join().similar(arguments));
+	}
+
+	@Test
+	public void testErrors() {
+		testExpectedException(() -> {NetUtils.request(base + "/error", "GET", new JSONObject());}, IOException.class);
+		CompletableFuture<JSONObject> error = NetUtils.requestAsync(base + "/error", "GET", new JSONObject());
+		testExpectedException(() -> {error.join();}, CompletionException.class);
+		assertTrue(error.handle((JSONObject result, Throwable t) -> t.getCause() instanceof IOException).join());
+		testExpectedException(() -> {NetUtils.request(null, "GET", new JSONObject());}, NullPointerException.class);
+	}
+
+	@Test
+	public void testRequestIfModified() throws IOException {
+		NetUtils.Validators validators = new NetUtils.Validators();
+		NetUtils.ResponseParser<JSONObject> parser = (Reader input) -> new JSONObject(new JSONTokener(input));
+		assertEquals(NetUtils.requestIfModified(base + "/conditional", new JSONObject(), validators, parser).getInt("value"), 1);
+		assertEquals(validators.getETag(), "\"1\"");
+		assertNull(validators.getLastModified());
+		assertNull(NetUtils.requestIfModified(base + "/conditional", new JSONObject(), validators, parser));
+		validators.clear();
+		assertNull(validators.getETag());
+		assertEquals(NetUtils.requestIfModified(base + "/conditional", new JSONObject(), validators, parser).getInt("value"), 1);
+		testExpectedException(() -> {NetUtils.requestIfModified(base + "/error", new JSONObject(), new NetUtils.Validators(), parser);}, IOException.class);
+		testExpectedException(() -> {NetUtils.requestIfModified(base + "/conditional", new JSONObject(), null, parser);}, NullPointerException.class);
+	}
+
+	@Test
+	public void testThrottling() throws IOException {
+		List<Integer> throttles = new ArrayList<>();
+		NetUtils.setThrottleListener(base + "/throttled", (int status, long wait) -> {throttles.add(status);});
+		assertEquals(NetUtils.request(base + "/throttled", "GET", new JSONObject()).getInt("value"), 1);
+		assertEquals(throttles, List.of(429));
+		assertEquals(NetUtils.requestAsync(base + "/throttled", "POST", new JSONObject()).join().getInt("value"), 1);
+		assertEquals(throttledCalls, 4);
+		assertEquals(throttles, List.of(429, 429));
+		NetUtils.setThrottleListener(base + "/throttled", null);
+		NetUtils.request(base + "/throttled", "GET", new JSONObject());
+		assertEquals(throttles.size(), 2);
+	}
+
+	@Test
+	public void testServerErrorsAreNotRetriedForPost() {
+		List<Integer> throttles = new ArrayList<>();
+		//Server errors are not retried for requests which may have been acted on.
+		NetUtils.setThrottleListener(base + "/unavailable", (int status, long wait) -> {throttles.add(status);});
+		testExpectedException(() -> {NetUtils.request(base + "/unavailable", "POST", new JSONObject());}, IOException.class);
+		assertEquals(throttles, List.of(503));
+		assertEquals(NetUtils.getMetrics().get(base + "/unavailable").getStatusCounts(), Map.of(503, 1L));
+	}
+
+	@Test
+	public void testMetrics() throws IOException {
+		NetUtils.request(base + "/throttled", "GET", new JSONObject());
+		NetUtils.requestAsync(base + "/throttled", "POST", new JSONObject()).join();
+		//Every attempt is recorded, including retries.
+		EndpointMetrics throttledMetrics = NetUtils.getMetrics().get(base + "/throttled");
+		assertEquals(throttledMetrics.getStatusCounts(), Map.of(200, 2L, 429, 2L));
+		assertEquals(throttledMetrics.getLatency().getCount(), 4);
+		assertEquals(throttledMetrics.getFailures(), 0);
+		assertEquals(throttledMetrics.getInFlight(), 0);
+		assertEquals(throttledMetrics.getBytesReceived(), 2 * VALUE.length());
+		assertEquals(throttledMetrics.getBytesSent(), 2 * "{}".length());
+		assertEquals(NetUtils.getMetricsSummary().getJSONObject(base + "/throttled").getJSONObject("statusCounts").getLong("429"), 2);
+	}
+
+	@Test
+	public void testTimeouts() {
+		assertEquals(NetUtils.getTimeout(base + "/echo"), 10000);
+		NetUtils.setTimeout(base + "/echo", 500);
+		assertEquals(NetUtils.getTimeout(base + "/echo"), 500);
+		testExpectedException(() -> {NetUtils.setTimeout(base, 0);}, IllegalArgumentException.class);
+	}
 }
@@ -0,0 +1,75 @@
+package trading.net;
+
+import static org.junit.Assert.*;
+import static trading.economy.StaticTests.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+	@Test
+	public void testBurst() {
+		RateLimiter limiter = new RateLimiter(0.001, 3);
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+	}
+
+	@Test
+	public void testAcquire() throws InterruptedException {
+		RateLimiter limiter = new RateLimiter(50, 1);
+		long start = System.nanoTime();
+		for(int i = 0; i < 6; i++) {
+			limiter.acquire();
+		}
+		//The first permit is available immediately, and each of the other five takes 20 milliseconds.
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(95));
+		assertFalse(limiter.tryAcquire());
+	}
+
+	@Test
+	public void testAcquireAsync() {
+		RateLimiter limiter = new RateLimiter(50, 1);
+		long start = System.nanoTime();
+		CompletableFuture<Void> first = limiter.acquireAsync();
+		CompletableFuture<Void> second = limiter.acquireAsync();
+		CompletableFuture<Void> third = limiter.acquireAsync();
+		assertTrue(first.isDone());
+		assertFalse(third.isDone());
+		CompletableFuture.allOf(second, third).join();
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(35));
+	}
+
+	@Test
+	public void testThrottled() throws InterruptedException {
+		RateLimiter limiter = new RateLimiter(100, 1);
+		assertEquals(limiter.getRate(), 100, 1e-9);
+		long start = System.nanoTime();
+		limiter.throttled(100);
+		assertEquals(limiter.getRate(), 50, 1e-9);
+		//Throttling again straight away waits again, but does not slow down further.
+		limiter.throttled(100);
+		assertEquals(limiter.getRate(), 50, 1e-9);
+		assertFalse(limiter.tryAcquire());
+		limiter.acquire();
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(95));
+		//Each permit then recovers some of the rate.
+		assertTrue(limiter.getRate() > 50);
+		for(int i = 0; i < 40; i++) {
+			limiter.acquire();
+		}
+		assertEquals(limiter.getRate(), 100, 1e-9);
+		testExpectedException(() -> {limiter.throttled(-1);}, IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testConstructor() {
+		testExpectedException(() -> {new RateLimiter(0, 1);}, IllegalArgumentException.class);
+		testExpectedException(() -> {new RateLimiter(Double.NaN, 1);}, IllegalArgumentException.class);
+		testExpectedException(() -> {new RateLimiter(Double.POSITIVE_INFINITY, 1);}, IllegalArgumentException.class);
+		testExpectedException(() -> {new RateLimiter(1, 0);}, IllegalArgumentException.class);
+	}
+}
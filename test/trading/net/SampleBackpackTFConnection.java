@@ -1,6 +1,7 @@
 package trading.net;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -29,6 +30,12 @@ public class SampleBackpackTFConnection implements BackpackTFConnection {
 		return new JSONObject(new String(Files.readAllBytes(Paths.get(SAMPLE_PRICES_PATH))));
 	}
 	
+	public PriceIndex getPriceIndex() throws IOException {
+		try(Reader input = Files.newBufferedReader(Paths.get(SAMPLE_PRICES_PATH))) {
+			return PriceIndex.fromBackpackTFRepresentation(input);
+		}
+	}
+	
 	public static String getSampleListings() {
 		try {
 			return new String(Files.readAllBytes(Paths.get(SAMPLE_LISTINGS_PATH)));